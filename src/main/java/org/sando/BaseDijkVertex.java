@@ -1,7 +1,5 @@
 package org.sando;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.function.Consumer;
 
 /**
@@ -17,12 +15,21 @@ public abstract class BaseDijkVertex<K, V extends BaseDijkVertex<K, V>> {
      */
     private V previous;
     /**
-     * 最短路径上的后继节点，图动态更新边的权重、增加、删除边时会使用到
-     * 注意：这里使用链表，因为可能存在多条最短路径
+     * 最短路径上的第一个后继节点，图动态更新边的权重、增加、删除边时会使用到
+     * <p>后继节点通过{@link #nextSibling}、{@link #prevSibling}串成侵入式双向链表，
+     * 修改前驱时O(1)地摘下与挂上，遍历时不分配对象</p>
      */
-    private List<V> successorVertexList;
+    private BaseDijkVertex<K, V> firstSuccessor;
     /**
-     * 节点状态，边的权重发生变化时使用
+     * 同一个前驱的下一个后继节点，最后一个为null
+     */
+    private BaseDijkVertex<K, V> nextSibling;
+    /**
+     * 同一个前驱的上一个后继节点，第一个后继节点指向最后一个，便于在尾部追加
+     */
+    private BaseDijkVertex<K, V> prevSibling;
+    /**
+     * 节点状态，边的权重发生变化时使用，只在{@link #epoch}等于更新器当前的轮次时有效
      */
     private int state;
     /**
@@ -31,12 +38,22 @@ public abstract class BaseDijkVertex<K, V extends BaseDijkVertex<K, V>> {
     private static final int IN_M = 1;
     private static final int VISITED = 1 << 1;
     /**
-     * 最小的权重变化
+     * 最小的权重变化，同样只在{@link #epoch}等于当前轮次时有效
      */
     private EdgeDiff<K> minEdgeDiff;
+    /**
+     * 最近一次写入{@link #state}与{@link #minEdgeDiff}时更新器的轮次
+     * <p>每次更新使用新的轮次，上一次更新留下的状态自动失效，更新结束后不需要逐个重置</p>
+     */
+    private int epoch;
+    /**
+     * 以该顶点为根的子树中的顶点数量(包括自身)，由最短路径树在需要时批量计算
+     * <p>修改前驱时不维护，只在最短路径树标记为有效时可用，见{@link #countSubtree(int)}</p>
+     */
+    private int subtreeSize;
 
     public boolean hasSuccessor() {
-        return successorVertexList != null && !successorVertexList.isEmpty();
+        return firstSuccessor != null;
     }
 
     /**
@@ -46,60 +63,107 @@ public abstract class BaseDijkVertex<K, V extends BaseDijkVertex<K, V>> {
         return previous != null;
     }
 
+    /**
+     * 追加到后继链表的尾部，遍历顺序与加入顺序一致
+     */
     void addSuccessor(V successorVertex) {
-        if (successorVertexList == null) {
-            successorVertexList = new ArrayList<>();
+        BaseDijkVertex<K, V> successor = successorVertex;
+        if (firstSuccessor == null) {
+            firstSuccessor = successor;
+        } else {
+            BaseDijkVertex<K, V> last = firstSuccessor.prevSibling;
+            last.nextSibling = successor;
+            successor.prevSibling = last;
         }
-        successorVertexList.add(successorVertex);
+        firstSuccessor.prevSibling = successor;
+        successor.nextSibling = null;
     }
 
+    /**
+     * 从后继链表中摘下，successorVertex必须是当前节点的后继
+     */
     void removeSuccessor(V successorVertex) {
-        if (successorVertexList != null) {
-            successorVertexList.remove(successorVertex);
+        BaseDijkVertex<K, V> successor = successorVertex;
+        BaseDijkVertex<K, V> next = successor.nextSibling;
+        BaseDijkVertex<K, V> prev = successor.prevSibling;
+        if (successor == firstSuccessor) {
+            firstSuccessor = next;
+            if (next != null) {
+                next.prevSibling = prev;
+            }
+        } else {
+            prev.nextSibling = next;
+            // 摘下的是最后一个时，第一个后继节点指向新的最后一个
+            (next != null ? next : firstSuccessor).prevSibling = prev;
         }
+        successor.nextSibling = null;
+        successor.prevSibling = null;
     }
 
+    /**
+     * 遍历后继节点，consumer不能修改当前节点的后继
+     */
+    @SuppressWarnings("unchecked")
     public void walkSuccessor(Consumer<V> consumer) {
-        if (successorVertexList == null) {
-            return;
-        }
-        for (V successorVertex : new ArrayList<>(successorVertexList)) {
-            consumer.accept(successorVertex);
+        for (BaseDijkVertex<K, V> successor = firstSuccessor; successor != null; successor = successor.nextSibling) {
+            consumer.accept((V) successor);
         }
     }
 
-    public void walkSuccessorWithTmp(Consumer<V> consumer) {
-        if (successorVertexList == null) {
-            return;
-        }
-        for (V successorVertex : new ArrayList<>(successorVertexList)) {
-            consumer.accept(successorVertex);
-        }
+    @SuppressWarnings("unchecked")
+    V lastSuccessor() {
+        return firstSuccessor == null ? null : (V) firstSuccessor.prevSibling;
     }
 
-    public boolean isInM() {
-        return (state & IN_M) > 0;
+    /**
+     * @return 同一个前驱的上一个后继节点，当前节点是第一个后继时返回null
+     */
+    @SuppressWarnings("unchecked")
+    V previousSibling() {
+        BaseDijkVertex<K, V> parent = previous;
+        return parent.firstSuccessor == this ? null : (V) prevSibling;
     }
 
-    public boolean isVisited() {
-        return (state & VISITED) > 0;
+    /**
+     * @param epoch 更新器当前的轮次
+     */
+    public boolean isInM(int epoch) {
+        return this.epoch == epoch && (state & IN_M) != 0;
     }
 
-    public void resetStateAndEdgeDiff() {
-        state = 0;
-        minEdgeDiff = null;
+    public boolean isVisited(int epoch) {
+        return this.epoch == epoch && (state & VISITED) != 0;
     }
 
-    public void markInM() {
+    public void markInM(int epoch) {
+        enterEpoch(epoch);
         state |= IN_M;
     }
 
-    public void unmarkInM() {
-        state &= ~IN_M;
+    public void markVisited(int epoch) {
+        enterEpoch(epoch);
+        state |= VISITED;
     }
 
-    public void markVisited() {
-        state |= VISITED;
+    /**
+     * 丢弃所有轮次的状态，用于轮次计数回绕时
+     */
+    void resetEpoch() {
+        epoch = 0;
+        state = 0;
+        minEdgeDiff = null;
+    }
+
+    /**
+     * 进入新的轮次时丢弃上一轮的状态
+     * <p>更新器在每次更新结束时释放顶点持有的minEdgeDiff，进入新的轮次时minEdgeDiff已经为null</p>
+     */
+    private void enterEpoch(int epoch) {
+        if (this.epoch != epoch) {
+            this.epoch = epoch;
+            state = 0;
+            minEdgeDiff = null;
+        }
     }
 
     public V getPrevious() {
@@ -112,12 +176,16 @@ public abstract class BaseDijkVertex<K, V extends BaseDijkVertex<K, V>> {
 
     public abstract boolean isNotSelected();
 
+    /**
+     * 修改前驱，O(1)：只在前驱的后继链表之间摘下与挂上，子树大小见{@link #countSubtree(int)}
+     */
     @SuppressWarnings("unchecked")
     public void changePrevious(V previous) {
         if (this.previous == previous) {
             return;
         }
-        if (this.previous != null) {
+        // 起点的前驱为自身，不在自身的后继链表中
+        if (this.previous != this && this.previous != null) {
             this.previous.removeSuccessor((V) this);
         }
         this.previous = previous;
@@ -127,6 +195,44 @@ public abstract class BaseDijkVertex<K, V extends BaseDijkVertex<K, V>> {
         }
     }
 
+    /**
+     * @return 最近一次批量计算的子树大小，之后修改过前驱时不再准确
+     */
+    public int getSubtreeSize() {
+        return subtreeSize;
+    }
+
+    /**
+     * 直接设置子树大小，用于批量计算
+     */
+    void initSubtreeSize(int subtreeSize) {
+        this.subtreeSize = subtreeSize;
+    }
+
+    /**
+     * 遍历统计以该顶点为根的子树中的顶点数量(包括自身)，达到limit后不再继续
+     * <p>沿后继链表向下、沿前驱向上迭代，不使用栈，代价为O(min(子树大小, limit))</p>
+     */
+    int countSubtree(int limit) {
+        int count = 1;
+        BaseDijkVertex<K, V> vertex = firstSuccessor;
+        while (vertex != null && count < limit) {
+            count++;
+            if (vertex.firstSuccessor != null) {
+                vertex = vertex.firstSuccessor;
+                continue;
+            }
+            while (vertex.nextSibling == null) {
+                vertex = vertex.previous;
+                if (vertex == this) {
+                    return count;
+                }
+            }
+            vertex = vertex.nextSibling;
+        }
+        return count;
+    }
+
     public abstract long changeDistance(long diff);
 
     /**
@@ -138,15 +244,21 @@ public abstract class BaseDijkVertex<K, V extends BaseDijkVertex<K, V>> {
 
     public abstract Vertex<K> getVertex();
 
-    public EdgeDiff<K> getMinEdgeDiff() {
-        return minEdgeDiff;
+    /**
+     * @param epoch 更新器当前的轮次
+     * @return 当前轮次的最小权重变化，之前轮次留下的返回null
+     */
+    public EdgeDiff<K> getMinEdgeDiff(int epoch) {
+        return this.epoch == epoch ? minEdgeDiff : null;
     }
 
     /**
      * 替换minEdgeDiff,被替换的EdgeDiff可能会因为不再被需要而从Heap中移除
-     * @param minEdgeDiff
+     *
+     * @param epoch 更新器当前的轮次
      */
-    public void replaceMinEdgeDiff(EdgeDiff<K> minEdgeDiff) {
+    public void replaceMinEdgeDiff(EdgeDiff<K> minEdgeDiff, int epoch) {
+        enterEpoch(epoch);
         if (this.minEdgeDiff == minEdgeDiff) {
             return;
         }
@@ -0,0 +1,961 @@
+package org.sando;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * 使用原始类型数组存储的最短路径树
+ * <p>与{@link ShortestPathTree}不同，这里不为每个顶点创建对象，而是以顶点编号为下标，
+ * 将距离、前驱、第一个孩子/兄弟链接以及更新状态分别存放在数组中，
+ * 适合缓存大量最短路径树的场景</p>
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/9
+ */
+public class CompactShortestPathTree<K> implements IShortestPathTree<K> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompactShortestPathTree.class);
+    /**
+     * 空的顶点编号
+     */
+    static final int NONE = -1;
+    /**
+     * 顶点状态：在节点集M中
+     */
+    static final byte IN_M = 1;
+    static final byte VISITED = 1 << 1;
+    private final Graph<K> graph;
+    private final int root;
+    /**
+     * 到起点的距离
+     */
+    long[] distance;
+    /**
+     * 最短路径上的前驱顶点，起点的前驱为自身，不在最短路径树上时为{@link #NONE}
+     */
+    int[] parent;
+    /**
+     * 最短路径树上的第一个后继顶点
+     */
+    int[] firstChild;
+    /**
+     * 最短路径树上的后一个/前一个兄弟顶点
+     */
+    int[] nextSibling;
+    int[] prevSibling;
+    /**
+     * 以顶点为根的子树中的顶点数量(包括自身)，查询时批量计算，只在{@link #subtreeSizeValid}为true时有效
+     */
+    int[] subtreeSize;
+    /**
+     * {@link #subtreeSize}是否有效，{@link #changePrevious(int, int)}修改前驱后失效
+     */
+    private volatile boolean subtreeSizeValid;
+    /**
+     * 持有读锁的多个线程同时查询子树大小时，只由一个线程批量计算
+     */
+    private final Object subtreeSizeLock = new Object();
+    /**
+     * 顶点状态，边的权重发生变化时使用
+     */
+    byte[] state;
+    /**
+     * 未完成的搜索，完成后为null
+     */
+    private Search search;
+    /**
+     * 已经全部更新完成，此时最短路径树是完整的
+     */
+    boolean complete;
+    private final CompactTreeUpdater<K> treeUpdater;
+    private ITreeEdgeListener treeEdgeListener;
+    private final TreeLock treeLock;
+    /**
+     * 发布供不加锁读取的快照
+     */
+    private final TreeSnapshot.Writer<K> snapshotWriter;
+    /**
+     * 已经离开缓存，见{@link #isDetached()}
+     */
+    private volatile boolean detached;
+
+    public CompactShortestPathTree(Graph<K> graph, K root) {
+        this(graph, root, true);
+    }
+
+    public CompactShortestPathTree(Graph<K> graph, K root, boolean mergeUpdate) {
+        if (graph.hasNegativeEdge) {
+            throw new IllegalStateException("dijkstra算法不支持负权重边");
+        }
+        this.graph = graph;
+        this.root = graph.getVertex(root).getId();
+        allocate(graph.idBound());
+        this.treeUpdater = new CompactTreeUpdater<>(this, mergeUpdate);
+        this.treeLock = new TreeLock(graph, this::isStable);
+        this.snapshotWriter = new TreeSnapshot.Writer<>(graph);
+    }
+
+    /**
+     * 已经完整且没有待合并的变化，此时查询不会修改树
+     */
+    private boolean isStable() {
+        return complete && !treeUpdater.hasPendingChange();
+    }
+
+    private void allocate(int size) {
+        distance = new long[size];
+        parent = new int[size];
+        firstChild = new int[size];
+        nextSibling = new int[size];
+        prevSibling = new int[size];
+        subtreeSize = new int[size];
+        state = new byte[size];
+        reset();
+    }
+
+    private void reset() {
+        Arrays.fill(distance, Long.MAX_VALUE);
+        Arrays.fill(parent, NONE);
+        Arrays.fill(firstChild, NONE);
+        Arrays.fill(nextSibling, NONE);
+        Arrays.fill(prevSibling, NONE);
+    }
+
+    void dijkstra(int target) {
+        if (complete) {
+            return;
+        }
+        // 初始化
+        if (search == null) {
+            if (graph.idBound() > distance.length) {
+                allocate(graph.idBound());
+            }
+            search = new Search(distance.length);
+            distance[root] = 0;
+            parent[root] = root;
+            search.heap.offer(root);
+        }
+        Search search = this.search;
+        while (!search.heap.isEmpty()) {
+            int start = search.heap.poll();
+            search.selected[start] = true;
+            search.selectedDistance = distance[start];
+            link(start, parent[start]);
+            LOGGER.debug("选中节点：{}", start);
+            long startDistance = distance[start];
+            // 遍历所有邻接顶点
+            graph.getVertexById(start).walkOutEdge((end, edge) -> {
+                int id = end.getId();
+                if (search.selected[id]) {
+                    return;
+                }
+                long distanceNew = startDistance + edge.getWeight();
+                if (distanceNew < distance[id]) {
+                    distance[id] = distanceNew;
+                    parent[id] = start;
+                    search.heap.offerOrDecrease(id);
+                }
+            });
+            if (start == target) {
+                break;
+            }
+        }
+        if (search.heap.isEmpty()) {
+            complete = true;
+            this.search = null;
+            subtreeSizeValid = false;
+            publishSnapshot();
+            if (treeEdgeListener != null) {
+                notifyAllTreeEdge(treeEdgeListener, true);
+                treeEdgeListener.onComplete();
+            }
+        }
+    }
+
+    /**
+     * 批量计算所有顶点的子树大小，O(顶点数)，在下一次修改前驱之前有效
+     */
+    private void initSubtreeSize() {
+        Arrays.fill(subtreeSize, 1);
+        // 先序遍历，逆序时每个顶点的后代都已经累加完毕
+        int[] order = new int[distance.length];
+        int[] size = {0};
+        walkSubtree(root, null, v -> order[size[0]++] = v);
+        for (int i = size[0] - 1; i > 0; i--) {
+            subtreeSize[parent[order[i]]] += subtreeSize[order[i]];
+        }
+    }
+
+    /**
+     * 以vertex为根的子树大小：批量计算的结果有效时O(1)，否则遍历子树，达到limit后不再继续
+     */
+    int subtreeSize(int vertex, int limit) {
+        if (subtreeSizeValid) {
+            return subtreeSize[vertex];
+        }
+        int count = 1;
+        int v = firstChild[vertex];
+        while (v != NONE && count < limit) {
+            count++;
+            if (firstChild[v] != NONE) {
+                v = firstChild[v];
+                continue;
+            }
+            while (nextSibling[v] == NONE) {
+                v = parent[v];
+                if (v == vertex) {
+                    return count;
+                }
+            }
+            v = nextSibling[v];
+        }
+        return count;
+    }
+
+    /**
+     * 逐条通知所有树边的加入或移除
+     */
+    private void notifyAllTreeEdge(ITreeEdgeListener listener, boolean add) {
+        for (int id = 0; id < parent.length; id++) {
+            int previous = parent[id];
+            if (previous == NONE || previous == id) {
+                continue;
+            }
+            listener.onTreeEdgeChange(id, add ? NONE : previous, add ? previous : NONE);
+        }
+    }
+
+    @Override
+    public void setTreeEdgeListener(ITreeEdgeListener listener) {
+        treeLock.lockWrite();
+        try {
+            if (complete && treeEdgeListener != null) {
+                notifyAllTreeEdge(treeEdgeListener, false);
+            }
+            treeEdgeListener = listener;
+            if (complete && listener != null) {
+                notifyAllTreeEdge(listener, true);
+                listener.onComplete();
+            }
+        } finally {
+            treeLock.unlockWrite();
+        }
+    }
+
+    /**
+     * 每个顶点：distance 8字节，parent/firstChild/nextSibling/prevSibling/subtreeSize各4字节，state 1字节；
+     * 搜索未完成时另有selected 1字节，堆的queue/position各4字节
+     */
+    @Override
+    public long estimateMemory() {
+        long bytes = (long) distance.length * 29;
+        if (search != null) {
+            bytes += (long) distance.length * 9;
+        }
+        return bytes;
+    }
+
+    @Override
+    public int getSubtreeSizeById(int id) {
+        treeLock.lockRead();
+        try {
+            if (!complete || id >= distance.length || parent[id] == NONE) {
+                return 0;
+            }
+            if (!subtreeSizeValid) {
+                synchronized (subtreeSizeLock) {
+                    if (!subtreeSizeValid) {
+                        initSubtreeSize();
+                        subtreeSizeValid = true;
+                    }
+                }
+            }
+            return subtreeSize[id];
+        } finally {
+            treeLock.unlockRead();
+        }
+    }
+
+    @Override
+    public void detach() {
+        detached = true;
+    }
+
+    @Override
+    public boolean isDetached() {
+        return detached;
+    }
+
+    @Override
+    public long getDistanceById(int id) {
+        treeLock.lockRead();
+        try {
+            if (id >= distance.length || parent[id] == NONE) {
+                return Long.MAX_VALUE;
+            }
+            return distance[id];
+        } finally {
+            treeLock.unlockRead();
+        }
+    }
+
+    @Override
+    public void edgeUpdate(IEdge<K> edge, long oldWeight) {
+        treeLock.lockWrite();
+        try {
+            long weight = edge.getWeight();
+            if (weight == oldWeight) {
+                return;
+            }
+            if (!complete) {
+                searchEdgeUpdate(edge, oldWeight);
+            } else {
+                treeUpdater.edgeUpdate(edge, oldWeight);
+            }
+        } finally {
+            treeLock.unlockWrite();
+        }
+    }
+
+    /**
+     * 批量权重变化，完整的最短路径树只合并更新一次
+     */
+    @Override
+    public void edgesUpdate(Map<IEdge<K>, Long> oldWeights) {
+        treeLock.lockWrite();
+        try {
+            if (!complete) {
+                for (Map.Entry<IEdge<K>, Long> entry : oldWeights.entrySet()) {
+                    if (entry.getKey().getWeight() != entry.getValue()) {
+                        searchEdgeUpdate(entry.getKey(), entry.getValue());
+                    }
+                }
+            } else {
+                treeUpdater.edgesUpdate(oldWeights);
+            }
+        } finally {
+            treeLock.unlockWrite();
+        }
+    }
+
+    /**
+     * 未完成的搜索中边的权重发生变化，与ShortestPathTree一致，只在已选中顶点的距离不再可靠时丢弃已搜索的部分
+     */
+    private void searchEdgeUpdate(IEdge<K> edge, long oldWeight) {
+        if (search == null) {
+            return;
+        }
+        int start = graph.getVertex(edge.getStart()).getId();
+        int end = graph.getVertex(edge.getEnd()).getId();
+        searchEdgeUpdate(start, end, edge.getWeight(), oldWeight);
+        if (ReversedEdge.of(graph, edge) != null) {
+            searchEdgeUpdate(end, start, edge.getWeight(), oldWeight);
+        }
+    }
+
+    private void searchEdgeUpdate(int start, int end, long weight, long oldWeight) {
+        if (search == null || start == end || start >= distance.length || end >= distance.length
+                || !search.selected[start]) {
+            // 起点被选中时会按新的权重松弛这条边
+            return;
+        }
+        if (weight < oldWeight) {
+            long distanceNew = distance[start] + weight;
+            if (distanceNew < search.selectedDistance) {
+                // 可能使已选中顶点的距离变小，已搜索的部分不再可靠
+                search = null;
+                reset();
+            } else if (!search.selected[end] && distanceNew < distance[end]) {
+                distance[end] = distanceNew;
+                parent[end] = start;
+                search.heap.offerOrDecrease(end);
+            }
+            return;
+        }
+        if (parent[end] != start) {
+            return;
+        }
+        if (search.selected[end]) {
+            // 已选中顶点的最短路径变长
+            search = null;
+            reset();
+            return;
+        }
+        // 终点的临时距离来自这条边，按已选中的入边邻居重新计算
+        int previous = NONE;
+        long distanceNew = Long.MAX_VALUE;
+        for (Map.Entry<Vertex<K>, IEdge<K>> inEdge : graph.getVertexById(end).inEdges.entrySet()) {
+            int in = inEdge.getKey().getId();
+            if (in < distance.length && search.selected[in] && distance[in] + inEdge.getValue().getWeight() < distanceNew) {
+                distanceNew = distance[in] + inEdge.getValue().getWeight();
+                previous = in;
+            }
+        }
+        if (previous == NONE) {
+            search.heap.remove(end);
+            distance[end] = Long.MAX_VALUE;
+            parent[end] = NONE;
+        } else if (distanceNew < search.selectedDistance) {
+            // 批量更新中其它入边的权重变小
+            search = null;
+            reset();
+        } else {
+            distance[end] = distanceNew;
+            parent[end] = previous;
+            search.heap.update(end);
+        }
+    }
+
+    /**
+     * 新增的边视为权重从无穷大减少，新增的顶点直接加入树中(不可达)
+     */
+    @Override
+    public void edgeAdd(IEdge<K> edge) {
+        treeLock.lockWrite();
+        try {
+            if (graph.idBound() > distance.length) {
+                grow(graph.idBound());
+            }
+            int start = graph.getVertex(edge.getStart()).getId();
+            int end = graph.getVertex(edge.getEnd()).getId();
+            if (complete) {
+                treeUpdater.edgeAdd(edge);
+                return;
+            }
+            if (search == null || !search.selected[start]) {
+                // 起点被选中时会松弛这条边
+                return;
+            }
+            long distanceNew = distance[start] + edge.getWeight();
+            if (distanceNew >= distance[end]) {
+                return;
+            }
+            if (distanceNew < search.selectedDistance) {
+                // 可能使已选中顶点的距离变小，已搜索的部分不再可靠
+                search = null;
+                reset();
+                return;
+            }
+            // 此时终点必定未被选中
+            distance[end] = distanceNew;
+            parent[end] = start;
+            search.heap.offerOrDecrease(end);
+        } finally {
+            treeLock.unlockWrite();
+        }
+    }
+
+    /**
+     * 扩容，新增的顶点不可达
+     */
+    private void grow(int size) {
+        int oldSize = distance.length;
+        distance = Arrays.copyOf(distance, size);
+        parent = Arrays.copyOf(parent, size);
+        firstChild = Arrays.copyOf(firstChild, size);
+        nextSibling = Arrays.copyOf(nextSibling, size);
+        prevSibling = Arrays.copyOf(prevSibling, size);
+        subtreeSize = Arrays.copyOf(subtreeSize, size);
+        state = Arrays.copyOf(state, size);
+        Arrays.fill(distance, oldSize, size, Long.MAX_VALUE);
+        Arrays.fill(parent, oldSize, size, NONE);
+        Arrays.fill(firstChild, oldSize, size, NONE);
+        Arrays.fill(nextSibling, oldSize, size, NONE);
+        Arrays.fill(prevSibling, oldSize, size, NONE);
+        Arrays.fill(subtreeSize, oldSize, size, 1);
+        if (search != null) {
+            search.grow(size);
+        }
+    }
+
+    /**
+     * 移除的边视为权重增加到无穷大
+     */
+    @Override
+    public void edgeRemove(IEdge<K> edge) {
+        treeLock.lockWrite();
+        try {
+            if (complete) {
+                treeUpdater.edgeRemove(edge);
+                return;
+            }
+            int start = graph.getVertex(edge.getStart()).getId();
+            int end = graph.getVertex(edge.getEnd()).getId();
+            searchEdgeRemove(start, end);
+            if (ReversedEdge.of(graph, edge) != null) {
+                // 无向图同时移除了反方向
+                searchEdgeRemove(end, start);
+            }
+        } finally {
+            treeLock.unlockWrite();
+        }
+    }
+
+    /**
+     * 移除的顶点视为移除了所有相连的边，只修复受影响的子树
+     */
+    @Override
+    public void vertexRemove(Vertex<K> vertex, List<IEdge<K>> edges) {
+        treeLock.lockWrite();
+        try {
+            if (complete) {
+                treeUpdater.vertexRemove(vertex, edges);
+                return;
+            }
+            K k = vertex.getK();
+            for (IEdge<K> edge : edges) {
+                int start = Objects.equals(edge.getStart(), k) ? vertex.getId() : graph.getVertex(edge.getStart()).getId();
+                int end = Objects.equals(edge.getEnd(), k) ? vertex.getId() : graph.getVertex(edge.getEnd()).getId();
+                searchEdgeRemove(start, end);
+                if (ReversedEdge.of(graph, edge) != null) {
+                    searchEdgeRemove(end, start);
+                }
+            }
+        } finally {
+            treeLock.unlockWrite();
+        }
+    }
+
+    /**
+     * 未完成的搜索中移除了start到end的边
+     */
+    private void searchEdgeRemove(int start, int end) {
+        if (search == null || start >= distance.length || end >= distance.length) {
+            return;
+        }
+        if (search.selected[start] && parent[end] == start) {
+            // 终点的(临时)距离来自这条边
+            search = null;
+            reset();
+        }
+    }
+
+    @Override
+    public boolean checkAllReset() {
+        treeLock.lockRead();
+        try {
+            return treeUpdater.checkAllReset();
+        } finally {
+            treeLock.unlockRead();
+        }
+    }
+
+    @Override
+    public void completeSearch() {
+        boolean read = treeLock.lockQuery();
+        try {
+            treeUpdater.tryMergeUpdate();
+            dijkstra(NONE);
+        } finally {
+            treeLock.unlockQuery(read);
+        }
+    }
+
+    @Override
+    public Vertex<K> getPrevious(K k) {
+        boolean read = treeLock.lockQuery();
+        try {
+            treeUpdater.tryMergeUpdate();
+            int id = tryDoDijkstra(k);
+            if (id == NONE || parent[id] == NONE) {
+                return null;
+            }
+            return graph.getVertexById(parent[id]);
+        } finally {
+            treeLock.unlockQuery(read);
+        }
+    }
+
+    /**
+     * 获取到end的最短距离
+     */
+    @Override
+    public long getDistance(K end) {
+        boolean read = treeLock.lockQuery();
+        try {
+            treeUpdater.tryMergeUpdate();
+            int id = tryDoDijkstra(end);
+            if (id == NONE) {
+                return Long.MAX_VALUE;
+            }
+            return distance[id];
+        } finally {
+            treeLock.unlockQuery(read);
+        }
+    }
+
+    /**
+     * @return 顶点编号，顶点不存在时返回{@link #NONE}
+     */
+    private int tryDoDijkstra(K end) {
+        Vertex<K> vertex = end == null ? null : graph.getVertex(end);
+        if (vertex == null || vertex.getId() >= distance.length) {
+            dijkstra(NONE);
+            return vertex == null || vertex.getId() >= distance.length ? NONE : vertex.getId();
+        }
+        int id = vertex.getId();
+        if (!complete && (search == null || !search.selected[id])) {
+            dijkstra(id);
+        }
+        return id;
+    }
+
+    /**
+     * 打印完整最短路径
+     */
+    @Override
+    public void printAllPath() {
+        boolean read = treeLock.lockQuery();
+        try {
+            if (!complete) {
+                dijkstra(NONE);
+            }
+            treeUpdater.tryMergeUpdate();
+            for (int id = 0; id < distance.length; id++) {
+                if (graph.getVertexById(id) != null) {
+                    System.out.println(getPathString(id));
+                }
+            }
+        } finally {
+            treeLock.unlockQuery(read);
+        }
+    }
+
+    private String getPathString(int target) {
+        List<Integer> path = new ArrayList<>();
+        path.add(target);
+        while (parent[target] != NONE && parent[target] != target) {
+            target = parent[target];
+            path.add(target);
+        }
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int i = path.size() - 1; i >= 0; i--) {
+            int id = path.get(i);
+            if (i != path.size() - 1) {
+                stringBuilder.append(" -> ");
+            }
+            stringBuilder.append('(').append(graph.getVertexById(id)).append(',').append(distance[id]).append(')');
+        }
+        return stringBuilder.toString();
+    }
+
+    Graph<K> getGraph() {
+        return graph;
+    }
+
+    /**
+     * 修改前驱顶点，同时维护孩子/兄弟链接
+     */
+    void changePrevious(int vertex, int previous) {
+        int old = parent[vertex];
+        if (old == previous) {
+            return;
+        }
+        if (old != NONE && old != vertex) {
+            unlink(vertex, old);
+        }
+        parent[vertex] = previous;
+        if (previous != NONE) {
+            link(vertex, previous);
+        }
+        subtreeSizeValid = false;
+        snapshotWriter.markDirty(vertex);
+        if (treeEdgeListener != null && complete) {
+            int oldParent = old == vertex ? NONE : old;
+            int newParent = previous == vertex ? NONE : previous;
+            if (oldParent != newParent) {
+                treeEdgeListener.onTreeEdgeChange(vertex, oldParent, newParent);
+            }
+        }
+    }
+
+    /**
+     * 将vertex加入previous的孩子链表头部，前驱顶点等于自身时不加入
+     */
+    private void link(int vertex, int previous) {
+        if (previous == vertex) {
+            return;
+        }
+        int head = firstChild[previous];
+        nextSibling[vertex] = head;
+        prevSibling[vertex] = NONE;
+        if (head != NONE) {
+            prevSibling[head] = vertex;
+        }
+        firstChild[previous] = vertex;
+    }
+
+    private void unlink(int vertex, int previous) {
+        int prev = prevSibling[vertex];
+        int next = nextSibling[vertex];
+        if (prev == NONE) {
+            firstChild[previous] = next;
+        } else {
+            nextSibling[prev] = next;
+        }
+        if (next != NONE) {
+            prevSibling[next] = prev;
+        }
+        nextSibling[vertex] = NONE;
+        prevSibling[vertex] = NONE;
+    }
+
+    /**
+     * 先序遍历以vertexRoot为根的子树，借助前驱与兄弟链接回溯，不需要额外的栈
+     * <p>遍历过程中不能修改树的结构</p>
+     *
+     * @param vertexRoot 子树的根
+     * @param skip       为true时跳过该顶点及其子树，可以为null
+     * @param consumer   消费顶点
+     */
+    void walkSubtree(int vertexRoot, IntPredicate skip, IntConsumer consumer) {
+        if (skip != null && skip.test(vertexRoot)) {
+            return;
+        }
+        consumer.accept(vertexRoot);
+        int vertex = firstChild[vertexRoot];
+        while (vertex != NONE) {
+            if (skip == null || !skip.test(vertex)) {
+                consumer.accept(vertex);
+                if (firstChild[vertex] != NONE) {
+                    vertex = firstChild[vertex];
+                    continue;
+                }
+            }
+            while (nextSibling[vertex] == NONE) {
+                vertex = parent[vertex];
+                if (vertex == vertexRoot) {
+                    return;
+                }
+            }
+            vertex = nextSibling[vertex];
+        }
+    }
+
+    /**
+     * 递归地修改当前节点以及后继节点的距离
+     */
+    void changeDistanceRecursive(int vertex, long diff) {
+        if (diff == 0) {
+            return;
+        }
+        walkSubtree(vertex, null, v -> {
+            distance[v] += diff;
+            snapshotWriter.markDirty(v);
+        });
+    }
+
+    /**
+     * 丢弃当前的最短路径树，从起点重新搜索，用于受影响的顶点太多、增量更新不划算的情况
+     * <p>只通知前驱发生变化的顶点，快照整体重新发布</p>
+     */
+    void recompute() {
+        int[] oldParent = parent.clone();
+        ITreeEdgeListener listener = treeEdgeListener;
+        treeEdgeListener = null;
+        complete = false;
+        search = null;
+        reset();
+        snapshotWriter.markAll();
+        dijkstra(NONE);
+        treeEdgeListener = listener;
+        if (listener == null) {
+            return;
+        }
+        for (int id = 0; id < parent.length; id++) {
+            int old = id < oldParent.length && oldParent[id] != id ? oldParent[id] : NONE;
+            int previous = parent[id] == id ? NONE : parent[id];
+            if (old != previous) {
+                listener.onTreeEdgeChange(id, old, previous);
+            }
+        }
+    }
+
+    /**
+     * 发布当前的最短路径树，更新完成时由持有写锁的线程调用
+     */
+    void publishSnapshot() {
+        snapshotWriter.publish(distance.length, id -> distance[id], id -> parent[id]);
+    }
+
+    @Override
+    public void setRecomputeRatio(double ratio) {
+        treeLock.lockWrite();
+        try {
+            treeUpdater.setRecomputeRatio(ratio);
+        } finally {
+            treeLock.unlockWrite();
+        }
+    }
+
+    @Override
+    public void setUpdateMetrics(UpdateMetrics metrics) {
+        treeLock.lockWrite();
+        try {
+            treeUpdater.setMetrics(metrics);
+        } finally {
+            treeLock.unlockWrite();
+        }
+    }
+
+    @Override
+    public TreeSnapshot<K> getSnapshot() {
+        TreeSnapshot<K> snapshot = snapshotWriter.get();
+        if (snapshot == null) {
+            // 树完整时发布第一个版本
+            completeSearch();
+            snapshot = snapshotWriter.get();
+        }
+        return snapshot;
+    }
+
+    /**
+     * 未完成的dijkstra搜索的状态
+     */
+    private class Search {
+        private final IntHeap heap;
+        private boolean[] selected;
+        /**
+         * 最后选中顶点的距离，所有已选中顶点的距离都不超过该值
+         */
+        private long selectedDistance;
+
+        Search(int size) {
+            heap = new IntHeap(size);
+            selected = new boolean[size];
+        }
+
+        void grow(int size) {
+            heap.grow(size);
+            selected = Arrays.copyOf(selected, size);
+        }
+    }
+
+    /**
+     * 以{@link #distance}为优先级的顶点编号二叉堆
+     */
+    private class IntHeap {
+        private int[] queue;
+        /**
+         * 顶点在堆中的位置，不在堆中时为{@link #NONE}
+         */
+        private int[] position;
+        private int size;
+
+        IntHeap(int capacity) {
+            queue = new int[capacity];
+            position = new int[capacity];
+            Arrays.fill(position, NONE);
+        }
+
+        void grow(int capacity) {
+            int oldCapacity = position.length;
+            queue = Arrays.copyOf(queue, capacity);
+            position = Arrays.copyOf(position, capacity);
+            Arrays.fill(position, oldCapacity, capacity, NONE);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void offer(int vertex) {
+            int index = size++;
+            queue[index] = vertex;
+            position[vertex] = index;
+            siftUp(index);
+        }
+
+        void offerOrDecrease(int vertex) {
+            int index = position[vertex];
+            if (index == NONE) {
+                offer(vertex);
+            } else {
+                siftUp(index);
+            }
+        }
+
+        /**
+         * 顶点的距离已经变化，调整位置
+         */
+        void update(int vertex) {
+            int index = position[vertex];
+            siftUp(index);
+            siftDown(position[vertex]);
+        }
+
+        void remove(int vertex) {
+            int index = position[vertex];
+            if (index == NONE) {
+                return;
+            }
+            position[vertex] = NONE;
+            int last = queue[--size];
+            if (index < size) {
+                queue[index] = last;
+                position[last] = index;
+                siftUp(index);
+                siftDown(position[last]);
+            }
+        }
+
+        int poll() {
+            int result = queue[0];
+            position[result] = NONE;
+            int last = queue[--size];
+            if (size > 0) {
+                queue[0] = last;
+                position[last] = 0;
+                siftDown(0);
+            }
+            return result;
+        }
+
+        private void siftUp(int index) {
+            int vertex = queue[index];
+            long key = distance[vertex];
+            while (index > 0) {
+                int parentIndex = (index - 1) >>> 1;
+                int p = queue[parentIndex];
+                if (key >= distance[p]) {
+                    break;
+                }
+                queue[index] = p;
+                position[p] = index;
+                index = parentIndex;
+            }
+            queue[index] = vertex;
+            position[vertex] = index;
+        }
+
+        private void siftDown(int index) {
+            int vertex = queue[index];
+            long key = distance[vertex];
+            int half = size >>> 1;
+            while (index < half) {
+                int child = (index << 1) + 1;
+                int right = child + 1;
+                if (right < size && distance[queue[right]] < distance[queue[child]]) {
+                    child = right;
+                }
+                int c = queue[child];
+                if (key <= distance[c]) {
+                    break;
+                }
+                queue[index] = c;
+                position[c] = index;
+                index = child;
+            }
+            queue[index] = vertex;
+            position[vertex] = index;
+        }
+    }
+}
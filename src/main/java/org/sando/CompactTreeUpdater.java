@@ -0,0 +1,631 @@
+package org.sando;
+
+import org.sando.heap.fiboheap.FiboHeap;
+import org.sando.heap.fiboheap.IFiboHeap;
+import org.sando.heap.fiboheap.IFiboHeapAware;
+import org.sando.heap.fiboheap.IHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+import static org.sando.CompactShortestPathTree.*;
+import static org.sando.ShortestPathTreeUpdater.UNREACHABLE;
+
+/**
+ * {@link CompactShortestPathTree}的更新器，算法与{@link ShortestPathTreeUpdater}一致，
+ * 只是顶点由编号表示，状态直接读写树中的数组
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/9
+ */
+class CompactTreeUpdater<K> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompactTreeUpdater.class);
+    private final CompactShortestPathTree<K> pathTree;
+    /**
+     * 多边权重变更，是否合并更新
+     */
+    private final boolean mergeUpdate;
+    private final Map<IEdge<K>, Long> changeMap = new HashMap<>();
+    /**
+     * 已从图中移除的边 -> (起点, 终点)，其权重视为无穷大
+     * <p>顶点可能已经随边一起从图中移除，因此记录下移除时的顶点</p>
+     */
+    private final Map<IEdge<K>, Pair<Vertex<K>, Vertex<K>>> removedEdges = new HashMap<>();
+    /**
+     * 顶点编号 -> 最小的权重变化，更新时才分配
+     */
+    private IntEdgeDiff[] minEdgeDiff;
+    /**
+     * 进入M集合的顶点
+     */
+    private int[] mList = new int[16];
+    private int mSize;
+    private final Comparator<IntEdgeDiff> comparator;
+    /**
+     * 每次更新复用的优先队列，更新结束时为空
+     */
+    private final FiboHeap<IntEdgeDiff> queue;
+    /**
+     * 不再被顶点持有并且不在队列中的IntEdgeDiff，下一次复用
+     */
+    private final IntEdgeDiff[] freeEdgeDiff = new IntEdgeDiff[EdgeDiff.Pool.MAX_SIZE];
+    private int freeSize;
+    /**
+     * 估算受影响的顶点超过图中顶点的该比例时重新计算整棵树
+     */
+    private double recomputeRatio = UpdateMetrics.DEFAULT_RECOMPUTE_RATIO;
+    private UpdateMetrics metrics;
+
+    CompactTreeUpdater(CompactShortestPathTree<K> pathTree, boolean mergeUpdate) {
+        this.pathTree = pathTree;
+        this.mergeUpdate = mergeUpdate;
+        this.comparator = (o1, o2) -> {
+            if (o1.diff == o2.diff) {
+                return Long.compare(pathTree.distance[o1.end], pathTree.distance[o2.end]);
+            }
+            return Long.compare(o1.diff, o2.diff);
+        };
+        this.queue = FiboHeap.create(IntEdgeDiff.class, comparator);
+    }
+
+    /**
+     * 边权重更新，不合并更新时立即生效
+     */
+    void edgeUpdate(IEdge<K> edge, long oldWeight) {
+        recordBothDirections(edge, oldWeight);
+        if (!mergeUpdate) {
+            applyChange();
+        }
+    }
+
+    /**
+     * 多条边的权重同时变化，全部记录后只合并更新一次
+     *
+     * @param oldWeights 发生变化的边 -> 变化前的权重
+     */
+    void edgesUpdate(Map<IEdge<K>, Long> oldWeights) {
+        oldWeights.forEach(this::recordBothDirections);
+        if (!mergeUpdate) {
+            applyChange();
+        }
+    }
+
+    /**
+     * 记录边的权重变化，无向图中的边同时记录反方向
+     */
+    private void recordBothDirections(IEdge<K> edge, long oldWeight) {
+        recordChange(edge, oldWeight);
+        ReversedEdge<K> reversed = ReversedEdge.of(pathTree.getGraph(), edge);
+        if (reversed != null) {
+            recordChange(reversed, oldWeight);
+        }
+    }
+
+    /**
+     * 记录边的权重变化，等待合并更新
+     */
+    private void recordChange(IEdge<K> edge, long oldWeight) {
+        long weight = weight(edge);
+        if (weight == oldWeight) {
+            return;
+        }
+        int start = getStartId(edge);
+        if (start == NONE || pathTree.parent[start] == NONE) {
+            // 该边起点不可达
+            return;
+        }
+        Long old = changeMap.putIfAbsent(edge, oldWeight);
+        if (old != null && weight == old) {
+            changeMap.remove(edge);
+        }
+    }
+
+    /**
+     * 新增边，视为权重从无穷大减少
+     */
+    void edgeAdd(IEdge<K> edge) {
+        Graph<K> graph = pathTree.getGraph();
+        Vertex<K> start = graph.getVertex(edge.getStart());
+        Vertex<K> end = graph.getVertex(edge.getEnd());
+        ReversedEdge<K> reversed = ReversedEdge.of(graph, edge);
+        if (!removedAs(edge, start, end) || reversed != null && !removedAs(reversed, end, start)) {
+            // 顶点被移除后又重新加入，先完成之前的移除
+            applyChange();
+        }
+        addBack(edge);
+        if (reversed != null) {
+            addBack(reversed);
+        }
+        if (!mergeUpdate) {
+            applyChange();
+        }
+    }
+
+    /**
+     * @return 边没有等待合并的移除，或者移除时的起点与终点仍是start与end
+     */
+    private boolean removedAs(IEdge<K> edge, Vertex<K> start, Vertex<K> end) {
+        Pair<Vertex<K>, Vertex<K>> removed = removedEdges.get(edge);
+        return removed == null || removed.getLeft() == start && removed.getRight() == end;
+    }
+
+    /**
+     * 移除后又加回的边，changeMap中已经记录了移除前的权重，否则视为权重从无穷大减少
+     */
+    private void addBack(IEdge<K> edge) {
+        if (removedEdges.remove(edge) == null) {
+            recordChange(edge, Long.MAX_VALUE);
+            return;
+        }
+        Long old = changeMap.get(edge);
+        if (old != null && old == edge.getWeight()) {
+            changeMap.remove(edge);
+        }
+    }
+
+    /**
+     * 移除边，视为权重增加到无穷大
+     */
+    void edgeRemove(IEdge<K> edge) {
+        Graph<K> graph = pathTree.getGraph();
+        recordRemove(edge, graph.getVertex(edge.getStart()), graph.getVertex(edge.getEnd()));
+        if (!mergeUpdate) {
+            applyChange();
+        }
+    }
+
+    /**
+     * 移除顶点，与顶点相连的边视为一起被移除
+     */
+    void vertexRemove(Vertex<K> vertex, Collection<? extends IEdge<K>> edges) {
+        Graph<K> graph = pathTree.getGraph();
+        K k = vertex.getK();
+        for (IEdge<K> edge : edges) {
+            Vertex<K> start = Objects.equals(edge.getStart(), k) ? vertex : graph.getVertex(edge.getStart());
+            Vertex<K> end = Objects.equals(edge.getEnd(), k) ? vertex : graph.getVertex(edge.getEnd());
+            recordRemove(edge, start, end);
+        }
+        if (!mergeUpdate) {
+            applyChange();
+        }
+    }
+
+    /**
+     * 记录边的移除，无向图中的边同时记录反方向
+     */
+    private void recordRemove(IEdge<K> edge, Vertex<K> start, Vertex<K> end) {
+        recordDirectedRemove(edge, start, end);
+        ReversedEdge<K> reversed = ReversedEdge.of(pathTree.getGraph(), edge);
+        if (reversed != null) {
+            recordDirectedRemove(reversed, end, start);
+        }
+    }
+
+    private void recordDirectedRemove(IEdge<K> edge, Vertex<K> start, Vertex<K> end) {
+        removedEdges.put(edge, Pair.of(start, end));
+        recordChange(edge, edge.getWeight());
+        if (!changeMap.containsKey(edge)) {
+            // 起点不可达
+            removedEdges.remove(edge);
+        }
+    }
+
+    /**
+     * 边当前的权重，已移除的边为无穷大
+     */
+    private long weight(IEdge<K> edge) {
+        return removedEdges.containsKey(edge) ? Long.MAX_VALUE : edge.getWeight();
+    }
+
+    private int getStartId(IEdge<K> edge) {
+        Pair<Vertex<K>, Vertex<K>> removed = removedEdges.get(edge);
+        return getId(removed == null ? pathTree.getGraph().getVertex(edge.getStart()) : removed.getLeft());
+    }
+
+    private int getEndId(IEdge<K> edge) {
+        Pair<Vertex<K>, Vertex<K>> removed = removedEdges.get(edge);
+        return getId(removed == null ? pathTree.getGraph().getVertex(edge.getEnd()) : removed.getRight());
+    }
+
+    private int getId(Vertex<K> vertex) {
+        int id = vertex.getId();
+        return id < pathTree.distance.length ? id : NONE;
+    }
+
+    /**
+     * 是否有等待合并更新的变化
+     */
+    boolean hasPendingChange() {
+        return !changeMap.isEmpty();
+    }
+
+    /**
+     * 尝试合并更新
+     */
+    void tryMergeUpdate() {
+        if (!mergeUpdate) {
+            return;
+        }
+        applyChange();
+    }
+
+    void setRecomputeRatio(double recomputeRatio) {
+        this.recomputeRatio = recomputeRatio;
+    }
+
+    void setMetrics(UpdateMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private void applyChange() {
+        if (changeMap.isEmpty()) {
+            return;
+        }
+        long begin = System.nanoTime();
+        int vertices = pathTree.getGraph().size();
+        double threshold = recomputeRatio * vertices;
+        int affected = threshold >= Integer.MAX_VALUE - 1 ? 0 : estimateAffected((int) threshold + 1);
+        boolean recompute = affected > threshold;
+        if (recompute) {
+            // 受影响的部分太大，增量更新不如重新计算
+            changeMap.clear();
+            removedEdges.clear();
+            pathTree.recompute();
+        } else {
+            incrementalUpdate();
+        }
+        if (metrics != null) {
+            metrics.record(recompute, affected, vertices, System.nanoTime() - begin);
+        }
+    }
+
+    /**
+     * 估算受影响的顶点数量：权重增加的树边与能够缩短距离的边，其终点所在的子树都会受影响
+     * <p>子树大小见{@link CompactShortestPathTree#subtreeSize(int, int)}，没有批量计算时只遍历到剩余的limit为止，
+     * 代价不超过随后增量更新本身；子树之间可能重叠，估算值偏大；达到limit后不再继续</p>
+     */
+    private int estimateAffected(int limit) {
+        long[] distance = pathTree.distance;
+        int[] parent = pathTree.parent;
+        int count = 0;
+        for (Map.Entry<IEdge<K>, Long> entry : changeMap.entrySet()) {
+            IEdge<K> edge = entry.getKey();
+            int start = getStartId(edge);
+            int end = getEndId(edge);
+            if (start == NONE || end == NONE) {
+                continue;
+            }
+            long weight = weight(edge);
+            boolean affected = weight > entry.getValue() ? parent[end] == start : distance[start] + weight < distance[end];
+            if (!affected) {
+                continue;
+            }
+            count += pathTree.subtreeSize(end, limit - count);
+            if (count >= limit) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private void incrementalUpdate() {
+        if (minEdgeDiff == null) {
+            minEdgeDiff = new IntEdgeDiff[pathTree.distance.length];
+        } else if (minEdgeDiff.length < pathTree.distance.length) {
+            minEdgeDiff = Arrays.copyOf(minEdgeDiff, pathTree.distance.length);
+        }
+        // 上一次更新异常中断时可能有残留
+        queue.clear();
+        mergeUpdateDec(queue);
+        mergeUpdateInc(queue);
+        // 所有变化都已生效，发布新的版本
+        pathTree.publishSnapshot();
+    }
+
+    private void mergeUpdateDec(FiboHeap<IntEdgeDiff> queue) {
+        long[] distance = pathTree.distance;
+        List<Integer> decList = new ArrayList<>();
+        Iterator<Map.Entry<IEdge<K>, Long>> iterator = changeMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<IEdge<K>, Long> pair = iterator.next();
+            IEdge<K> edge = pair.getKey();
+            if (weight(edge) >= pair.getValue()) {
+                continue;
+            }
+            iterator.remove();
+            int start = getStartId(edge);
+            int end = getEndId(edge);
+            long distanceNew = distance[start] + edge.getWeight();
+            long distanceOld = distance[end];
+            // D(i) + w'(e) < D(j)
+            if (distanceNew >= distanceOld) {
+                // 说明权值变小的边影响不到最短路径树
+                LOGGER.debug("跳过变动边{}", edge);
+                continue;
+            }
+            pathTree.changeDistanceRecursive(end, distanceNew - distanceOld);
+            // P(j) = i
+            pathTree.changePrevious(end, start);
+            decList.add(end);
+        }
+        for (int end : decList) {
+            handleOutEdge(queue, end, false);
+        }
+        pollUntilEmpty(queue, false);
+        if (!queue.isEmpty()) {
+            queue.clear();
+        }
+    }
+
+    private void mergeUpdateInc(FiboHeap<IntEdgeDiff> queue) {
+        byte[] state = pathTree.state;
+        List<Integer> incList = new ArrayList<>();
+        for (Map.Entry<IEdge<K>, Long> pair : changeMap.entrySet()) {
+            IEdge<K> edge = pair.getKey();
+            int start = getStartId(edge);
+            int end = getEndId(edge);
+            if (pathTree.parent[end] != start) {
+                // 说明这条边不在最短路径树上，不会对原来的最短路径树造成影响
+                continue;
+            }
+            incList.add(end);
+            long weight = weight(edge);
+            // 移除的边使子树暂时位于UNREACHABLE之后，没有被重新连接的顶点即为不可达
+            pathTree.changeDistanceRecursive(end, weight == Long.MAX_VALUE
+                    ? UNREACHABLE - pathTree.distance[end] : weight - pair.getValue());
+            pathTree.walkSubtree(end, null, vertex -> {
+                if ((state[vertex] & IN_M) != 0) {
+                    return;
+                }
+                state[vertex] |= IN_M;
+                LOGGER.debug("节点进入M集合:{}", vertex);
+                if (mSize == mList.length) {
+                    mList = Arrays.copyOf(mList, mSize + (mSize >> 1));
+                }
+                mList[mSize++] = vertex;
+            });
+            if (weight == Long.MAX_VALUE) {
+                // 断开子树，避免被重新连接的起点带动
+                pathTree.changePrevious(end, NONE);
+            }
+        }
+        for (int end : incList) {
+            handleDirectInEdge(queue, end);
+        }
+        pollUntilEmpty(queue, true);
+        long[] distance = pathTree.distance;
+        for (int i = 0; i < mSize; i++) {
+            int vertex = mList[i];
+            if (distance[vertex] >= UNREACHABLE) {
+                pathTree.changePrevious(vertex, NONE);
+                distance[vertex] = Long.MAX_VALUE;
+            }
+            state[vertex] = 0;
+            replaceMinEdgeDiff(vertex, null);
+        }
+        mSize = 0;
+        changeMap.clear();
+        removedEdges.clear();
+    }
+
+    /**
+     * 是否跳过start到end的边
+     *
+     * @param inc 为true时跳过终点不在M集合的边，否则跳过最短路径上的边
+     */
+    private boolean filter(int start, int end, boolean inc) {
+        if (inc) {
+            return (pathTree.state[end] & IN_M) == 0;
+        }
+        return pathTree.parent[end] == start;
+    }
+
+    private void pollUntilEmpty(FiboHeap<IntEdgeDiff> queue, boolean inc) {
+        while (!queue.isEmpty()) {
+            IntEdgeDiff poll = queue.poll();
+            LOGGER.debug("选中最短路径:{}", poll);
+            // poll不再被顶点持有后会被回收，先取出终点
+            int end = poll.end;
+            if (poll.diff != 0) {
+                pathTree.changePrevious(end, poll.start);
+                pathTree.changeDistanceRecursive(end, poll.diff);
+            }
+            pathTree.walkSubtree(end, null, vertex -> replaceMinEdgeDiff(vertex, null));
+            handleOutEdge(queue, end, inc);
+        }
+    }
+
+    private void handleOutEdge(FiboHeap<IntEdgeDiff> queue, int endVertex, boolean inc) {
+        long[] distance = pathTree.distance;
+        Graph<K> graph = pathTree.getGraph();
+        // 初始化所有出边
+        pathTree.walkSubtree(endVertex, null, start -> {
+            Vertex<K> vertex = graph.getVertexById(start);
+            if (vertex == null) {
+                // 已经从图中移除的顶点
+                return;
+            }
+            vertex.walkOutEdge((adjacent, edge) -> {
+                int end = adjacent.getId();
+                // 终点不可达时距离为无穷大，同样会被更新，新增边后原本不可达的顶点可能变得可达
+                if (filter(start, end, inc)) {
+                    return;
+                }
+                long diff = distance[start] + edge.getWeight() - distance[end];
+                if (diff >= 0) {
+                    return;
+                }
+                IntEdgeDiff old = minEdgeDiff[end];
+                if (old == null || diff < old.diff) {
+                    IntEdgeDiff edgeDiff = obtainEdgeDiff(start, end, diff);
+                    replaceMinEdgeDiff(end, edgeDiff);
+                    queue.offer(edgeDiff);
+                }
+            });
+        });
+    }
+
+    private void handleDirectInEdge(FiboHeap<IntEdgeDiff> queue, int vertex) {
+        long[] distance = pathTree.distance;
+        int[] parent = pathTree.parent;
+        byte[] state = pathTree.state;
+        Graph<K> graph = pathTree.getGraph();
+        // 文章中的des(j)
+        pathTree.walkSubtree(vertex, v -> (state[v] & VISITED) != 0, end -> {
+            state[end] |= VISITED;
+            IntEdgeDiff parentEdgeDiff = parent[end] == NONE ? null : minEdgeDiff[parent[end]];
+            long[] min = {parentEdgeDiff == null ? Long.MAX_VALUE : parentEdgeDiff.diff};
+            int[] minStart = {NONE};
+            Vertex<K> endVertex = graph.getVertexById(end);
+            if (endVertex == null) {
+                // 已经从图中移除的顶点，没有入边
+                replaceMinEdgeDiff(end, parentEdgeDiff);
+                return;
+            }
+            endVertex.walkInEdge((adjacent, edge) -> {
+                int start = adjacent.getId();
+                if (parent[start] == NONE || (state[start] & IN_M) != 0) {
+                    return;
+                }
+                long diff = distance[start] + edge.getWeight() - distance[end];
+                if (diff > 0) {
+                    return;
+                }
+                if (diff < min[0]) {
+                    min[0] = diff;
+                    minStart[0] = start;
+                }
+            });
+            IntEdgeDiff edgeDiff = parentEdgeDiff;
+            if (minStart[0] != NONE) {
+                edgeDiff = obtainEdgeDiff(minStart[0], end, min[0]);
+                queue.offer(edgeDiff);
+            }
+            replaceMinEdgeDiff(end, edgeDiff);
+        });
+    }
+
+    /**
+     * 替换顶点的minEdgeDiff,被替换的IntEdgeDiff可能会因为不再被需要而从Heap中移除
+     */
+    private void replaceMinEdgeDiff(int vertex, IntEdgeDiff edgeDiff) {
+        IntEdgeDiff old = minEdgeDiff[vertex];
+        if (old == edgeDiff) {
+            return;
+        }
+        if (edgeDiff != null) {
+            edgeDiff.count++;
+        }
+        if (old != null) {
+            old.decCount();
+            if (old.count <= 0 && freeSize < freeEdgeDiff.length) {
+                // 已经不在队列中，可以复用
+                freeEdgeDiff[freeSize++] = old;
+            }
+        }
+        minEdgeDiff[vertex] = edgeDiff;
+    }
+
+    private IntEdgeDiff obtainEdgeDiff(int start, int end, long diff) {
+        if (freeSize == 0) {
+            return new IntEdgeDiff(start, end, diff);
+        }
+        IntEdgeDiff edgeDiff = freeEdgeDiff[--freeSize];
+        freeEdgeDiff[freeSize] = null;
+        edgeDiff.reset(start, end, diff);
+        return edgeDiff;
+    }
+
+    boolean checkAllReset() {
+        if (!queue.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < freeSize; i++) {
+            if (freeEdgeDiff[i].heap != null || freeEdgeDiff[i].count != 0) {
+                return false;
+            }
+        }
+        for (byte s : pathTree.state) {
+            if (s != 0) {
+                return false;
+            }
+        }
+        if (minEdgeDiff != null) {
+            for (IntEdgeDiff edgeDiff : minEdgeDiff) {
+                if (edgeDiff != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 走某条边给距离带来的变动，顶点以编号表示
+     */
+    static class IntEdgeDiff implements IFiboHeapAware<IntEdgeDiff> {
+        int start;
+        int end;
+        long diff;
+        private IFiboHeap<IntEdgeDiff> heap;
+        private IHandle<IntEdgeDiff> handle;
+        /**
+         * 持有当前对象的顶点数量
+         */
+        private int count;
+
+        IntEdgeDiff(int start, int end, long diff) {
+            this.start = start;
+            this.end = end;
+            this.diff = diff;
+        }
+
+        /**
+         * 复用之前重新设置，此时已经不在堆中，也不被任何顶点持有
+         */
+        void reset(int start, int end, long diff) {
+            this.start = start;
+            this.end = end;
+            this.diff = diff;
+            this.count = 0;
+        }
+
+        @Override
+        public IFiboHeap<IntEdgeDiff> getHeap() {
+            return heap;
+        }
+
+        @Override
+        public void setHeap(IFiboHeap<IntEdgeDiff> heap) {
+            this.heap = heap;
+        }
+
+        @Override
+        public IHandle<IntEdgeDiff> getHandle() {
+            return handle;
+        }
+
+        @Override
+        public void setHandle(IHandle<IntEdgeDiff> handle) {
+            this.handle = handle;
+        }
+
+        void decCount() {
+            count--;
+            if (count <= 0 && heap != null) {
+                heap.delete(handle);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "IntEdgeDiff{" +
+                    "start=" + start +
+                    ", end=" + end +
+                    ", diff=" + diff +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.sando;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * 压缩稀疏行(CSR)形式的邻接存储，拓扑不可变，边的权重仍然通过{@link IEdge}修改
+ * <p>出边与入边各使用一组偏移数组、邻接顶点数组以及边数组，
+ * 顶点i的邻接区间为[offset[i], offset[i + 1])，区间内按邻接顶点下标升序排列</p>
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/8
+ */
+final class CsrStorage<K> {
+    private final CsrVertex<K>[] vertices;
+    /**
+     * 出边
+     */
+    private final Rows<K> out;
+    /**
+     * 入边(反向CSR)
+     */
+    private final Rows<K> in;
+
+    private CsrStorage(CsrVertex<K>[] vertices, Rows<K> out, Rows<K> in) {
+        this.vertices = vertices;
+        this.out = out;
+        this.in = in;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> IEdge<K>[] newEdgeArray(int length) {
+        return (IEdge<K>[]) new IEdge<?>[length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> CsrVertex<K>[] newVertexArray(int length) {
+        return (CsrVertex<K>[]) new CsrVertex<?>[length];
+    }
+
+    /**
+     * 根据边构建CSR存储，重复的边以后出现的为准，顶点的编号即为其在存储中的下标
+     *
+     * @param edges     边
+     * @param directed  是否是有向图
+     * @param vertexMap 构建出的顶点会放入其中
+     */
+    static <K> CsrStorage<K> build(List<? extends IEdge<K>> edges, boolean directed, Map<K, Vertex<K>> vertexMap) {
+        Map<K, Integer> idMap = new HashMap<>();
+        List<K> keys = new ArrayList<>();
+        int edgeCount = directed ? edges.size() : edges.size() << 1;
+        int[] starts = new int[edgeCount];
+        int[] ends = new int[edgeCount];
+        IEdge<K>[] edgeArr = newEdgeArray(edgeCount);
+        int i = 0;
+        for (IEdge<K> edge : edges) {
+            int start = intern(idMap, keys, edge.getStart());
+            int end = intern(idMap, keys, edge.getEnd());
+            starts[i] = start;
+            ends[i] = end;
+            edgeArr[i++] = edge;
+            if (!directed) {
+                starts[i] = end;
+                ends[i] = start;
+                edgeArr[i++] = edge;
+            }
+        }
+        int size = keys.size();
+        CsrVertex<K>[] vertices = newVertexArray(size);
+        CsrStorage<K> storage = new CsrStorage<>(vertices,
+                Rows.build(size, starts, ends, edgeArr), Rows.build(size, ends, starts, edgeArr));
+        for (int id = 0; id < size; id++) {
+            K k = keys.get(id);
+            CsrVertex<K> vertex = new CsrVertex<>(k, storage, id);
+            vertices[id] = vertex;
+            vertexMap.put(k, vertex);
+        }
+        return storage;
+    }
+
+    private static <K> int intern(Map<K, Integer> idMap, List<K> keys, K k) {
+        Integer id = idMap.get(k);
+        if (id == null) {
+            id = keys.size();
+            idMap.put(k, id);
+            keys.add(k);
+        }
+        return id;
+    }
+
+    /**
+     * 按编号排列的所有顶点
+     */
+    @SuppressWarnings("unchecked")
+    Vertex<K>[] vertices() {
+        return Arrays.copyOf(vertices, vertices.length, Vertex[].class);
+    }
+
+    /**
+     * 同一方向的邻接数组
+     */
+    private static final class Rows<K> {
+        private final int[] offset;
+        private final int[] adjacent;
+        private final IEdge<K>[] edge;
+
+        private Rows(int[] offset, int[] adjacent, IEdge<K>[] edge) {
+            this.offset = offset;
+            this.adjacent = adjacent;
+            this.edge = edge;
+        }
+
+        /**
+         * 按from分组构建邻接数组
+         *
+         * @param size  顶点数量
+         * @param from  每条边所属的行
+         * @param to    每条边的邻接顶点
+         * @param edges 边
+         */
+        static <K> Rows<K> build(int size, int[] from, int[] to, IEdge<K>[] edges) {
+            int count = edges.length;
+            int[] offset = new int[size + 1];
+            for (int i = 0; i < count; i++) {
+                offset[from[i] + 1]++;
+            }
+            for (int i = 0; i < size; i++) {
+                offset[i + 1] += offset[i];
+            }
+            // 高32位为邻接顶点，低32位为边的顺序，排序后相同邻接顶点的边按出现顺序相邻
+            long[] sortKeys = new long[count];
+            int[] fill = Arrays.copyOf(offset, size);
+            for (int i = 0; i < count; i++) {
+                sortKeys[fill[from[i]]++] = ((long) to[i] << 32) | i;
+            }
+            int[] newOffset = new int[size + 1];
+            int[] adjacent = new int[count];
+            IEdge<K>[] edge = newEdgeArray(count);
+            int pos = 0;
+            for (int row = 0; row < size; row++) {
+                int begin = offset[row];
+                int end = offset[row + 1];
+                Arrays.sort(sortKeys, begin, end);
+                for (int i = begin; i < end; i++) {
+                    int target = (int) (sortKeys[i] >>> 32);
+                    if (i + 1 < end && (int) (sortKeys[i + 1] >>> 32) == target) {
+                        // 重复的边，保留后出现的
+                        continue;
+                    }
+                    adjacent[pos] = target;
+                    edge[pos++] = edges[(int) sortKeys[i]];
+                }
+                newOffset[row + 1] = pos;
+            }
+            if (pos < count) {
+                adjacent = Arrays.copyOf(adjacent, pos);
+                edge = Arrays.copyOf(edge, pos);
+            }
+            return new Rows<>(newOffset, adjacent, edge);
+        }
+
+        void walk(CsrVertex<K>[] vertices, int row, BiConsumer<? super Vertex<K>, ? super IEdge<K>> consumer) {
+            for (int i = offset[row], end = offset[row + 1]; i < end; i++) {
+                consumer.accept(vertices[adjacent[i]], edge[i]);
+            }
+        }
+
+        IEdge<K> find(int row, int target) {
+            int index = Arrays.binarySearch(adjacent, offset[row], offset[row + 1], target);
+            return index < 0 ? null : edge[index];
+        }
+
+        int degree(int row) {
+            return offset[row + 1] - offset[row];
+        }
+    }
+
+    /**
+     * CSR存储中的顶点，自身的编号即为在存储中的下标
+     */
+    static final class CsrVertex<K> extends Vertex<K> {
+        private final CsrStorage<K> storage;
+
+        CsrVertex(K value, CsrStorage<K> storage, int id) {
+            super(value, id);
+            this.storage = storage;
+        }
+
+        @Override
+        public void addOutEdge(Vertex<K> end, IEdge<K> edge) {
+            throw new UnsupportedOperationException("CSR存储的图拓扑不可变");
+        }
+
+        @Override
+        public void addInEdge(Vertex<K> start, IEdge<K> edge) {
+            throw new UnsupportedOperationException("CSR存储的图拓扑不可变");
+        }
+
+        @Override
+        public IEdge<K> removeOutEdge(Vertex<K> end) {
+            throw new UnsupportedOperationException("CSR存储的图拓扑不可变");
+        }
+
+        @Override
+        public IEdge<K> removeInEdge(Vertex<K> start) {
+            throw new UnsupportedOperationException("CSR存储的图拓扑不可变");
+        }
+
+        @Override
+        public IEdge<K> getOutEdge(Vertex<K> end) {
+            if (!(end instanceof CsrVertex) || ((CsrVertex<K>) end).storage != storage) {
+                return null;
+            }
+            return storage.out.find(getId(), end.getId());
+        }
+
+        @Override
+        public void walkOutEdge(BiConsumer<? super Vertex<K>, ? super IEdge<K>> consumer) {
+            storage.out.walk(storage.vertices, getId(), consumer);
+        }
+
+        @Override
+        public void walkInEdge(BiConsumer<? super Vertex<K>, ? super IEdge<K>> consumer) {
+            storage.in.walk(storage.vertices, getId(), consumer);
+        }
+
+        @Override
+        public int outDegree() {
+            return storage.out.degree(getId());
+        }
+
+        @Override
+        public int inDegree() {
+            return storage.in.degree(getId());
+        }
+    }
+}
@@ -52,10 +52,7 @@ class DijkstraVertex<K> extends BaseDijkVertex<K, DijkstraVertex<K>> {
         if (diff == 0) {
             return;
         }
-        changeDistance(diff);
-        walkSuccessor(v -> {
-            v.changeDistanceRecursive(diff);
-        });
+        PathTreeHelper.handleSuccessorAndSelfRecursive(this, v -> v.changeDistance(diff));
     }
 
     @Override
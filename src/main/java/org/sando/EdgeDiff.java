@@ -13,18 +13,28 @@ import org.slf4j.LoggerFactory;
  * @version 1.0
  * @since 2024/5/19
  */
-@SuppressWarnings("rawtypes")
+@SuppressWarnings({"rawtypes", "unchecked"})
 class EdgeDiff<K> implements Comparable<EdgeDiff<K>>, IFiboHeapAware<EdgeDiff<K>> {
     private static final Logger LOGGER = LoggerFactory.getLogger(EdgeDiff.class);
+    static final int NO_SLOT = -1;
     BaseDijkVertex start;
     BaseDijkVertex end;
     long diff;
     private IFiboHeap<EdgeDiff<K>> heap;
     private IHandle<EdgeDiff<K>> handle;
+    /**
+     * 使用{@link HeapType#DARY}或{@link HeapType#RADIX}时所在的队列与槽位
+     */
+    private ShortestPathTreeUpdater.QueueWrapper<K> queue;
+    private int slot = NO_SLOT;
     /**
      * 持有当前对象的{@link BaseDijkVertex}数量
      */
     private int count;
+    /**
+     * 所属的对象池，不再被持有时归还，为null时不回收
+     */
+    private Pool<K> pool;
 
     @Override
     public IFiboHeap<EdgeDiff<K>> getHeap() {
@@ -47,10 +57,30 @@ class EdgeDiff<K> implements Comparable<EdgeDiff<K>>, IFiboHeapAware<EdgeDiff<K>
     }
 
     public void remove() {
-        if (heap == null) {
-            return;
+        if (heap != null) {
+            heap.delete(handle);
+        } else if (queue != null) {
+            queue.remove(this);
         }
-        heap.delete(handle);
+    }
+
+    /**
+     * @return 是否在更新器的优先队列中
+     */
+    boolean inQueue() {
+        return heap != null || queue != null;
+    }
+
+    /**
+     * 进入/离开{@link HeapType#DARY}的队列
+     */
+    void enqueue(ShortestPathTreeUpdater.QueueWrapper<K> queue, int slot) {
+        this.queue = queue;
+        this.slot = slot;
+    }
+
+    int getSlot() {
+        return slot;
     }
 
     public void incCount() {
@@ -61,15 +91,18 @@ class EdgeDiff<K> implements Comparable<EdgeDiff<K>>, IFiboHeapAware<EdgeDiff<K>
         count--;
         if (count <= 0) {
             remove();
+            if (pool != null) {
+                pool.release(this);
+            }
         }
     }
 
     @Override
     public int compareTo(EdgeDiff<K> o) {
         if (diff == o.diff) {
-            return (int) (end.getDistance() - o.end.getDistance());
+            return Long.compare(end.getDistance(), o.end.getDistance());
         }
-        return (int) (diff - o.diff);
+        return Long.compare(diff, o.diff);
     }
 
     public EdgeDiff(BaseDijkVertex start, BaseDijkVertex end, long diff) {
@@ -78,6 +111,72 @@ class EdgeDiff<K> implements Comparable<EdgeDiff<K>>, IFiboHeapAware<EdgeDiff<K>
         this.diff = diff;
     }
 
+    /**
+     * EdgeDiff对象池，由单个更新器在树的写锁内使用，不是线程安全的
+     * <p>不再被任何顶点持有并且不在堆中的EdgeDiff会被归还，下一次{@link #obtain}时复用</p>
+     */
+    static final class Pool<K> {
+        /**
+         * 最多缓存的对象数量，避免一次大范围的更新之后长期占用内存
+         */
+        static final int MAX_SIZE = 1024;
+        private final EdgeDiff<K>[] free = new EdgeDiff[MAX_SIZE];
+        private int size;
+        /**
+         * 池中没有可复用的对象时新建的数量
+         */
+        private int created;
+
+        EdgeDiff<K> obtain(BaseDijkVertex start, BaseDijkVertex end, long diff) {
+            if (size == 0) {
+                EdgeDiff<K> edgeDiff = new EdgeDiff<>(start, end, diff);
+                edgeDiff.pool = this;
+                created++;
+                return edgeDiff;
+            }
+            EdgeDiff<K> edgeDiff = free[--size];
+            free[size] = null;
+            edgeDiff.start = start;
+            edgeDiff.end = end;
+            edgeDiff.diff = diff;
+            return edgeDiff;
+        }
+
+        private void release(EdgeDiff<K> edgeDiff) {
+            // 不再引用顶点，避免顶点从图中移除后仍被池持有
+            edgeDiff.start = null;
+            edgeDiff.end = null;
+            edgeDiff.count = 0;
+            if (size < MAX_SIZE) {
+                free[size++] = edgeDiff;
+            }
+        }
+
+        int getCreated() {
+            return created;
+        }
+
+        /**
+         * @return 池中可以复用的对象数量
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return 池中的对象是否都已经不在堆中，也不再引用顶点
+         */
+        boolean checkAllReleased() {
+            for (int i = 0; i < size; i++) {
+                EdgeDiff<K> edgeDiff = free[i];
+                if (edgeDiff.inQueue() || edgeDiff.count != 0 || edgeDiff.start != null || edgeDiff.end != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     @Override
     public String toString() {
         return "EdgeDiff{" +
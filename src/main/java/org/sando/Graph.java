@@ -2,6 +2,8 @@ package org.sando;
 
 import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 
 /**
@@ -11,14 +13,29 @@ import java.util.function.Consumer;
  * @version 1.0
  * @since 2024/5/2
  */
+@SuppressWarnings("unchecked")
 public class Graph<K> {
     /**
      * 图的所有顶点
      */
     private final Map<K, Vertex<K>> vertexMap = new HashMap<>();
+    /**
+     * 编号 -> 顶点，顶点的编号在加入图时分配
+     */
+    private Vertex<K>[] vertices;
+    /**
+     * 下一个顶点的编号，同时也是当前所有顶点编号的上界
+     */
+    private int nextId;
     private final boolean directed;
+    /**
+     * 图的读写锁，见{@link #getLock()}
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
     private List<WeakReference<IEdgeAdd<K>>> addEdgeListeners = Collections.emptyList();
     private List<WeakReference<IEdgeUpdate<K>>> edgeUpdates = Collections.emptyList();
+    private List<WeakReference<IEdgeRemove<K>>> removeEdgeListeners = Collections.emptyList();
+    private List<WeakReference<IVertexRemove<K>>> removeVertexListeners = Collections.emptyList();
     /**
      * 是否存在负权重的边
      */
@@ -28,6 +45,11 @@ public class Graph<K> {
      */
     private boolean dense;
 
+    /**
+     * 拓扑不可变的图，边与顶点使用{@link CsrStorage}存储
+     */
+    private final boolean csr;
+
     /**
      * 构造函数
      *
@@ -35,21 +57,42 @@ public class Graph<K> {
      * @param directed 是否是有向图
      */
     public Graph(List<? extends IEdge<K>> edges, boolean directed) {
+        this(edges, directed, false);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param edges    边
+     * @param directed 是否是有向图
+     * @param csr      是否使用CSR存储，使用后图的拓扑不可变，只能修改边的权重
+     */
+    public Graph(List<? extends IEdge<K>> edges, boolean directed, boolean csr) {
         this.directed = directed;
+        this.csr = csr;
         for (IEdge<K> edge : edges) {
             if (edge.getWeight() < 0) {
                 hasNegativeEdge = true;
+                break;
             }
-            K start = edge.getStart();
-            K end = edge.getEnd();
-            // TODO 检测是否存在重复边
-            Vertex<K> vertexStart = vertexMap.computeIfAbsent(start, Vertex::new);
-            Vertex<K> vertexEnd = vertexMap.computeIfAbsent(end, Vertex::new);
-            vertexStart.addOutEdge(vertexEnd, edge);
-            vertexEnd.addInEdge(vertexStart, edge);
-            if (!directed) {
-                vertexEnd.addOutEdge(vertexStart, edge);
-                vertexStart.addInEdge(vertexEnd, edge);
+        }
+        if (csr) {
+            vertices = CsrStorage.build(edges, directed, vertexMap).vertices();
+            nextId = vertices.length;
+        } else {
+            vertices = (Vertex<K>[]) new Vertex<?>[16];
+            for (IEdge<K> edge : edges) {
+                K start = edge.getStart();
+                K end = edge.getEnd();
+                // TODO 检测是否存在重复边
+                Vertex<K> vertexStart = getOrCreateVertex(start);
+                Vertex<K> vertexEnd = getOrCreateVertex(end);
+                vertexStart.addOutEdge(vertexEnd, edge);
+                vertexEnd.addInEdge(vertexStart, edge);
+                if (!directed) {
+                    vertexEnd.addOutEdge(vertexStart, edge);
+                    vertexStart.addInEdge(vertexEnd, edge);
+                }
             }
         }
         int vertexSize = vertexMap.size();
@@ -58,6 +101,20 @@ public class Graph<K> {
         }
     }
 
+    private Vertex<K> getOrCreateVertex(K k) {
+        Vertex<K> vertex = vertexMap.get(k);
+        if (vertex != null) {
+            return vertex;
+        }
+        vertex = new Vertex<>(k, nextId);
+        if (nextId == vertices.length) {
+            vertices = Arrays.copyOf(vertices, nextId + (nextId >> 1));
+        }
+        vertices[nextId++] = vertex;
+        vertexMap.put(k, vertex);
+        return vertex;
+    }
+
     public Set<K> getVertexSet() {
         return vertexMap.keySet();
     }
@@ -66,6 +123,23 @@ public class Graph<K> {
         return vertexMap.get(K);
     }
 
+    /**
+     * 根据编号获取顶点
+     *
+     * @param id 顶点编号
+     * @return 对应的顶点，不存在则返回null
+     */
+    public Vertex<K> getVertexById(int id) {
+        return id < nextId ? vertices[id] : null;
+    }
+
+    /**
+     * 顶点编号的上界，所有顶点的编号都小于该值，可用于按编号分配数组
+     */
+    public int idBound() {
+        return nextId;
+    }
+
     public int size() {
         return vertexMap.size();
     }
@@ -84,37 +158,246 @@ public class Graph<K> {
         edgeUpdates.add(new WeakReference<>(edgeUpdate));
     }
 
+    public void onRemoveEdge(IEdgeRemove<K> removeEdge) {
+        if (removeEdgeListeners.isEmpty()) {
+            removeEdgeListeners = new ArrayList<>();
+        }
+        removeEdgeListeners.add(new WeakReference<>(removeEdge));
+    }
+
+    public void onRemoveVertex(IVertexRemove<K> removeVertex) {
+        if (removeVertexListeners.isEmpty()) {
+            removeVertexListeners = new ArrayList<>();
+        }
+        removeVertexListeners.add(new WeakReference<>(removeVertex));
+    }
+
+    /**
+     * 增加顶点，顶点已经存在时直接返回
+     * <p>新顶点没有边，最短路径树在顶点通过{@link #addEdge(IEdge)}连接后才会感知到它</p>
+     *
+     * @param k 顶点
+     * @return 对应的顶点
+     */
+    public Vertex<K> addVertex(K k) {
+        lock.writeLock().lock();
+        try {
+            if (csr) {
+                throw new UnsupportedOperationException("CSR存储的图拓扑不可变");
+            }
+            return getOrCreateVertex(k);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 移除顶点以及与之相连的所有边，被移除顶点的编号不会再被使用
+     *
+     * @param k 顶点
+     * @return 是否移除成功
+     */
+    public boolean removeVertex(K k) {
+        lock.writeLock().lock();
+        try {
+            if (csr) {
+                throw new UnsupportedOperationException("CSR存储的图拓扑不可变");
+            }
+            Vertex<K> vertex = vertexMap.remove(k);
+            if (vertex == null) {
+                return false;
+            }
+            vertices[vertex.getId()] = null;
+            // 无向图的边同时出现在出边与入边中
+            Set<IEdge<K>> edgeSet = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<IEdge<K>> edges = new ArrayList<>();
+            // 先收集相邻顶点再断开，自环的另一端就是该顶点，遍历时断开会修改正在遍历的边
+            List<Vertex<K>> outAdjacent = new ArrayList<>();
+            List<Vertex<K>> inAdjacent = new ArrayList<>();
+            vertex.walkOutEdge((end, edge) -> {
+                outAdjacent.add(end);
+                if (edgeSet.add(edge)) {
+                    edges.add(edge);
+                }
+            });
+            vertex.walkInEdge((start, edge) -> {
+                inAdjacent.add(start);
+                if (edgeSet.add(edge)) {
+                    edges.add(edge);
+                }
+            });
+            for (Vertex<K> end : outAdjacent) {
+                end.removeInEdge(vertex);
+                if (!directed) {
+                    end.removeOutEdge(vertex);
+                }
+            }
+            for (Vertex<K> start : inAdjacent) {
+                start.removeOutEdge(vertex);
+                if (!directed) {
+                    start.removeInEdge(vertex);
+                }
+            }
+            vertex.outEdges = Collections.emptyMap();
+            vertex.inEdges = Collections.emptyMap();
+            removeVertexListeners.removeIf(weakReference -> {
+                IVertexRemove<K> removeVertex = weakReference.get();
+                if (removeVertex == null) {
+                    return true;
+                }
+                removeVertex.onVertexRemove(vertex, edges);
+                return false;
+            });
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     public void addEdge(IEdge<K> edge) {
-        K start = edge.getStart();
-        K end = edge.getEnd();
-        Vertex<K> vertexStart = vertexMap.computeIfAbsent(start, Vertex::new);
-        Vertex<K> vertexEnd = vertexMap.computeIfAbsent(end, Vertex::new);
-        vertexStart.addOutEdge(vertexEnd, edge);
-        if (!directed) {
-            vertexEnd.addOutEdge(vertexStart, edge);
-        }
-        addEdgeListeners.removeIf(weakReference -> {
-            IEdgeAdd<K> addEdge = weakReference.get();
-            if (addEdge == null) {
-                return true;
+        lock.writeLock().lock();
+        try {
+            if (csr) {
+                throw new UnsupportedOperationException("CSR存储的图拓扑不可变");
             }
-            addEdge.onEdgeAdd(edge);
-            return false;
-        });
-        System.out.println("add edge " + edge);
+            if (edge.getWeight() < 0) {
+                hasNegativeEdge = true;
+            }
+            K start = edge.getStart();
+            K end = edge.getEnd();
+            Vertex<K> vertexStart = getOrCreateVertex(start);
+            Vertex<K> vertexEnd = getOrCreateVertex(end);
+            IEdge<K> oldEdge = vertexStart.getOutEdge(vertexEnd);
+            vertexStart.addOutEdge(vertexEnd, edge);
+            vertexEnd.addInEdge(vertexStart, edge);
+            if (!directed) {
+                vertexEnd.addOutEdge(vertexStart, edge);
+                vertexStart.addInEdge(vertexEnd, edge);
+            }
+            if (oldEdge != null) {
+                // 替换已有的边，对最短路径树而言等同于权重变化
+                fireEdgeUpdate(edge, oldEdge.getWeight());
+                return;
+            }
+            addEdgeListeners.removeIf(weakReference -> {
+                IEdgeAdd<K> addEdge = weakReference.get();
+                if (addEdge == null) {
+                    return true;
+                }
+                addEdge.onEdgeAdd(edge);
+                return false;
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 移除start到end的边，无向图同时移除反方向的边
+     *
+     * @return 被移除的边，不存在则返回null
+     */
+    public IEdge<K> removeEdge(K start, K end) {
+        lock.writeLock().lock();
+        try {
+            if (csr) {
+                throw new UnsupportedOperationException("CSR存储的图拓扑不可变");
+            }
+            Vertex<K> vertexStart = vertexMap.get(start);
+            Vertex<K> vertexEnd = vertexMap.get(end);
+            if (vertexStart == null || vertexEnd == null) {
+                return null;
+            }
+            IEdge<K> edge = vertexStart.removeOutEdge(vertexEnd);
+            if (edge == null) {
+                return null;
+            }
+            vertexEnd.removeInEdge(vertexStart);
+            if (!directed) {
+                vertexEnd.removeOutEdge(vertexStart);
+                vertexStart.removeInEdge(vertexEnd);
+            }
+            removeEdgeListeners.removeIf(weakReference -> {
+                IEdgeRemove<K> removeEdge = weakReference.get();
+                if (removeEdge == null) {
+                    return true;
+                }
+                removeEdge.onEdgeRemove(edge);
+                return false;
+            });
+            return edge;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     public boolean updateWeight(K start, K end, long weight) {
-        Vertex<K> vertex = vertexMap.get(start);
-        if (vertex == null) {
-            return false;
+        lock.writeLock().lock();
+        try {
+            Vertex<K> vertex = vertexMap.get(start);
+            Vertex<K> vertexEnd = vertexMap.get(end);
+            if (vertex == null || vertexEnd == null) {
+                return false;
+            }
+            IEdge<K> edge = vertex.getOutEdge(vertexEnd);
+            if (edge == null) {
+                return false;
+            }
+            long oldWeight = edge.getWeight();
+            edge.setWeight(weight);
+            fireEdgeUpdate(edge, oldWeight);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
         }
-        IEdge<K> edge = vertex.outEdges.get(end);
-        if (edge == null) {
-            return false;
+    }
+
+    /**
+     * 批量更新边的权重，所有变化生效后只通知一次监听者
+     * <p>任意一条边不存在时不做任何修改；同一条边出现多次时以最后一次为准</p>
+     *
+     * @param changes 权重变化
+     * @return 是否更新成功
+     */
+    public boolean updateWeights(Collection<WeightChange<K>> changes) {
+        lock.writeLock().lock();
+        try {
+            List<IEdge<K>> edges = new ArrayList<>(changes.size());
+            for (WeightChange<K> change : changes) {
+                IEdge<K> edge = getEdge(change.getStart(), change.getEnd());
+                if (edge == null) {
+                    return false;
+                }
+                edges.add(edge);
+            }
+            // 边 -> 批量更新前的权重
+            Map<IEdge<K>, Long> oldWeights = new LinkedHashMap<>();
+            Iterator<IEdge<K>> iterator = edges.iterator();
+            for (WeightChange<K> change : changes) {
+                IEdge<K> edge = iterator.next();
+                oldWeights.putIfAbsent(edge, edge.getWeight());
+                edge.setWeight(change.getWeight());
+            }
+            oldWeights.entrySet().removeIf(entry -> entry.getKey().getWeight() == entry.getValue());
+            if (oldWeights.isEmpty()) {
+                return true;
+            }
+            Map<IEdge<K>, Long> unmodifiable = Collections.unmodifiableMap(oldWeights);
+            edgeUpdates.removeIf(weakReference -> {
+                IEdgeUpdate<K> edgeUpdate = weakReference.get();
+                if (edgeUpdate == null) {
+                    return true;
+                }
+                edgeUpdate.onEdgesUpdate(unmodifiable);
+                return false;
+            });
+            return true;
+        } finally {
+            lock.writeLock().unlock();
         }
-        long oldWeight = edge.getWeight();
-        edge.setWeight(weight);
+    }
+
+    private void fireEdgeUpdate(IEdge<K> edge, long oldWeight) {
         edgeUpdates.removeIf(weakReference -> {
             IEdgeUpdate<K> edgeUpdate = weakReference.get();
             if (edgeUpdate == null) {
@@ -123,7 +406,6 @@ public class Graph<K> {
             edgeUpdate.onEdgeUpdate(edge, oldWeight);
             return false;
         });
-        return true;
     }
 
     public void walkVertex(Consumer<Vertex<K>> consumer) {
@@ -131,13 +413,59 @@ public class Graph<K> {
     }
 
     public IEdge<K> getEdge(K start, K end) {
-        return getVertex(start).outEdges.get(end);
+        Vertex<K> vertexStart = getVertex(start);
+        Vertex<K> vertexEnd = getVertex(end);
+        if (vertexStart == null || vertexEnd == null) {
+            return null;
+        }
+        return vertexStart.getOutEdge(vertexEnd);
+    }
+
+    /**
+     * 图的读写锁
+     * <p>修改图的方法持有写锁，并在持有期间通知监听者；最短路径树的搜索与合并更新会读取图，持有读锁。
+     * 遍历或读取图的调用者也应持有读锁</p>
+     */
+    public ReadWriteLock getLock() {
+        return lock;
+    }
+
+    public boolean isCsr() {
+        return csr;
+    }
+
+    public boolean isDirected() {
+        return directed;
     }
 
     interface IEdgeAdd<K> {
+        /**
+         * 图中增加了边，边的顶点可能是新增的
+         *
+         * @param edge 新增的边
+         */
         void onEdgeAdd(IEdge<K> edge);
     }
 
+    interface IEdgeRemove<K> {
+        /**
+         * 图中移除了边
+         *
+         * @param edge 被移除的边，权重保持移除前的值
+         */
+        void onEdgeRemove(IEdge<K> edge);
+    }
+
+    interface IVertexRemove<K> {
+        /**
+         * 图中移除了顶点
+         *
+         * @param vertex 被移除的顶点，已经没有任何边
+         * @param edges  随顶点一起被移除的边
+         */
+        void onVertexRemove(Vertex<K> vertex, List<IEdge<K>> edges);
+    }
+
     interface IEdgeUpdate<K> {
         /**
          * 边的权重发生变化
@@ -145,5 +473,14 @@ public class Graph<K> {
          * @param oldWeight 变化前的权重
          */
         void onEdgeUpdate(IEdge<K> edge, long oldWeight);
+
+        /**
+         * 多条边的权重同时发生变化，默认逐条通知
+         *
+         * @param oldWeights 发生变化的边 -> 变化前的权重
+         */
+        default void onEdgesUpdate(Map<IEdge<K>, Long> oldWeights) {
+            oldWeights.forEach(this::onEdgeUpdate);
+        }
     }
 }
\ No newline at end of file
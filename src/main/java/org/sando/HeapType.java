@@ -0,0 +1,34 @@
+package org.sando;
+
+/**
+ * 最短路径树搜索与更新时使用的优先队列
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/18
+ */
+public enum HeapType {
+    /**
+     * 斐波那契堆，元素为顶点/EdgeDiff对象，每次插入分配一个堆节点
+     */
+    FIBONACCI,
+    /**
+     * 以long为优先级、int编号为元素的d叉堆({@link org.sando.heap.dheap.DaryHeap})，
+     * 比较时不访问对象，插入时不分配对象
+     */
+    DARY,
+    /**
+     * 单调的基数堆({@link org.sando.heap.radixheap.RadixHeap})，插入与decrease key为O(1)，
+     * 适用于整数权重；只用于搜索，更新时的优先级不单调，使用{@link #DARY}
+     */
+    RADIX,
+    /**
+     * 配对堆({@link org.sando.heap.pairingheap.PairingHeap})，元素为顶点/EdgeDiff对象
+     */
+    PAIRING,
+    /**
+     * 空心堆({@link org.sando.heap.hollowheap.HollowHeap})，元素为顶点/EdgeDiff对象，
+     * decrease key为O(1)且不需要级联剪切
+     */
+    HOLLOW
+}
@@ -0,0 +1,41 @@
+package org.sando;
+
+/**
+ * {@link ShortestPathTreeCache}的淘汰策略，只记录起点，不持有最短路径树
+ * <p>缓存在调用线程上串行调用策略的方法，实现不需要考虑线程安全</p>
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/11
+ */
+public interface IEvictionPolicy<K> {
+    /**
+     * 查询了从k出发的最短路径树，k可能不在缓存中
+     */
+    void recordAccess(K k);
+
+    /**
+     * 从k出发的最短路径树加入了缓存
+     */
+    void onInsert(K k);
+
+    /**
+     * 从k出发的最短路径树离开了缓存
+     */
+    void onRemove(K k);
+
+    /**
+     * @return 下一个被淘汰的起点，缓存为空时返回null
+     */
+    K victim();
+
+    /**
+     * 缓存已满时，是否用candidate替换victim
+     *
+     * @param candidate 新的起点
+     * @param victim    将被淘汰的起点
+     */
+    default boolean admit(K candidate, K victim) {
+        return true;
+    }
+}
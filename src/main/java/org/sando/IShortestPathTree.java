@@ -0,0 +1,160 @@
+package org.sando;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 最短路径树
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/9
+ */
+public interface IShortestPathTree<K> {
+    /**
+     * 获取最短路径上k的前驱顶点
+     *
+     * @param k 顶点，为null时表示计算完整的最短路径树
+     * @return 前驱顶点，起点的前驱顶点为自身，不可达时返回null
+     */
+    Vertex<K> getPrevious(K k);
+
+    /**
+     * 完成搜索，得到完整的最短路径树，已经完整时只合并未处理的变化
+     */
+    void completeSearch();
+
+    /**
+     * 获取到end的最短距离
+     *
+     * @return 最短距离，不可达时返回{@link Long#MAX_VALUE}
+     */
+    long getDistance(K end);
+
+    /**
+     * 边的权重发生变化
+     *
+     * @param edge      发生变化的边
+     * @param oldWeight 变化前的权重
+     */
+    void edgeUpdate(IEdge<K> edge, long oldWeight);
+
+    /**
+     * 多条边的权重同时发生变化，所有变化一起生效
+     *
+     * @param oldWeights 发生变化的边 -> 变化前的权重
+     */
+    void edgesUpdate(Map<IEdge<K>, Long> oldWeights);
+
+    /**
+     * 图中增加了边
+     */
+    void edgeAdd(IEdge<K> edge);
+
+    /**
+     * 图中移除了边
+     *
+     * @param edge 被移除的边，权重保持移除前的值
+     */
+    void edgeRemove(IEdge<K> edge);
+
+    /**
+     * 图中移除了顶点
+     *
+     * @param vertex 被移除的顶点
+     * @param edges  随顶点一起被移除的边
+     */
+    void vertexRemove(Vertex<K> vertex, List<IEdge<K>> edges);
+
+    /**
+     * 不触发搜索与合并更新，获取当前到顶点的距离
+     *
+     * @param id 顶点编号，见{@link Vertex#getId()}
+     * @return 当前距离，不可达或者还未搜索到时返回{@link Long#MAX_VALUE}
+     */
+    long getDistanceById(int id);
+
+    /**
+     * 获取最近一次发布的快照，不加锁，不会等待正在进行的更新
+     * <p>树完整时发布第一个版本，之后每次更新生效时发布新的版本；第一次调用时如果树还不完整，会先完成搜索。
+     * 合并更新时，待合并的变化在下一次查询合并之后才会发布</p>
+     */
+    TreeSnapshot<K> getSnapshot();
+
+    /**
+     * 设置重新计算的阈值：合并更新前估算受影响的顶点数量，超过图中顶点的ratio比例时重新计算整棵树，否则增量更新
+     *
+     * @param ratio 比例，默认为{@link UpdateMetrics#DEFAULT_RECOMPUTE_RATIO}，
+     *              {@link Double#POSITIVE_INFINITY}表示总是增量更新，0表示只要有顶点受影响就重新计算
+     */
+    void setRecomputeRatio(double ratio);
+
+    /**
+     * 设置记录更新策略的统计，为null时不记录
+     */
+    void setUpdateMetrics(UpdateMetrics metrics);
+
+    /**
+     * 不触发搜索与合并更新，获取以顶点为根的子树中的顶点数量，即最短路径经过该顶点的顶点数量(包括自身)
+     * <p>树完整后维护，查询为O(1)</p>
+     *
+     * @param id 顶点编号，见{@link Vertex#getId()}
+     * @return 子树大小，树不完整或者顶点不可达时返回0
+     */
+    int getSubtreeSizeById(int id);
+
+    /**
+     * 估算最短路径树占用的内存，用于{@link ShortestPathTreeCache}的内存预算
+     *
+     * @return 估算的字节数
+     */
+    long estimateMemory();
+
+    /**
+     * 标记为已经离开{@link ShortestPathTreeCache}，由缓存在树被淘汰或者没有被接纳时调用
+     */
+    void detach();
+
+    /**
+     * 是否已经离开缓存：离开缓存的树不再收到图的变化，查询结果停留在离开时的图上，应从缓存重新获取
+     */
+    boolean isDetached();
+
+    /**
+     * 设置树边变化的监听者
+     * <p>树完整之后才会通知：变得完整时逐条通知所有树边，之后通知每一次前驱顶点的变化。
+     * 替换监听者时，原来的监听者会收到所有树边的移除，新的监听者会收到所有树边的加入</p>
+     *
+     * @param listener 监听者，为null时表示移除
+     */
+    void setTreeEdgeListener(ITreeEdgeListener listener);
+
+    /**
+     * 所有顶点的更新状态是否已经重置
+     */
+    boolean checkAllReset();
+
+    /**
+     * 打印完整最短路径
+     */
+    void printAllPath();
+
+    /**
+     * 最短路径树的树边变化
+     */
+    interface ITreeEdgeListener {
+        /**
+         * 顶点的前驱顶点发生变化，即树边从(oldParent, vertex)变为(newParent, vertex)
+         *
+         * @param vertex    顶点编号
+         * @param oldParent 原来的前驱顶点编号，没有时为-1
+         * @param newParent 新的前驱顶点编号，没有时为-1
+         */
+        void onTreeEdgeChange(int vertex, int oldParent, int newParent);
+
+        /**
+         * 最短路径树变得完整，所有树边已经通知完毕
+         */
+        void onComplete();
+    }
+}
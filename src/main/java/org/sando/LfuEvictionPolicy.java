@@ -0,0 +1,60 @@
+package org.sando;
+
+import java.util.*;
+
+/**
+ * 最不经常使用(LFU)淘汰策略，访问次数相同时淘汰最早进入该次数的起点
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/11
+ */
+public class LfuEvictionPolicy<K> implements IEvictionPolicy<K> {
+    /**
+     * 起点 -> 访问次数
+     */
+    private final Map<K, Integer> counts = new HashMap<>();
+    /**
+     * 访问次数 -> 起点
+     */
+    private final TreeMap<Integer, LinkedHashSet<K>> buckets = new TreeMap<>();
+
+    @Override
+    public void recordAccess(K k) {
+        Integer count = counts.get(k);
+        if (count == null) {
+            return;
+        }
+        removeFromBucket(k, count);
+        counts.put(k, count + 1);
+        buckets.computeIfAbsent(count + 1, c -> new LinkedHashSet<>()).add(k);
+    }
+
+    @Override
+    public void onInsert(K k) {
+        counts.put(k, 1);
+        buckets.computeIfAbsent(1, c -> new LinkedHashSet<>()).add(k);
+    }
+
+    @Override
+    public void onRemove(K k) {
+        Integer count = counts.remove(k);
+        if (count != null) {
+            removeFromBucket(k, count);
+        }
+    }
+
+    private void removeFromBucket(K k, int count) {
+        LinkedHashSet<K> bucket = buckets.get(count);
+        bucket.remove(k);
+        if (bucket.isEmpty()) {
+            buckets.remove(count);
+        }
+    }
+
+    @Override
+    public K victim() {
+        Map.Entry<Integer, LinkedHashSet<K>> entry = buckets.firstEntry();
+        return entry == null ? null : entry.getValue().iterator().next();
+    }
+}
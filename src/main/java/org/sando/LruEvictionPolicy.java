@@ -0,0 +1,38 @@
+package org.sando;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 最近最少使用(LRU)淘汰策略
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/11
+ */
+public class LruEvictionPolicy<K> implements IEvictionPolicy<K> {
+    /**
+     * 按访问顺序排列的起点，头部最久未被访问
+     */
+    private final Map<K, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Override
+    public void recordAccess(K k) {
+        order.get(k);
+    }
+
+    @Override
+    public void onInsert(K k) {
+        order.put(k, Boolean.TRUE);
+    }
+
+    @Override
+    public void onRemove(K k) {
+        order.remove(k);
+    }
+
+    @Override
+    public K victim() {
+        return order.isEmpty() ? null : order.keySet().iterator().next();
+    }
+}
@@ -1,16 +1,26 @@
 package org.sando;
 
+import java.util.Arrays;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
  * 最短路径树辅助函数
+ * <p>遍历使用显式栈而不是递归，很深的树(例如长链)不会栈溢出；
+ * 每个线程复用同一个栈，遍历过程中不再为每个顶点分配对象。
+ * 遍历期间只能修改正在被消费的顶点自身的前驱(此时它的兄弟已经入栈，它的后继还未入栈)，
+ * 不能修改子树中其他的前驱/后继关系</p>
  * @author Sando Geek
  * @since 2024/05/08
  * @version 1.0
  */
 public class PathTreeHelper {
+    /**
+     * 每个线程复用的遍历栈，嵌套遍历在栈顶之上继续使用
+     */
+    private static final ThreadLocal<VertexStack> STACK = ThreadLocal.withInitial(VertexStack::new);
+
     private PathTreeHelper() {
     }
 
@@ -30,27 +40,90 @@ public class PathTreeHelper {
     }
 
     /**
-     * 递归处理最短路径上的后继节点
+     * 先序处理最短路径上的后继节点，顺序与递归遍历一致
      *
      * @param vertexRoot     起点
      * @param vertexConsumer 消费节点
      * @param stopRecursive  是否停止递归该节点的后继节点,并且该节点不会被消费
+     * @param biConsumer     自定义遍历后继节点的方式，为null时使用{@link BaseDijkVertex}的后继链表
      */
+    @SuppressWarnings("unchecked")
     public static <K, V extends BaseDijkVertex<K, V>> void handleSuccessorRecursive(V vertexRoot,
                                           Consumer<? super V> vertexConsumer, Function<? super V, Boolean> stopRecursive,
                                                                                     BiConsumer<V, Consumer<V>> biConsumer
     ) {
-        Consumer<V> successConsumer = vertex -> {
-            if (stopRecursive != null && stopRecursive.apply(vertex)) {
-                return;
+        VertexStack stack = STACK.get();
+        int base = stack.size;
+        Consumer<V> push = biConsumer == null ? null : stack::push;
+        try {
+            pushSuccessor(stack, vertexRoot, biConsumer, push);
+            while (stack.size > base) {
+                V vertex = (V) stack.pop();
+                if (stopRecursive != null && stopRecursive.apply(vertex)) {
+                    continue;
+                }
+                vertexConsumer.accept(vertex);
+                pushSuccessor(stack, vertex, biConsumer, push);
+            }
+        } finally {
+            stack.truncate(base);
+        }
+    }
+
+    /**
+     * 把后继节点逆序压栈，出栈的顺序与后继链表的顺序一致
+     */
+    private static <K, V extends BaseDijkVertex<K, V>> void pushSuccessor(VertexStack stack, V vertex,
+                                                                       BiConsumer<V, Consumer<V>> biConsumer, Consumer<V> push) {
+        if (biConsumer == null) {
+            for (V successor = vertex.lastSuccessor(); successor != null; successor = successor.previousSibling()) {
+                stack.push(successor);
             }
-            vertexConsumer.accept(vertex);
-            handleSuccessorRecursive(vertex, vertexConsumer, stopRecursive, biConsumer);
-        };
-        if (biConsumer != null) {
-            biConsumer.accept(vertexRoot, successConsumer);
             return;
         }
-        vertexRoot.walkSuccessor(successConsumer);
+        int from = stack.size;
+        biConsumer.accept(vertex, push);
+        stack.reverse(from);
+    }
+
+    /**
+     * 可复用的顶点栈
+     */
+    private static final class VertexStack {
+        private Object[] items = new Object[64];
+        private int size;
+
+        void push(Object vertex) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size << 1);
+            }
+            items[size++] = vertex;
+        }
+
+        Object pop() {
+            Object vertex = items[--size];
+            items[size] = null;
+            return vertex;
+        }
+
+        /**
+         * 反转[from, size)
+         */
+        void reverse(int from) {
+            for (int i = from, j = size - 1; i < j; i++, j--) {
+                Object tmp = items[i];
+                items[i] = items[j];
+                items[j] = tmp;
+            }
+        }
+
+        /**
+         * 异常时丢弃本次遍历剩余的顶点
+         */
+        void truncate(int newSize) {
+            while (size > newSize) {
+                items[--size] = null;
+            }
+        }
     }
 }
@@ -0,0 +1,67 @@
+package org.sando;
+
+import java.util.Objects;
+
+/**
+ * 无向图中边的反方向，与原边共享权重
+ * <p>无向图的一条边在最短路径树中可以从任意一端到达另一端，更新器以该对象作为反方向变化的键</p>
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/16
+ */
+final class ReversedEdge<K> implements IEdge<K> {
+    private final IEdge<K> edge;
+
+    ReversedEdge(IEdge<K> edge) {
+        this.edge = edge;
+    }
+
+    /**
+     * @return 无向图中除自环外的边返回反方向，否则返回null
+     */
+    static <K> ReversedEdge<K> of(Graph<K> graph, IEdge<K> edge) {
+        if (graph.isDirected() || Objects.equals(edge.getStart(), edge.getEnd())) {
+            return null;
+        }
+        return new ReversedEdge<>(edge);
+    }
+
+    @Override
+    public K getStart() {
+        return edge.getEnd();
+    }
+
+    @Override
+    public K getEnd() {
+        return edge.getStart();
+    }
+
+    @Override
+    public long getWeight() {
+        return edge.getWeight();
+    }
+
+    @Override
+    public void setWeight(long weight) {
+        edge.setWeight(weight);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof ReversedEdge && edge.equals(((ReversedEdge<?>) o).edge);
+    }
+
+    @Override
+    public int hashCode() {
+        return ~edge.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ReversedEdge{" + edge + '}';
+    }
+}
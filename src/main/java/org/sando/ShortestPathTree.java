@@ -1,5 +1,10 @@
 package org.sando;
 
+import org.sando.heap.IIndexedLongHeap;
+import org.sando.heap.dheap.DaryHeap;
+import org.sando.heap.hollowheap.HollowHeap;
+import org.sando.heap.pairingheap.PairingHeap;
+import org.sando.heap.radixheap.RadixHeap;
 import org.sando.heap.fiboheap.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,9 +18,13 @@ import java.util.*;
  * @version 1.0
  * @since 2024/5/2
  */
-public class ShortestPathTree<K> {
+@SuppressWarnings("unchecked")
+public class ShortestPathTree<K> implements IShortestPathTree<K> {
     private static final Logger LOGGER = LoggerFactory.getLogger(ShortestPathTree.class);
-    Map<K, DijkstraVertex<K>> vertexMap;
+    /**
+     * 顶点编号 -> 顶点，见{@link Vertex#getId()}
+     */
+    DijkstraVertex<K>[] vertices;
     private DijkstraVertex<K> root;
     private final Graph<K> graph;
     /**
@@ -27,19 +36,58 @@ public class ShortestPathTree<K> {
      */
     boolean complete;
     private ShortestPathTreeUpdater<K> treeUpdater;
+    private ITreeEdgeListener treeEdgeListener;
+    private final TreeLock treeLock;
+    /**
+     * 发布供不加锁读取的快照
+     */
+    private final TreeSnapshot.Writer<K> snapshotWriter;
+    /**
+     * 已经离开缓存，见{@link #isDetached()}
+     */
+    private volatile boolean detached;
+    /**
+     * 各顶点的子树大小是否有效：修改前驱后失效，查询时再批量计算，见{@link #subtreeSize(BaseDijkVertex, int)}
+     */
+    private volatile boolean subtreeSizeValid;
+    /**
+     * 持有读锁的多个线程同时查询子树大小时，只由一个线程批量计算
+     */
+    private final Object subtreeSizeLock = new Object();
+    /**
+     * 搜索与更新使用的优先队列
+     */
+    private final HeapType heapType;
 
     public ShortestPathTree(Graph<K> graph, K root) {
         this(graph, root, true);
     }
 
     public ShortestPathTree(Graph<K> graph, K root, boolean mergeUpdate) {
+        this(graph, root, mergeUpdate, HeapType.FIBONACCI);
+    }
+
+    /**
+     * @param heapType 搜索与更新使用的优先队列
+     */
+    public ShortestPathTree(Graph<K> graph, K root, boolean mergeUpdate, HeapType heapType) {
         if (graph.hasNegativeEdge) {
             throw new IllegalStateException("dijkstra算法不支持负权重边");
         }
         this.graph = graph;
-        this.vertexMap = new HashMap<>(graph.size());
-        this.root = getOrCreateVertex(root);
-        this.treeUpdater = new ShortestPathTreeUpdater<>(this, mergeUpdate);
+        this.vertices = (DijkstraVertex<K>[]) new DijkstraVertex<?>[graph.idBound()];
+        this.root = getOrCreateVertex(graph.getVertex(root));
+        this.heapType = Objects.requireNonNull(heapType);
+        this.treeUpdater = new ShortestPathTreeUpdater<>(this, mergeUpdate, heapType);
+        this.treeLock = new TreeLock(graph, this::isStable);
+        this.snapshotWriter = new TreeSnapshot.Writer<>(graph);
+    }
+
+    /**
+     * 已经完整且没有待合并的变化，此时查询不会修改树
+     */
+    private boolean isStable() {
+        return complete && !treeUpdater.hasPendingChange();
     }
 
     void dijkstra(K target) {
@@ -50,34 +98,269 @@ public class ShortestPathTree<K> {
         if (heapWrapper == null) {
             this.root.setDistance(0);
             // 遍历所有顶点
-            graph.walkVertex(kVertex -> getOrCreateVertex(kVertex.getK()));
+            graph.walkVertex(this::getOrCreateVertex);
             heapWrapper = new DijkHeapWrapper();
         }
+        Vertex<K> targetVertex = target == null ? null : graph.getVertex(target);
 
-        VertexIndex<K> start;
         while (!heapWrapper.isEmpty()) {
-            start = heapWrapper.poll();
+            VertexIndex<K> start = heapWrapper.poll();
             LOGGER.debug("选中节点：" + start);
             start.selected = true;
+            heapWrapper.selectedDistance = start.getDistance();
             start.changePrevious(start.getPrevious());
             // 遍历所有邻接顶点
-            for (Map.Entry<K, IEdge<K>> entry : start.dVertex.vertex.outEdges.entrySet()) {
-                K end = entry.getKey();
+            start.dVertex.vertex.walkOutEdge((end, edge) -> {
                 VertexIndex<K> viEnd = heapWrapper.getVertexIndex(end);
                 if (viEnd.selected) {
-                    continue;
+                    return;
                 }
-                IEdge<K> edge = entry.getValue();
                 relax(heapWrapper, start, viEnd, edge);
-            }
+            });
 //            LOGGER.debug("堆状态：" + heapWrapper);
-            if (start.dVertex.vertex.getK().equals(target)) {
+            if (start.dVertex.vertex == targetVertex) {
                 break;
             }
         }
         if (heapWrapper.isEmpty()) {
             complete = true;
             heapWrapper = null;
+            subtreeSizeValid = false;
+            publishSnapshot();
+            if (treeEdgeListener != null) {
+                notifyAllTreeEdge(treeEdgeListener, true);
+                treeEdgeListener.onComplete();
+            }
+        }
+    }
+
+    /**
+     * 批量计算所有顶点的子树大小，O(顶点数)，在下一次修改前驱之前有效
+     */
+    private void initSubtreeSize() {
+        for (DijkstraVertex<K> vertex : vertices) {
+            if (vertex != null) {
+                vertex.initSubtreeSize(1);
+            }
+        }
+        // 先序遍历，逆序时每个顶点的后代都已经累加完毕
+        List<DijkstraVertex<K>> order = new ArrayList<>();
+        Deque<DijkstraVertex<K>> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            DijkstraVertex<K> vertex = stack.pop();
+            order.add(vertex);
+            vertex.walkSuccessor(stack::push);
+        }
+        for (int i = order.size() - 1; i > 0; i--) {
+            DijkstraVertex<K> vertex = order.get(i);
+            DijkstraVertex<K> previous = vertex.getPrevious();
+            previous.initSubtreeSize(previous.getSubtreeSize() + vertex.getSubtreeSize());
+        }
+    }
+
+    /**
+     * 逐条通知所有树边的加入或移除
+     */
+    private void notifyAllTreeEdge(ITreeEdgeListener listener, boolean add) {
+        for (DijkstraVertex<K> vertex : vertices) {
+            if (vertex == null || vertex.getPrevious() == null || vertex.getPrevious() == vertex) {
+                continue;
+            }
+            int id = vertex.getVertex().getId();
+            int parent = vertex.getPrevious().getVertex().getId();
+            listener.onTreeEdgeChange(id, add ? -1 : parent, add ? parent : -1);
+        }
+    }
+
+    /**
+     * 完整的最短路径树中顶点的前驱发生了变化，批量计算的子树大小随之失效
+     */
+    void invalidateSubtreeSize() {
+        subtreeSizeValid = false;
+    }
+
+    /**
+     * 以vertex为根的子树大小：批量计算的结果有效时O(1)，否则遍历子树，达到limit后不再继续
+     */
+    int subtreeSize(BaseDijkVertex<K, ?> vertex, int limit) {
+        return subtreeSizeValid ? vertex.getSubtreeSize() : vertex.countSubtree(limit);
+    }
+
+    /**
+     * 完整的最短路径树中顶点的距离或前驱顶点发生了变化，下一次发布快照时写入
+     */
+    void markDirty(BaseDijkVertex<K, ?> vertex) {
+        snapshotWriter.markDirty(vertex.getVertex().getId());
+    }
+
+    /**
+     * 丢弃当前的最短路径树，从起点重新搜索，用于受影响的顶点太多、增量更新不划算的情况
+     * <p>只通知前驱发生变化的顶点，快照整体重新发布</p>
+     */
+    void recompute() {
+        int[] oldParent = new int[vertices.length];
+        for (int id = 0; id < vertices.length; id++) {
+            oldParent[id] = parentId(vertices[id]);
+        }
+        ITreeEdgeListener listener = treeEdgeListener;
+        treeEdgeListener = null;
+        complete = false;
+        resetSearch();
+        snapshotWriter.markAll();
+        dijkstra(null);
+        treeEdgeListener = listener;
+        if (listener == null) {
+            return;
+        }
+        for (int id = 0; id < vertices.length; id++) {
+            int old = id < oldParent.length ? oldParent[id] : -1;
+            int previous = parentId(vertices[id]);
+            if (old != previous) {
+                listener.onTreeEdgeChange(id, old, previous);
+            }
+        }
+    }
+
+    /**
+     * @return 树边的起点编号，没有前驱或者前驱为自身时为-1
+     */
+    private static int parentId(DijkstraVertex<?> vertex) {
+        if (vertex == null || vertex.getPrevious() == null || vertex.getPrevious() == vertex) {
+            return -1;
+        }
+        return vertex.getPrevious().getVertex().getId();
+    }
+
+    /**
+     * 发布当前的最短路径树，更新完成时由持有写锁的线程调用
+     */
+    void publishSnapshot() {
+        snapshotWriter.publish(vertices.length, id -> vertices[id] == null ? Long.MAX_VALUE : vertices[id].getDistance(), id -> {
+            DijkstraVertex<K> vertex = vertices[id];
+            return vertex == null || vertex.getPrevious() == null ? -1 : vertex.getPrevious().getVertex().getId();
+        });
+    }
+
+    @Override
+    public void setRecomputeRatio(double ratio) {
+        treeLock.lockWrite();
+        try {
+            treeUpdater.setRecomputeRatio(ratio);
+        } finally {
+            treeLock.unlockWrite();
+        }
+    }
+
+    @Override
+    public void setUpdateMetrics(UpdateMetrics metrics) {
+        treeLock.lockWrite();
+        try {
+            treeUpdater.setMetrics(metrics);
+        } finally {
+            treeLock.unlockWrite();
+        }
+    }
+
+    @Override
+    public TreeSnapshot<K> getSnapshot() {
+        TreeSnapshot<K> snapshot = snapshotWriter.get();
+        if (snapshot == null) {
+            // 树完整时发布第一个版本
+            completeSearch();
+            snapshot = snapshotWriter.get();
+        }
+        return snapshot;
+    }
+
+    /**
+     * 完整的最短路径树中顶点的前驱顶点发生了变化
+     */
+    void treeEdgeChanged(BaseDijkVertex<K, ?> vertex, BaseDijkVertex<K, ?> oldPrevious, BaseDijkVertex<K, ?> newPrevious) {
+        if (treeEdgeListener == null || !complete) {
+            return;
+        }
+        int id = vertex.getVertex().getId();
+        int oldParent = oldPrevious == null || oldPrevious == vertex ? -1 : oldPrevious.getVertex().getId();
+        int newParent = newPrevious == null || newPrevious == vertex ? -1 : newPrevious.getVertex().getId();
+        if (oldParent != newParent) {
+            treeEdgeListener.onTreeEdgeChange(id, oldParent, newParent);
+        }
+    }
+
+    @Override
+    public void setTreeEdgeListener(ITreeEdgeListener listener) {
+        treeLock.lockWrite();
+        try {
+            if (complete && treeEdgeListener != null) {
+                notifyAllTreeEdge(treeEdgeListener, false);
+            }
+            treeEdgeListener = listener;
+            if (complete && listener != null) {
+                notifyAllTreeEdge(listener, true);
+                listener.onComplete();
+            }
+        } finally {
+            treeLock.unlockWrite();
+        }
+    }
+
+    /**
+     * 每个顶点按一个DijkstraVertex(后继为侵入式链接)约48字节加数组引用估算；
+     * 搜索未完成时每个顶点另有一个VertexIndex(含堆节点)约64字节
+     */
+    @Override
+    public long estimateMemory() {
+        long bytes = (long) vertices.length * 52;
+        if (heapWrapper != null) {
+            bytes += (long) heapWrapper.indexes.length * 68;
+        }
+        return bytes;
+    }
+
+    @Override
+    public void detach() {
+        detached = true;
+    }
+
+    @Override
+    public boolean isDetached() {
+        return detached;
+    }
+
+    @Override
+    public int getSubtreeSizeById(int id) {
+        treeLock.lockRead();
+        try {
+            DijkstraVertex<K> vertex = id < vertices.length ? vertices[id] : null;
+            if (!complete || vertex == null || vertex.getPrevious() == null) {
+                return 0;
+            }
+            if (!subtreeSizeValid) {
+                synchronized (subtreeSizeLock) {
+                    if (!subtreeSizeValid) {
+                        initSubtreeSize();
+                        subtreeSizeValid = true;
+                    }
+                }
+            }
+            return vertex.getSubtreeSize();
+        } finally {
+            treeLock.unlockRead();
+        }
+    }
+
+    @Override
+    public long getDistanceById(int id) {
+        treeLock.lockRead();
+        try {
+            DijkstraVertex<K> vertex = id < vertices.length ? vertices[id] : null;
+            if (vertex == null || vertex.getPrevious() == null) {
+                return Long.MAX_VALUE;
+            }
+            return vertex.getDistance();
+        } finally {
+            treeLock.unlockRead();
         }
     }
 
@@ -88,157 +371,366 @@ public class ShortestPathTree<K> {
         DijkstraVertex<K> vertex = end.dVertex;
         long weight = edge.getWeight();
         long distanceNew = start.dVertex.getDistance() + weight;
-        LOGGER.debug("松弛边：start={},end={}", edge.getStart(), heap.getVertexIndex(edge.getEnd()));
+        LOGGER.debug("松弛边：start={},end={}", edge.getStart(), end);
         if (distanceNew < vertex.getDistance()) {
             vertex.setDistance(distanceNew);
             LOGGER.debug("更新节点：{}", vertex);
             end.changePrevious(start);
-            if (end.getHeap() == null) {
-                heap.offer(end);
+            heap.offerOrDecrease(end);
+        }
+    }
+
+    @Override
+    public void edgeUpdate(IEdge<K> edge, long oldWeight) {
+        treeLock.lockWrite();
+        try {
+            long weight = edge.getWeight();
+            if (weight == oldWeight) {
                 return;
             }
-            end.decreaseKey();
+            if (!complete) {
+                searchEdgeUpdate(edge, oldWeight);
+            } else {
+                treeUpdater.edgeUpdate(edge, oldWeight);
+            }
+        } finally {
+            treeLock.unlockWrite();
         }
     }
 
-    public void edgeUpdate(IEdge<K> edge, long oldWeight) {
-        long weight = edge.getWeight();
-        if (weight == oldWeight) {
+    /**
+     * 批量权重变化，完整的最短路径树只合并更新一次
+     */
+    @Override
+    public void edgesUpdate(Map<IEdge<K>, Long> oldWeights) {
+        treeLock.lockWrite();
+        try {
+            if (!complete) {
+                for (Map.Entry<IEdge<K>, Long> entry : oldWeights.entrySet()) {
+                    if (entry.getKey().getWeight() != entry.getValue()) {
+                        searchEdgeUpdate(entry.getKey(), entry.getValue());
+                    }
+                }
+            } else {
+                treeUpdater.edgesUpdate(oldWeights);
+            }
+        } finally {
+            treeLock.unlockWrite();
+        }
+    }
+
+    /**
+     * 未完成的搜索中边的权重发生变化，只在已选中顶点的距离不再可靠时丢弃已搜索的部分
+     */
+    private void searchEdgeUpdate(IEdge<K> edge, long oldWeight) {
+        if (heapWrapper == null) {
+            return;
+        }
+        Vertex<K> start = graph.getVertex(edge.getStart());
+        Vertex<K> end = graph.getVertex(edge.getEnd());
+        searchEdgeUpdate(start, end, edge, oldWeight);
+        IEdge<K> reversed = ReversedEdge.of(graph, edge);
+        if (reversed != null) {
+            searchEdgeUpdate(end, start, reversed, oldWeight);
+        }
+    }
+
+    private void searchEdgeUpdate(Vertex<K> startVertex, Vertex<K> endVertex, IEdge<K> edge, long oldWeight) {
+        if (heapWrapper == null || startVertex == endVertex) {
             return;
         }
-        if (!complete) {
+        VertexIndex<K> start = heapWrapper.getVertexIndex(startVertex);
+        if (!start.selected) {
+            // 起点被选中时会按新的权重松弛这条边
+            return;
+        }
+        VertexIndex<K> end = heapWrapper.getVertexIndex(endVertex);
+        if (edge.getWeight() < oldWeight) {
+            if (start.getDistance() + edge.getWeight() < heapWrapper.selectedDistance) {
+                // 可能使已选中顶点的距离变小，已搜索的部分不再可靠
+                resetSearch();
+            } else if (!end.selected) {
+                relax(heapWrapper, start, end, edge);
+            }
+            return;
+        }
+        if (end.getPrevious() != start) {
+            return;
+        }
+        if (end.selected) {
+            // 已选中顶点的最短路径变长
+            resetSearch();
+            return;
+        }
+        // 终点的临时距离来自这条边，按已选中的入边邻居重新计算
+        VertexIndex<K> previous = null;
+        long distance = Long.MAX_VALUE;
+        for (Map.Entry<Vertex<K>, IEdge<K>> inEdge : endVertex.inEdges.entrySet()) {
+            VertexIndex<K> in = heapWrapper.getVertexIndex(inEdge.getKey());
+            if (in.selected && in.getDistance() + inEdge.getValue().getWeight() < distance) {
+                distance = in.getDistance() + inEdge.getValue().getWeight();
+                previous = in;
+            }
+        }
+        if (previous == null) {
+            heapWrapper.remove(end);
+            end.changePrevious(null);
+            end.dVertex.resetDistance();
+        } else if (distance < heapWrapper.selectedDistance) {
+            // 批量更新中其它入边的权重变小
+            resetSearch();
+        } else {
+            end.changePrevious(previous);
+            heapWrapper.changeDistance(end, distance);
+        }
+    }
+
+    /**
+     * 丢弃未完成的搜索状态
+     */
+    private void resetSearch() {
+        heapWrapper = null;
+        for (DijkstraVertex<K> vertex : vertices) {
+            if (vertex == null) {
+                continue;
+            }
+            vertex.changePrevious(null);
+            vertex.resetDistance();
+        }
+    }
+
+    /**
+     * 新增的边视为权重从无穷大减少，新增的顶点直接加入树中(不可达)
+     */
+    @Override
+    public void edgeAdd(IEdge<K> edge) {
+        treeLock.lockWrite();
+        try {
+            Vertex<K> startVertex = graph.getVertex(edge.getStart());
+            Vertex<K> endVertex = graph.getVertex(edge.getEnd());
+            getOrCreateVertex(startVertex);
+            getOrCreateVertex(endVertex);
+            if (complete) {
+                treeUpdater.edgeAdd(edge);
+                return;
+            }
             if (heapWrapper == null) {
                 return;
             }
-            List<VertexIndex<K>> vertexList = generateRelateVertex(edge);
-            treeUpdater.edgeUpdate(edge, oldWeight);
-            treeUpdater.tryMergeUpdate();
-            handleRelateVertex(vertexList);
-            printTmpPath();
-            System.out.println("打印临时路径结束");
-        } else {
-            treeUpdater.edgeUpdate(edge, oldWeight);
-        }
-    }
-
-    private void handleRelateVertex(List<VertexIndex<K>> vertexList) {
-        for (VertexIndex<K> vertex : vertexList) {
-            Map<K, IEdge<K>> inEdges = vertex.getVertex().inEdges;
-            long minDistance = vertex.getDistance();
-            VertexIndex<K> parent = vertex.getTmpPrevious();
-            boolean allInSelected = true;
-            for (Map.Entry<K, IEdge<K>> entry : inEdges.entrySet()) {
-                K start = entry.getKey();
-                VertexIndex<K> vertexStart = heapWrapper.getVertexIndex(start);
-                boolean selected = vertexStart.selected;
-                if (!selected) {
-                    allInSelected = false;
-                    continue;
-                }
-                long distanceNew;
-                if (vertex.getTmpPrevious() == vertexStart) {
-                    distanceNew = vertex.getDistance();
-                } else {
-                    distanceNew = vertexStart.getDistance() + entry.getValue().getWeight();
-                }
-                if (distanceNew < minDistance) {
-                    parent = vertexStart;
-                    minDistance = distanceNew;
-                }
+            VertexIndex<K> start = heapWrapper.getVertexIndex(startVertex);
+            if (!start.selected) {
+                // 起点被选中时会松弛这条边
+                return;
             }
-            if (allInSelected) {
-                if (!vertex.selected) {
-                    vertex.selected = true;
-                }
-                if (vertex.getTmpPrevious() != parent) {
-                    vertex.changePrevious(parent);
-                    vertex.updateDistance(minDistance);
-                    debugRelateVertex(vertex, parent);
-                }
-            } else {
-                if (vertex.getTmpPrevious() != parent) {
-                    vertex.changePrevious(parent);
-                    vertex.updateDistance(minDistance);
-                    debugRelateVertex(vertex, parent);
-                }
-                if (!parent.selected) {
-                    vertex.removeFromHeap();
-                    vertex.resetDistance();
-                }
-                if (vertex.selected) {
-                    LOGGER.debug("节点{}取消选择", vertex);
-                    vertex.cancelSelect();
-                    if (parent.selected) {
-                        LOGGER.debug("节点{}重新进入堆中", vertex);
-                        heapWrapper.offer(vertex);
-                    }
-                }
+            VertexIndex<K> end = heapWrapper.getVertexIndex(endVertex);
+            if (start.getDistance() + edge.getWeight() < heapWrapper.selectedDistance) {
+                // 可能使已选中顶点的距离变小，已搜索的部分不再可靠
+                resetSearch();
+                return;
             }
+            // 此时终点必定未被选中
+            relax(heapWrapper, start, end, edge);
+        } finally {
+            treeLock.unlockWrite();
         }
     }
 
-    private static <K> void debugRelateVertex(VertexIndex<K> vertex, VertexIndex<K> parent) {
-        LOGGER.debug("节点{}更新距离,修改父节点：{}", vertex, parent);
+    /**
+     * 移除的边视为权重增加到无穷大
+     */
+    @Override
+    public void edgeRemove(IEdge<K> edge) {
+        treeLock.lockWrite();
+        try {
+            if (complete) {
+                treeUpdater.edgeRemove(edge);
+                return;
+            }
+            Vertex<K> start = graph.getVertex(edge.getStart());
+            Vertex<K> end = graph.getVertex(edge.getEnd());
+            searchEdgeRemove(start, end);
+            if (ReversedEdge.of(graph, edge) != null) {
+                // 无向图同时移除了反方向
+                searchEdgeRemove(end, start);
+            }
+        } finally {
+            treeLock.unlockWrite();
+        }
     }
 
-    private List<VertexIndex<K>> generateRelateVertex(IEdge<K> edge) {
-        List<VertexIndex<K>> result = new ArrayList<>();
-        K end = edge.getEnd();
-        VertexIndex<K> viEnd = heapWrapper.getVertexIndex(end);
-        result.add(viEnd);
-        PathTreeHelper.handleSuccessorRecursive(viEnd, result::add, null, BaseDijkVertex::walkSuccessorWithTmp);
-        return result;
+    /**
+     * 移除的顶点视为移除了所有相连的边，只修复受影响的子树
+     */
+    @Override
+    public void vertexRemove(Vertex<K> vertex, List<IEdge<K>> edges) {
+        treeLock.lockWrite();
+        try {
+            if (complete) {
+                treeUpdater.vertexRemove(vertex, edges);
+                return;
+            }
+            K k = vertex.getK();
+            for (IEdge<K> edge : edges) {
+                Vertex<K> start = Objects.equals(edge.getStart(), k) ? vertex : graph.getVertex(edge.getStart());
+                Vertex<K> end = Objects.equals(edge.getEnd(), k) ? vertex : graph.getVertex(edge.getEnd());
+                searchEdgeRemove(start, end);
+                if (ReversedEdge.of(graph, edge) != null) {
+                    searchEdgeRemove(end, start);
+                }
+            }
+        } finally {
+            treeLock.unlockWrite();
+        }
     }
 
-    public void edgeAdd(IEdge<K> edge) {
-        // TODO 未完善
-        this.vertexMap = new HashMap<>(graph.size());
-        this.root = getOrCreateVertex(root.vertex.getK());
-        this.treeUpdater = new ShortestPathTreeUpdater<>(this, true);
-        this.complete = false;
+    /**
+     * 未完成的搜索中移除了start到end的边
+     */
+    private void searchEdgeRemove(Vertex<K> startVertex, Vertex<K> endVertex) {
+        if (heapWrapper == null) {
+            return;
+        }
+        VertexIndex<K> start = heapWrapper.getVertexIndex(startVertex);
+        VertexIndex<K> end = heapWrapper.getVertexIndex(endVertex);
+        if (start.selected && end.getPrevious() == start) {
+            // 终点的(临时)距离来自这条边
+            resetSearch();
+        }
     }
 
+    @Override
     public boolean checkAllReset() {
-        return treeUpdater.checkAllReset();
+        treeLock.lockRead();
+        try {
+            return treeUpdater.checkAllReset();
+        } finally {
+            treeLock.unlockRead();
+        }
     }
 
     class DijkHeapWrapper {
+        /**
+         * {@link HeapType#FIBONACCI}、{@link HeapType#PAIRING}与{@link HeapType#HOLLOW}时使用
+         */
         private final Queue<VertexIndex<K>> heap;
-        Map<K, VertexIndex<K>> map;
+        /**
+         * {@link HeapType#DARY}与{@link HeapType#RADIX}时使用，元素为顶点编号，优先级为距离
+         */
+        private final IIndexedLongHeap idHeap;
+        /**
+         * 顶点编号 -> 顶点
+         */
+        VertexIndex<K>[] indexes;
         VertexIndex<K> root;
+        /**
+         * 最后选中顶点的距离，所有已选中顶点的距离都不超过该值
+         */
+        long selectedDistance;
 
         public DijkHeapWrapper() {
-            map = new HashMap<>(vertexMap.size());
-            vertexMap.values().forEach(vertex -> map.put(vertex.getVertex().getK(), new VertexIndex<>(vertex)));
-            heap = FiboHeap.create(VertexIndex.class);
-            root = map.get(ShortestPathTree.this.root.getVertex().getK());
+            indexes = (VertexIndex<K>[]) new VertexIndex<?>[vertices.length];
+            for (DijkstraVertex<K> vertex : vertices) {
+                if (vertex != null) {
+                    indexes[vertex.getVertex().getId()] = new VertexIndex<>(vertex);
+                }
+            }
+            switch (heapType) {
+                case DARY:
+                    heap = null;
+                    idHeap = new DaryHeap(DaryHeap.DEFAULT_ARITY, indexes.length);
+                    break;
+                case RADIX:
+                    // 松弛得到的距离不小于最后选中顶点的距离，满足基数堆的单调性
+                    heap = null;
+                    idHeap = new RadixHeap(indexes.length);
+                    break;
+                case PAIRING:
+                    heap = PairingHeap.create(VertexIndex.class);
+                    idHeap = null;
+                    break;
+                case HOLLOW:
+                    heap = HollowHeap.create(VertexIndex.class);
+                    idHeap = null;
+                    break;
+                default:
+                    heap = FiboHeap.create(VertexIndex.class);
+                    idHeap = null;
+            }
+            root = indexes[ShortestPathTree.this.root.getVertex().getId()];
             root.changePrevious(root);
-            heap.add(root);
+            offerOrDecrease(root);
         }
 
         public VertexIndex<K> poll() {
+            if (idHeap != null) {
+                return indexes[idHeap.poll()];
+            }
             return heap.poll();
         }
 
         public boolean isEmpty() {
-            return heap.isEmpty();
+            return idHeap != null ? idHeap.isEmpty() : heap.isEmpty();
         }
 
-        public VertexIndex<K> getVertexIndex(K k) {
-            return map.get(k);
+        public VertexIndex<K> getVertexIndex(Vertex<K> vertex) {
+            int id = vertex.getId();
+            if (id >= indexes.length) {
+                indexes = Arrays.copyOf(indexes, graph.idBound());
+            }
+            VertexIndex<K> index = indexes[id];
+            if (index == null) {
+                // 搜索开始后新增的顶点
+                index = new VertexIndex<>(getOrCreateVertex(vertex));
+                indexes[id] = index;
+            }
+            return index;
         }
 
-        public boolean offer(VertexIndex<K> kVertexIndex) {
-            return heap.offer(kVertexIndex);
+        /**
+         * 顶点不在堆中时加入，否则按变小后的距离调整位置
+         */
+        public void offerOrDecrease(VertexIndex<K> vertexIndex) {
+            if (idHeap != null) {
+                idHeap.offerOrDecrease(vertexIndex.getVertex().getId(), vertexIndex.getDistance());
+            } else if (vertexIndex.getHeap() == null) {
+                heap.offer(vertexIndex);
+            } else {
+                vertexIndex.decreaseKey();
+            }
+        }
+
+        /**
+         * 修改未选中顶点的临时距离，并调整在堆中的位置
+         */
+        public void changeDistance(VertexIndex<K> vertexIndex, long distance) {
+            vertexIndex.changeDistance(distance - vertexIndex.getDistance());
+            if (idHeap != null) {
+                idHeap.changePriority(vertexIndex.getVertex().getId(), distance);
+            }
+        }
+
+        /**
+         * 顶点不再可达时移出堆
+         */
+        public void remove(VertexIndex<K> vertexIndex) {
+            if (idHeap != null) {
+                idHeap.remove(vertexIndex.getVertex().getId());
+            } else if (vertexIndex.getHeap() != null) {
+                vertexIndex.getHeap().delete(vertexIndex.getHandle());
+            }
         }
 
         public void clear() {
-            heap.clear();
+            if (idHeap != null) {
+                idHeap.clear();
+            } else {
+                heap.clear();
+            }
         }
 
         @Override
         public String toString() {
-            return heap.toString();
+            return idHeap != null ? idHeap.toString() : heap.toString();
         }
     }
 
@@ -246,7 +738,10 @@ public class ShortestPathTree<K> {
      * 打印当前已知的所有最短路径
      */
     public void printCurAllPath() {
-        for (DijkstraVertex<K> vertex : vertexMap.values()) {
+        for (DijkstraVertex<K> vertex : vertices) {
+            if (vertex == null || graph.getVertexById(vertex.getVertex().getId()) == null) {
+                continue;
+            }
             StringBuilder stringBuilder = getPathStringBuilder(vertex);
             System.out.println(stringBuilder);
         }
@@ -274,12 +769,15 @@ public class ShortestPathTree<K> {
     }
 
     public void printTmpPath() {
-        Map<K, ? extends BaseDijkVertex<K, ?>> vertexMap = this.vertexMap;
-        if (!complete) {
+        BaseDijkVertex<K, ?>[] vertices = this.vertices;
+        if (!complete && heapWrapper != null) {
             System.out.println(heapWrapper);
-            vertexMap = heapWrapper.map;
+            vertices = heapWrapper.indexes;
         }
-        for (BaseDijkVertex<K, ? extends BaseDijkVertex<K, ?>> vertex : vertexMap.values()) {
+        for (BaseDijkVertex<K, ? extends BaseDijkVertex<K, ?>> vertex : vertices) {
+            if (vertex == null) {
+                continue;
+            }
             StringBuilder stringBuilder = getPathStringBuilder(vertex);
             System.out.println(stringBuilder);
         }
@@ -289,45 +787,95 @@ public class ShortestPathTree<K> {
     /**
      * 打印完整最短路径
      */
+    @Override
     public void printAllPath() {
-        if (!complete) {
-            dijkstra(null);
+        boolean read = treeLock.lockQuery();
+        try {
+            if (!complete) {
+                dijkstra(null);
+            }
+            treeUpdater.tryMergeUpdate();
+            printCurAllPath();
+        } finally {
+            treeLock.unlockQuery(read);
         }
-        treeUpdater.tryMergeUpdate();
-        printCurAllPath();
     }
 
-    private DijkstraVertex<K> getOrCreateVertex(K k) {
-        return vertexMap.computeIfAbsent(k, key -> new DijkstraVertex<>(graph.getVertex(k)));
+    private DijkstraVertex<K> getOrCreateVertex(Vertex<K> vertex) {
+        int id = vertex.getId();
+        if (id >= vertices.length) {
+            vertices = Arrays.copyOf(vertices, graph.idBound());
+        }
+        DijkstraVertex<K> dVertex = vertices[id];
+        if (dVertex == null) {
+            dVertex = new DijkstraVertex<>(vertex);
+            vertices[id] = dVertex;
+        }
+        return dVertex;
     }
 
     private DijkstraVertex<K> getVertex(K k) {
-        return vertexMap.get(k);
+        Vertex<K> vertex = graph.getVertex(k);
+        if (vertex == null || vertex.getId() >= vertices.length) {
+            return null;
+        }
+        return vertices[vertex.getId()];
     }
 
-    public Vertex<K> getPrevious(K k) {
-        treeUpdater.tryMergeUpdate();
-        DijkstraVertex<K> vertex = tryDoDijkstra(k);
-        if (vertex == null) {
-            return null;
+    Graph<K> getGraph() {
+        return graph;
+    }
+
+    ShortestPathTreeUpdater<K> getTreeUpdater() {
+        return treeUpdater;
+    }
+
+    @Override
+    public void completeSearch() {
+        boolean read = treeLock.lockQuery();
+        try {
+            treeUpdater.tryMergeUpdate();
+            dijkstra(null);
+        } finally {
+            treeLock.unlockQuery(read);
         }
-        DijkstraVertex<K> previous = vertex.getPrevious();
-        if (previous == null) {
-            return null;
+    }
+
+    @Override
+    public Vertex<K> getPrevious(K k) {
+        boolean read = treeLock.lockQuery();
+        try {
+            treeUpdater.tryMergeUpdate();
+            DijkstraVertex<K> vertex = tryDoDijkstra(k);
+            if (vertex == null) {
+                return null;
+            }
+            DijkstraVertex<K> previous = vertex.getPrevious();
+            if (previous == null) {
+                return null;
+            }
+            return previous.getVertex();
+        } finally {
+            treeLock.unlockQuery(read);
         }
-        return previous.getVertex();
     }
 
     /**
      * 获取到end的最短距离
      */
+    @Override
     public long getDistance(K end) {
-        treeUpdater.tryMergeUpdate();
-        DijkstraVertex<K> vertex = tryDoDijkstra(end);
-        if (vertex == null) {
-            return Long.MAX_VALUE;
+        boolean read = treeLock.lockQuery();
+        try {
+            treeUpdater.tryMergeUpdate();
+            DijkstraVertex<K> vertex = tryDoDijkstra(end);
+            if (vertex == null) {
+                return Long.MAX_VALUE;
+            }
+            return vertex.getDistance();
+        } finally {
+            treeLock.unlockQuery(read);
         }
-        return vertex.getDistance();
     }
 
     private DijkstraVertex<K> tryDoDijkstra(K end) {
@@ -371,22 +919,9 @@ public class ShortestPathTree<K> {
             }
         }
 
-        public boolean cancelSelect() {
-            if (!selected) {
-                return false;
-            }
-            this.dVertex.changePrevious(null);
-            selected = false;
-            return true;
-        }
-
         @Override
         public int compareTo(VertexIndex<K> o) {
-            return (int) (dVertex.getDistance() - o.dVertex.getDistance());
-        }
-
-        public void removeFromHeap() {
-            heap.delete(entry);
+            return Long.compare(dVertex.getDistance(), o.dVertex.getDistance());
         }
 
         @Override
@@ -432,28 +967,12 @@ public class ShortestPathTree<K> {
             if (diff == 0) {
                 return;
             }
-            changeDistance(diff);
-            LOGGER.debug("更新最短路径距离:{}", this);
-            walkSuccessorWithTmp(v -> {
-                v.changeDistanceRecursive(diff);
+            PathTreeHelper.handleSuccessorAndSelfRecursive(this, v -> {
+                v.changeDistance(diff);
+                LOGGER.debug("更新最短路径距离:{}", v);
             });
         }
 
-        public void updateDistance(long distanceNew) {
-            long distance = getDistance();
-            if (distance == distanceNew) {
-                return;
-            }
-            dVertex.setDistance(distanceNew);
-            priorityChange(distanceNew > distance ? 1 : -1);
-        }
-
-        public void resetDistance() {
-            long distance = getDistance();
-            dVertex.resetDistance();
-            priorityChange(getDistance() > distance ? 1 : -1);
-        }
-
         @Override
         public boolean isNotSelected() {
             return !selected;
@@ -1,40 +1,532 @@
 package org.sando;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 /**
  * 最短路径树缓存
+ * <p>线程安全：多个线程可以同时查询，同一个起点的树只会创建一次；
+ * 图只能有一个写线程，图的变化在图的写锁内通知，异步更新的任务只持有树的锁</p>
  *
  * @author Sando
  * @version 1.0
  * @since 2024/5/4
  */
+@SuppressWarnings("unchecked")
 public class ShortestPathTreeCache<K> {
-    private Graph<K> graph;
+    private final Graph<K> graph;
+    /**
+     * 创建最短路径树的方法
+     */
+    private final BiFunction<Graph<K>, K, ? extends IShortestPathTree<K>> treeFactory;
     /**
      * 顶点 -> 从顶点出发的最短路径树
      */
-    private Map<K, ShortestPathTree<K>> sptMap = new HashMap<>();
-    private Graph.IEdgeUpdate<K> edgeUpdate = (edge, oldWeight) -> {
-        sptMap.values().forEach(tree -> tree.edgeUpdate(edge, oldWeight));
+    private final Map<K, IShortestPathTree<K>> sptMap = new ConcurrentHashMap<>();
+    /**
+     * 顶点 -> 正在创建的最短路径树，同一个起点只有一个线程创建，其他线程等待
+     */
+    private final ConcurrentMap<K, CompletableFuture<IShortestPathTree<K>>> inFlight = new ConcurrentHashMap<>();
+    /**
+     * 保护淘汰策略与预算，淘汰策略不是线程安全的。
+     * 加锁顺序：图 -> policyLock -> 树
+     */
+    private final ReentrantLock policyLock = new ReentrantLock();
+    /**
+     * 树边 -> 包含该树边的树，权重变化只通知受影响的树
+     */
+    private TreeEdgeIndex<K> edgeIndex;
+    /**
+     * 淘汰策略
+     */
+    private volatile IEvictionPolicy<K> evictionPolicy = new LruEvictionPolicy<>();
+    /**
+     * 最多缓存的树的数量
+     */
+    private int maxTrees = Integer.MAX_VALUE;
+    /**
+     * 所有树估算内存的上限，见{@link IShortestPathTree#estimateMemory()}
+     */
+    private long maxBytes = Long.MAX_VALUE;
+    /**
+     * 起点 -> 树最近一次的估算内存，与{@link #totalBytes}一起由policyLock保护
+     */
+    private final Map<K, Long> treeBytes = new HashMap<>();
+    /**
+     * 缓存的所有树估算内存之和
+     */
+    private long totalBytes;
+    /**
+     * 所有树共享的更新策略统计
+     */
+    private final UpdateMetrics updateMetrics = new UpdateMetrics();
+    /**
+     * 重新计算的阈值，见{@link IShortestPathTree#setRecomputeRatio(double)}
+     */
+    private volatile double recomputeRatio = UpdateMetrics.DEFAULT_RECOMPUTE_RATIO;
+    /**
+     * 优先更新的起点
+     */
+    private final Set<K> hotRoots = Collections.synchronizedSet(new LinkedHashSet<>());
+    /**
+     * 并行更新各个最短路径树的执行器，为null时在调用线程上逐个更新
+     */
+    private volatile Executor updateExecutor;
+    /**
+     * 是否异步更新，异步时图的变化不等待所有树更新完成，见{@link #pendingUpdate()}
+     */
+    private volatile boolean asyncUpdate;
+    /**
+     * 最近一次尚未完成的并行更新
+     */
+    private volatile CompletableFuture<Void> pendingUpdate = CompletableFuture.completedFuture(null);
+    /**
+     * 并行度 -> 预热使用的线程池，见{@link #warmUp(Collection, int)}
+     */
+    private final Map<Integer, ForkJoinPool> warmUpPools = new ConcurrentHashMap<>();
+    private Graph.IEdgeUpdate<K> edgeUpdate = new Graph.IEdgeUpdate<K>() {
+        @Override
+        public void onEdgeUpdate(IEdge<K> edge, long oldWeight) {
+            awaitUpdate();
+            fanOut(edgeIndex.route(edge, oldWeight), tree -> tree.edgeUpdate(edge, oldWeight));
+        }
+
+        @Override
+        public void onEdgesUpdate(Map<IEdge<K>, Long> oldWeights) {
+            awaitUpdate();
+            Map<IShortestPathTree<K>, Map<IEdge<K>, Long>> routes = edgeIndex.route(oldWeights);
+            fanOut(routes.keySet(), tree -> tree.edgesUpdate(routes.get(tree)));
+        }
     };
+    /**
+     * 拓扑变化会改变顶点与边，通知所有的树
+     */
     private Graph.IEdgeAdd<K> addEdge = (edge) -> {
-        sptMap.values().forEach(tree -> tree.edgeAdd(edge));
+        fanOut(sptMap.values(), tree -> tree.edgeAdd(edge));
+    };
+    private Graph.IEdgeRemove<K> removeEdge = (edge) -> {
+        fanOut(sptMap.values(), tree -> tree.edgeRemove(edge));
+    };
+    private Graph.IVertexRemove<K> removeVertex = (vertex, edges) -> {
+        awaitUpdate();
+        // 起点被移除的最短路径树不再需要
+        remove(vertex.getK());
+        hotRoots.remove(vertex.getK());
+        fanOut(sptMap.values(), tree -> tree.vertexRemove(vertex, edges));
     };
 
     public ShortestPathTreeCache(Graph<K> graph) {
+        this(graph, ShortestPathTree::new);
+    }
+
+    /**
+     * @param treeFactory 创建最短路径树，例如{@code CompactShortestPathTree::new}
+     */
+    public ShortestPathTreeCache(Graph<K> graph, BiFunction<Graph<K>, K, ? extends IShortestPathTree<K>> treeFactory) {
         this.graph = graph;
+        this.treeFactory = treeFactory;
+        this.edgeIndex = new TreeEdgeIndex<>(graph);
         graph.onAddEdge(addEdge);
         graph.onEdgeUpdate(edgeUpdate);
+        graph.onRemoveEdge(removeEdge);
+        graph.onRemoveVertex(removeVertex);
     }
 
     /**
      * 获取从顶点start出发的最短路径树
+     * <p>超出预算并且没有被淘汰策略接纳时，返回的树不在缓存中，{@link IShortestPathTree#isDetached()}为true，
+     * 不会收到之后图的变化</p>
      *
      * @param start 顶点
+     * @param <T>   最短路径树的类型，需要与treeFactory创建的类型一致
+     */
+    public <T extends IShortestPathTree<K>> T getOrCreateShortestPathTree(K start) {
+        return (T) getOrCreate(start, false);
+    }
+
+    /**
+     * 同一个起点只有一个线程创建，其他线程等待创建完成
+     *
+     * @param ifPresent 为true时起点不在图中则不创建，返回null
+     */
+    private IShortestPathTree<K> getOrCreate(K start, boolean ifPresent) {
+        awaitUpdate();
+        while (true) {
+            IShortestPathTree<K> tree = sptMap.get(start);
+            if (tree != null) {
+                recordHit(start);
+                return tree;
+            }
+            CompletableFuture<IShortestPathTree<K>> mine = new CompletableFuture<>();
+            CompletableFuture<IShortestPathTree<K>> flight = inFlight.computeIfAbsent(start, k -> mine);
+            if (flight != mine) {
+                // 其他线程正在创建
+                recordHit(start);
+                tree = join(flight);
+                if (tree != null || ifPresent) {
+                    return tree;
+                }
+                // 其他线程因为起点不在图中没有创建，由当前线程创建
+                continue;
+            }
+            try {
+                tree = create(start, ifPresent);
+                mine.complete(tree);
+                return tree;
+            } catch (RuntimeException | Error e) {
+                mine.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(start, mine);
+            }
+        }
+    }
+
+    /**
+     * 创建并缓存从start出发的树，已经缓存时直接返回
+     * <p>持有图的读锁，保证树在加入缓存之前不会错过图的变化</p>
+     *
+     * @param ifPresent 为true时起点不在图中则不创建，返回null
+     */
+    private IShortestPathTree<K> create(K start, boolean ifPresent) {
+        Lock readLock = graph.getLock().readLock();
+        readLock.lock();
+        try {
+            IShortestPathTree<K> tree = sptMap.get(start);
+            if (tree != null) {
+                return tree;
+            }
+            if (ifPresent && graph.getVertex(start) == null) {
+                return null;
+            }
+            tree = treeFactory.apply(graph, start);
+            policyLock.lock();
+            try {
+                evictionPolicy.recordAccess(start);
+                if (!admit(start, tree)) {
+                    tree.detach();
+                }
+            } finally {
+                policyLock.unlock();
+            }
+            return tree;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * 记录命中，淘汰策略被其他线程占用时放弃本次记录，访问频率只是近似值
+     * <p>树的内存会随着搜索增长，命中时顺便刷新其估算值</p>
+     */
+    private void recordHit(K start) {
+        if (policyLock.tryLock()) {
+            try {
+                evictionPolicy.recordAccess(start);
+                IShortestPathTree<K> tree = sptMap.get(start);
+                if (tree != null) {
+                    charge(start, tree.estimateMemory());
+                }
+            } finally {
+                policyLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 把树加入缓存，超出预算时先按淘汰策略淘汰其他的树
+     * <p>被淘汰或者没有被接纳的树不再收到图的变化，会被标记为{@link IShortestPathTree#detach()}。持有policyLock时调用</p>
+     *
+     * @return 是否加入了缓存
+     */
+    private boolean admit(K root, IShortestPathTree<K> tree) {
+        long bytes = tree.estimateMemory();
+        if (!sptMap.isEmpty() && overBudget(1, bytes)) {
+            K victim = evictionPolicy.victim();
+            if (!evictionPolicy.admit(root, victim)) {
+                return false;
+            }
+            evict(1, bytes);
+            if (!sptMap.isEmpty() && overBudget(1, bytes)) {
+                // 淘汰策略与缓存不一致，无法腾出空间
+                return false;
+            }
+        }
+        tree.setRecomputeRatio(recomputeRatio);
+        tree.setUpdateMetrics(updateMetrics);
+        sptMap.put(root, tree);
+        charge(root, bytes);
+        edgeIndex.add(tree);
+        evictionPolicy.onInsert(root);
+        return true;
+    }
+
+    /**
+     * 按淘汰策略淘汰，直到加入extraTrees棵树、extraBytes字节之后不再超出预算
+     * <p>淘汰策略给出的起点不在缓存中时停止，避免策略与缓存不一致时无限循环。持有policyLock时调用</p>
+     */
+    private void evict(int extraTrees, long extraBytes) {
+        while (!sptMap.isEmpty() && overBudget(extraTrees, extraBytes)) {
+            K victim = evictionPolicy.victim();
+            if (victim == null || !remove(victim)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 加入extraTrees棵树、extraBytes字节之后是否超出预算
+     * <p>使用各树加入与命中时记录的估算值之和，不逐棵重新估算</p>
+     */
+    private boolean overBudget(int extraTrees, long extraBytes) {
+        if (sptMap.size() + extraTrees > maxTrees) {
+            return true;
+        }
+        if (maxBytes == Long.MAX_VALUE) {
+            return false;
+        }
+        return totalBytes + extraBytes > maxBytes;
+    }
+
+    /**
+     * 记录树最新的估算内存，持有policyLock时调用
+     */
+    private void charge(K root, long bytes) {
+        Long old = treeBytes.put(root, bytes);
+        totalBytes += old == null ? bytes : bytes - old;
+    }
+
+    /**
+     * 移除从root出发的树，不再更新
+     *
+     * @return 是否移除了树
+     */
+    private boolean remove(K root) {
+        policyLock.lock();
+        try {
+            IShortestPathTree<K> tree = sptMap.remove(root);
+            if (tree == null) {
+                return false;
+            }
+            Long bytes = treeBytes.remove(root);
+            if (bytes != null) {
+                totalBytes -= bytes;
+            }
+            edgeIndex.remove(tree);
+            evictionPolicy.onRemove(root);
+            tree.detach();
+            return true;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * 设置缓存的预算，超出时立即淘汰
+     *
+     * @param maxTrees 最多缓存的树的数量
+     * @param maxBytes 所有树估算内存的上限，{@link Long#MAX_VALUE}表示不限制
+     */
+    public void setBudget(int maxTrees, long maxBytes) {
+        awaitUpdate();
+        policyLock.lock();
+        try {
+            this.maxTrees = maxTrees;
+            this.maxBytes = maxBytes;
+            evict(0, 0);
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * 设置淘汰策略，已缓存的起点会加入新的策略
+     */
+    public void setEvictionPolicy(IEvictionPolicy<K> evictionPolicy) {
+        awaitUpdate();
+        Objects.requireNonNull(evictionPolicy);
+        policyLock.lock();
+        try {
+            this.evictionPolicy = evictionPolicy;
+            sptMap.keySet().forEach(evictionPolicy::onInsert);
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * 设置所有树重新计算的阈值，见{@link IShortestPathTree#setRecomputeRatio(double)}
+     */
+    public void setRecomputeRatio(double ratio) {
+        awaitUpdate();
+        policyLock.lock();
+        try {
+            recomputeRatio = ratio;
+            sptMap.values().forEach(tree -> tree.setRecomputeRatio(ratio));
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * @return 所有缓存的树共享的更新策略统计
+     */
+    public UpdateMetrics getUpdateMetrics() {
+        return updateMetrics;
+    }
+
+    /**
+     * @return 缓存的树的数量
+     */
+    public int size() {
+        return sptMap.size();
+    }
+
+    /**
+     * 预热：并行创建从多个顶点出发的完整最短路径树，已经缓存的树直接跳过
+     * <p>在缓存持有的{@link ForkJoinPool}中执行，同一个并行度的多次预热复用同一个线程池，
+     * 空闲的线程会自动退出</p>
+     *
+     * @param roots       起点，不在图中的顶点会被忽略
+     * @param parallelism 并行度
+     * @see #warmUp(Collection, Executor)
+     */
+    public void warmUp(Collection<K> roots, int parallelism) {
+        warmUp(roots, warmUpPools.computeIfAbsent(parallelism, ForkJoinPool::new));
+    }
+
+    /**
+     * 预热：在执行器中并行创建从多个顶点出发的完整最短路径树，已经缓存的树直接跳过
+     * <p>每个起点与{@link #getOrCreateShortestPathTree(Object)}一样单独创建并先加入缓存，再完成搜索，
+     * 预热期间图的变化会通知到已经加入缓存的树；其他线程同时获取同一个起点时等待同一次创建。
+     * 每棵树的搜索状态(堆、距离等)相互独立</p>
+     *
+     * @param roots    起点，不在图中的顶点会被忽略
+     * @param executor 执行预热的执行器，由调用方管理其生命周期
+     */
+    public void warmUp(Collection<K> roots, Executor executor) {
+        awaitUpdate();
+        CompletableFuture<?>[] futures = new LinkedHashSet<>(roots).stream()
+                .filter(root -> !sptMap.containsKey(root) && graph.getVertex(root) != null)
+                .map(root -> CompletableFuture.runAsync(() -> {
+                    IShortestPathTree<K> tree = getOrCreate(root, true);
+                    if (tree != null) {
+                        tree.completeSearch();
+                    }
+                }, executor))
+                .toArray(CompletableFuture<?>[]::new);
+        join(CompletableFuture.allOf(futures));
+    }
+
+    /**
+     * 设置并行更新的执行器，树之间相互独立，图的每次变化会分发给执行器并行更新各个树
+     * <p>同步更新时等待所有树更新完成后才返回；异步更新时立即返回，查询之前会等待更新完成，
+     * 但图在通知之前就已经修改了边，因此{@link #pendingUpdate()}完成之前不能再修改图</p>
+     *
+     * @param updateExecutor 执行器，为null时在调用线程上逐个更新
+     * @param asyncUpdate    是否异步更新
+     */
+    public void setUpdateExecutor(Executor updateExecutor, boolean asyncUpdate) {
+        awaitUpdate();
+        this.updateExecutor = updateExecutor;
+        this.asyncUpdate = updateExecutor != null && asyncUpdate;
+    }
+
+    /**
+     * 设置是否优先更新从start出发的最短路径树，优先的树会先提交给执行器
+     */
+    public void setHot(K start, boolean hot) {
+        if (hot) {
+            hotRoots.add(start);
+        } else {
+            hotRoots.remove(start);
+        }
+    }
+
+    /**
+     * @return 最近一次尚未完成的更新，同步更新时总是已经完成
+     */
+    public CompletableFuture<Void> pendingUpdate() {
+        return pendingUpdate;
+    }
+
+    /**
+     * 把图的变化分发给最短路径树
+     *
+     * @param targets 需要更新的树
+     */
+    private void fanOut(Collection<IShortestPathTree<K>> targets, Consumer<IShortestPathTree<K>> update) {
+        awaitUpdate();
+        if (updateExecutor == null || targets.size() <= 1) {
+            targets.forEach(update);
+            return;
+        }
+        List<IShortestPathTree<K>> trees = new ArrayList<>(targets.size());
+        Set<IShortestPathTree<K>> hotTrees = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<K> hot;
+        synchronized (hotRoots) {
+            hot = new ArrayList<>(hotRoots);
+        }
+        for (K root : hot) {
+            IShortestPathTree<K> tree = sptMap.get(root);
+            if (tree != null && targets.contains(tree)) {
+                hotTrees.add(tree);
+                trees.add(tree);
+            }
+        }
+        for (IShortestPathTree<K> tree : targets) {
+            if (!hotTrees.contains(tree)) {
+                trees.add(tree);
+            }
+        }
+        Executor executor = updateExecutor;
+        CompletableFuture<?>[] futures = trees.stream()
+                .map(tree -> CompletableFuture.runAsync(() -> update.accept(tree), executor))
+                .toArray(CompletableFuture<?>[]::new);
+        pendingUpdate = CompletableFuture.allOf(futures);
+        if (!asyncUpdate) {
+            awaitUpdate();
+        }
+    }
+
+    /**
+     * 等待尚未完成的更新
+     */
+    private void awaitUpdate() {
+        CompletableFuture<Void> update = pendingUpdate;
+        if (update.isDone() && !update.isCompletedExceptionally()) {
+            return;
+        }
+        try {
+            join(update);
+        } catch (RuntimeException e) {
+            // 异常只抛出一次
+            if (pendingUpdate == update) {
+                pendingUpdate = CompletableFuture.completedFuture(null);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 等待future完成，展开{@link CompletionException}
      */
-    public ShortestPathTree<K> getOrCreateShortestPathTree(K start) {
-        return sptMap.computeIfAbsent(start, k -> new ShortestPathTree<>(graph, start));
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
     }
 }
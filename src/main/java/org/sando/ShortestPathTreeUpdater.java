@@ -1,6 +1,9 @@
 package org.sando;
 
+import org.sando.heap.dheap.DaryHeap;
 import org.sando.heap.fiboheap.FiboHeap;
+import org.sando.heap.hollowheap.HollowHeap;
+import org.sando.heap.pairingheap.PairingHeap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,19 +26,54 @@ import static org.sando.PathTreeHelper.handleSuccessorAndSelfRecursive;
 @SuppressWarnings("unchecked")
 public class ShortestPathTreeUpdater<K> {
     private static final Logger LOGGER = LoggerFactory.getLogger(ShortestPathTreeUpdater.class);
+    /**
+     * 边被移除后，受影响的子树的距离暂时以该值为基准，更新完成后仍不小于该值的顶点不可达
+     */
+    static final long UNREACHABLE = Long.MAX_VALUE >> 1;
     private final ShortestPathTree<K> pathTree;
     /**
      * 多边权重变更，是否合并更新
      */
     private final boolean mergeUpdate;
-    private Map<IEdge<K>, Long> changeMap;
+    private final Map<IEdge<K>, Long> changeMap = new HashMap<>();
+    /**
+     * 已从图中移除的边 -> (起点, 终点)，其权重视为无穷大
+     * <p>顶点可能已经随边一起从图中移除，因此记录下移除时的顶点</p>
+     */
+    private final Map<IEdge<K>, Pair<Vertex<K>, Vertex<K>>> removedEdges = new HashMap<>();
+    /**
+     * 估算受影响的顶点超过图中顶点的该比例时重新计算整棵树
+     */
+    private double recomputeRatio = UpdateMetrics.DEFAULT_RECOMPUTE_RATIO;
+    private UpdateMetrics metrics;
+    /**
+     * 每次更新复用的优先队列，更新结束时为空
+     */
+    private final QueueWrapper<K> queueWrapper;
+    /**
+     * 回收不再被顶点持有的EdgeDiff
+     */
+    private final EdgeDiff.Pool<K> edgeDiffPool = new EdgeDiff.Pool<>();
+    /**
+     * 当前轮次中持有minEdgeDiff的顶点，更新结束时逐个释放，使EdgeDiff回到对象池
+     */
+    private final List<BaseDijkVertex<K, ?>> diffHolders = new ArrayList<>();
+    /**
+     * 当前更新的轮次，顶点的M集合、访问标记与minEdgeDiff只在同一轮次内有效
+     */
+    private int epoch;
 
     public ShortestPathTreeUpdater(ShortestPathTree<K> pathTree, boolean mergeUpdate) {
+        this(pathTree, mergeUpdate, HeapType.FIBONACCI);
+    }
+
+    /**
+     * @param heapType 更新时使用的优先队列
+     */
+    public ShortestPathTreeUpdater(ShortestPathTree<K> pathTree, boolean mergeUpdate, HeapType heapType) {
         this.pathTree = pathTree;
         this.mergeUpdate = mergeUpdate;
-        if (mergeUpdate) {
-            changeMap = new HashMap<>();
-        }
+        this.queueWrapper = new QueueWrapper<>(heapType);
     }
 
     private static <K, V extends BaseDijkVertex<K, V>> boolean decFilter(V start, V end) {
@@ -48,88 +86,336 @@ public class ShortestPathTreeUpdater<K> {
     }
 
     /**
-     * 边权重更新
+     * 边权重更新，不合并更新时立即生效
      */
-    public <V extends BaseDijkVertex<K, V>> void edgeUpdate(IEdge<K> edge, long oldWeight) {
+    public void edgeUpdate(IEdge<K> edge, long oldWeight) {
 //        if (!pathTree.complete) {
 //            throw new UnsupportedOperationException("ShortestPathTreeUpdater only support complete path tree");
 //        }
-        long weight = edge.getWeight();
+        recordBothDirections(edge, oldWeight);
+        if (!mergeUpdate) {
+            // 单条边的更新同样走合并更新的流程，M集合中的顶点在更新后可能已经不在原来的子树中，需要逐个重置
+            applyChange();
+        }
+    }
+
+    /**
+     * 多条边的权重同时变化，全部记录后只合并更新一次
+     *
+     * @param oldWeights 发生变化的边 -> 变化前的权重
+     */
+    public void edgesUpdate(Map<IEdge<K>, Long> oldWeights) {
+        oldWeights.forEach(this::recordBothDirections);
+        if (!mergeUpdate) {
+            applyChange();
+        }
+    }
+
+    /**
+     * 记录边的权重变化，无向图中的边同时记录反方向
+     */
+    private void recordBothDirections(IEdge<K> edge, long oldWeight) {
+        recordChange(edge, oldWeight);
+        ReversedEdge<K> reversed = ReversedEdge.of(pathTree.getGraph(), edge);
+        if (reversed != null) {
+            recordChange(reversed, oldWeight);
+        }
+    }
+
+    /**
+     * 记录边的权重变化，等待合并更新
+     */
+    private <V extends BaseDijkVertex<K, V>> void recordChange(IEdge<K> edge, long oldWeight) {
+        long weight = weight(edge);
         if (weight == oldWeight) {
             return;
         }
-        K start = edge.getStart();
-        K end = edge.getEnd();
-        V startVertex = (V) getVertexMap().get(start);
+        V startVertex = getStartVertex(edge);
         if (startVertex.getPrevious() == null) {
             // 该边起点不可达
             return;
         }
-        if (mergeUpdate) {
-            Long old = changeMap.putIfAbsent(edge, oldWeight);
-            if (old != null && edge.getWeight() == old) {
-                changeMap.remove(edge);
-            }
+        Long old = changeMap.putIfAbsent(edge, oldWeight);
+        if (old != null && weight == old) {
+            changeMap.remove(edge);
+        }
+    }
+
+    /**
+     * 新增边，视为权重从无穷大减少
+     */
+    public void edgeAdd(IEdge<K> edge) {
+        Graph<K> graph = pathTree.getGraph();
+        Vertex<K> start = graph.getVertex(edge.getStart());
+        Vertex<K> end = graph.getVertex(edge.getEnd());
+        ReversedEdge<K> reversed = ReversedEdge.of(graph, edge);
+        if (!removedAs(edge, start, end) || reversed != null && !removedAs(reversed, end, start)) {
+            // 顶点被移除后又重新加入，先完成之前的移除
+            applyChange();
+        }
+        addBack(edge);
+        if (reversed != null) {
+            addBack(reversed);
+        }
+        if (!mergeUpdate) {
+            applyChange();
+        }
+    }
+
+    /**
+     * @return 边没有等待合并的移除，或者移除时的起点与终点仍是start与end
+     */
+    private boolean removedAs(IEdge<K> edge, Vertex<K> start, Vertex<K> end) {
+        Pair<Vertex<K>, Vertex<K>> removed = removedEdges.get(edge);
+        return removed == null || removed.getLeft() == start && removed.getRight() == end;
+    }
+
+    /**
+     * 移除后又加回的边，changeMap中已经记录了移除前的权重，否则视为权重从无穷大减少
+     */
+    private void addBack(IEdge<K> edge) {
+        if (removedEdges.remove(edge) == null) {
+            recordChange(edge, Long.MAX_VALUE);
             return;
         }
-        V endVertex = (V) getVertexMap().get(end);
-        if (weight > oldWeight) {
-            // 权重增加
-            if (endVertex.getPrevious() != startVertex) {
-                // 说明这条边不在最短路径树上，不会对原来的最短路径树造成影响
-                return;
-            }
-            long diff = weight - oldWeight;
-            endVertex.changeDistanceRecursive(diff);
-            handleSuccessorAndSelfRecursive(endVertex, vertex -> {
-                vertex.markInM();
-            });
-            QueueWrapper<K> queueWrapper = new QueueWrapper<>();
-            handleDirectInEdge(queueWrapper, endVertex);
-            pollUntilEmpty(queueWrapper, (BiPredicate<V, V>) ShortestPathTreeUpdater::incFilter);
-            handleSuccessorAndSelfRecursive(endVertex, BaseDijkVertex::resetStateAndEdgeDiff);
-        } else {
-            // 权重减少
-            long distanceNew = startVertex.getDistance() + edge.getWeight();
-            long distanceOld = endVertex.getDistance();
-            // D(i) + w'(e) < D(j)
-            if (distanceNew >= distanceOld) {
-                // 说明权值变小的边影响不到最短路径树
-                return;
-            }
-            long diff = distanceNew - distanceOld;
-            handleSuccessorAndSelfRecursive(endVertex, vertex -> {
-                vertex.changeDistance(diff);
-            });
-            // P(j) = i
-            endVertex.changePrevious(startVertex);
-            QueueWrapper<K> queueWrapper = new QueueWrapper<>();
-            handleOutEdge(queueWrapper, endVertex, ShortestPathTreeUpdater::decFilter);
-            pollUntilEmpty(queueWrapper, (BiPredicate<V, V>) ShortestPathTreeUpdater::decFilter);
+        Long old = changeMap.get(edge);
+        if (old != null && old == edge.getWeight()) {
+            changeMap.remove(edge);
+        }
+    }
+
+    /**
+     * 移除边，视为权重增加到无穷大
+     */
+    public void edgeRemove(IEdge<K> edge) {
+        Graph<K> graph = pathTree.getGraph();
+        recordRemove(edge, graph.getVertex(edge.getStart()), graph.getVertex(edge.getEnd()));
+        if (!mergeUpdate) {
+            applyChange();
+        }
+    }
+
+    /**
+     * 移除顶点，与顶点相连的边视为一起被移除，只会修复这些边所影响的子树
+     *
+     * @param vertex 被移除的顶点
+     * @param edges  与顶点相连的边
+     */
+    public void vertexRemove(Vertex<K> vertex, Collection<? extends IEdge<K>> edges) {
+        Graph<K> graph = pathTree.getGraph();
+        K k = vertex.getK();
+        for (IEdge<K> edge : edges) {
+            Vertex<K> start = Objects.equals(edge.getStart(), k) ? vertex : graph.getVertex(edge.getStart());
+            Vertex<K> end = Objects.equals(edge.getEnd(), k) ? vertex : graph.getVertex(edge.getEnd());
+            recordRemove(edge, start, end);
+        }
+        if (!mergeUpdate) {
+            applyChange();
+        }
+    }
+
+    /**
+     * 记录边的移除，无向图中的边同时记录反方向
+     */
+    private void recordRemove(IEdge<K> edge, Vertex<K> start, Vertex<K> end) {
+        recordDirectedRemove(edge, start, end);
+        ReversedEdge<K> reversed = ReversedEdge.of(pathTree.getGraph(), edge);
+        if (reversed != null) {
+            recordDirectedRemove(reversed, end, start);
+        }
+    }
+
+    private void recordDirectedRemove(IEdge<K> edge, Vertex<K> start, Vertex<K> end) {
+        removedEdges.put(edge, Pair.of(start, end));
+        recordChange(edge, edge.getWeight());
+        if (!changeMap.containsKey(edge)) {
+            // 起点不可达
+            removedEdges.remove(edge);
         }
     }
 
-    private Map<K, ? extends BaseDijkVertex<K, ?>> getVertexMap() {
-        if (!pathTree.complete) {
-            return pathTree.heapWrapper.map;
+    /**
+     * 边当前的权重，已移除的边为无穷大
+     */
+    private long weight(IEdge<K> edge) {
+        return removedEdges.containsKey(edge) ? Long.MAX_VALUE : edge.getWeight();
+    }
+
+    /**
+     * 顶点编号 -> 顶点
+     */
+    private BaseDijkVertex<K, ?>[] getVertices() {
+        if (!pathTree.complete && pathTree.heapWrapper != null) {
+            return pathTree.heapWrapper.indexes;
         } else {
-            return pathTree.vertexMap;
+            return pathTree.vertices;
+        }
+    }
+
+    private <V extends BaseDijkVertex<K, V>> V getStartVertex(IEdge<K> edge) {
+        Pair<Vertex<K>, Vertex<K>> removed = removedEdges.get(edge);
+        Vertex<K> vertex = removed == null ? pathTree.getGraph().getVertex(edge.getStart()) : removed.getLeft();
+        return (V) getVertices()[vertex.getId()];
+    }
+
+    private <V extends BaseDijkVertex<K, V>> V getEndVertex(IEdge<K> edge) {
+        Pair<Vertex<K>, Vertex<K>> removed = removedEdges.get(edge);
+        Vertex<K> vertex = removed == null ? pathTree.getGraph().getVertex(edge.getEnd()) : removed.getRight();
+        return (V) getVertices()[vertex.getId()];
+    }
+
+    /**
+     * 修改前驱顶点，并通知最短路径树树边的变化
+     */
+    private <V extends BaseDijkVertex<K, V>> void changePrevious(V vertex, V previous) {
+        V old = vertex.getPrevious();
+        vertex.changePrevious(previous);
+        pathTree.invalidateSubtreeSize();
+        pathTree.markDirty(vertex);
+        pathTree.treeEdgeChanged(vertex, old, previous);
+    }
+
+    /**
+     * 递归地修改顶点以及后继顶点的距离，并记录到快照的变化中
+     */
+    private <V extends BaseDijkVertex<K, V>> void changeDistanceRecursive(V vertex, long diff) {
+        if (diff == 0) {
+            return;
         }
+        handleSuccessorAndSelfRecursive(vertex, v -> {
+            v.changeDistance(diff);
+            pathTree.markDirty(v);
+        });
+    }
+
+    /**
+     * 是否有等待合并更新的变化
+     */
+    public boolean hasPendingChange() {
+        return !changeMap.isEmpty();
     }
 
     /**
      * 尝试合并更新
      */
-    public <V extends BaseDijkVertex<K, V>> void tryMergeUpdate() {
+    public void tryMergeUpdate() {
         if (!mergeUpdate) {
             return;
         }
+        applyChange();
+    }
+
+    public void setRecomputeRatio(double recomputeRatio) {
+        this.recomputeRatio = recomputeRatio;
+    }
+
+    public void setMetrics(UpdateMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private void applyChange() {
         if (changeMap.isEmpty()) {
             return;
         }
-        QueueWrapper<K> queueWrapper = new QueueWrapper<>();
-        mergeUpdateDec(queueWrapper);
-        mergeUpdateInc(queueWrapper);
+        long begin = System.nanoTime();
+        int vertices = pathTree.getGraph().size();
+        double threshold = recomputeRatio * vertices;
+        int affected = threshold >= Integer.MAX_VALUE - 1 ? 0 : estimateAffected((int) threshold + 1);
+        boolean recompute = affected > threshold;
+        if (recompute) {
+            // 受影响的部分太大，增量更新不如重新计算
+            changeMap.clear();
+            removedEdges.clear();
+            pathTree.recompute();
+        } else {
+            // 上一次更新异常中断时可能有残留
+            queueWrapper.clear();
+            nextEpoch();
+            try {
+                mergeUpdateDec(queueWrapper);
+                mergeUpdateInc(queueWrapper);
+            } finally {
+                // 异常中断时同样释放，EdgeDiff随之离开队列并回到对象池
+                releaseMinEdgeDiffs();
+            }
+            // 所有变化都已生效，发布新的版本
+            pathTree.publishSnapshot();
+        }
+        if (metrics != null) {
+            metrics.record(recompute, affected, vertices, System.nanoTime() - begin);
+        }
+    }
+
+    /**
+     * 进入新的轮次，之前轮次留下的顶点状态随之失效
+     * <p>轮次回绕到0时，过期的状态可能与新的轮次相同，此时逐个重置所有顶点</p>
+     */
+    private void nextEpoch() {
+        if (++epoch != 0) {
+            return;
+        }
+        for (BaseDijkVertex<K, ?> vertex : pathTree.vertices) {
+            if (vertex != null) {
+                vertex.resetEpoch();
+            }
+        }
+        if (pathTree.heapWrapper != null) {
+            for (BaseDijkVertex<K, ?> vertex : pathTree.heapWrapper.indexes) {
+                if (vertex != null) {
+                    vertex.resetEpoch();
+                }
+            }
+        }
+        epoch = 1;
+    }
+
+    /**
+     * 顶点在当前轮次持有edgeDiff，由{@link #releaseMinEdgeDiffs()}在更新结束时释放
+     */
+    private <V extends BaseDijkVertex<K, V>> void replaceMinEdgeDiff(V vertex, EdgeDiff<K> edgeDiff) {
+        if (edgeDiff != null && vertex.getMinEdgeDiff(epoch) == null) {
+            diffHolders.add(vertex);
+        }
+        vertex.replaceMinEdgeDiff(edgeDiff, epoch);
+    }
+
+    /**
+     * 释放当前轮次中顶点持有的EdgeDiff，不再被持有的EdgeDiff回到对象池
+     */
+    private void releaseMinEdgeDiffs() {
+        for (BaseDijkVertex<K, ?> vertex : diffHolders) {
+            vertex.replaceMinEdgeDiff(null, epoch);
+        }
+        diffHolders.clear();
+    }
+
+    EdgeDiff.Pool<K> getEdgeDiffPool() {
+        return edgeDiffPool;
+    }
+
+    /**
+     * 估算受影响的顶点数量：权重增加的树边与能够缩短距离的边，其终点所在的子树都会受影响
+     * <p>子树大小见{@link ShortestPathTree#subtreeSize(BaseDijkVertex, int)}，没有批量计算时只遍历到剩余的limit为止，
+     * 代价不超过随后增量更新本身；子树之间可能重叠，估算值偏大；达到limit后不再继续</p>
+     */
+    private <V extends BaseDijkVertex<K, V>> int estimateAffected(int limit) {
+        int count = 0;
+        for (Map.Entry<IEdge<K>, Long> entry : changeMap.entrySet()) {
+            IEdge<K> edge = entry.getKey();
+            V startVertex = getStartVertex(edge);
+            V endVertex = getEndVertex(edge);
+            long weight = weight(edge);
+            boolean affected = weight > entry.getValue() ? endVertex.getPrevious() == startVertex
+                    : startVertex.getDistance() + weight < endVertex.getDistance();
+            if (!affected) {
+                continue;
+            }
+            count += pathTree.subtreeSize(endVertex, limit - count);
+            if (count >= limit) {
+                break;
+            }
+        }
+        return count;
     }
 
     private <V extends BaseDijkVertex<K, V>> void mergeUpdateDec(QueueWrapper<K> queueWrapper) {
@@ -137,19 +423,18 @@ public class ShortestPathTreeUpdater<K> {
         changeMap.entrySet().removeIf(pair -> {
             IEdge<K> edge = pair.getKey();
             Long oldWeight = pair.getValue();
-            if (edge.getWeight() < oldWeight) {
+            if (weight(edge) < oldWeight) {
                 decList.add(Pair.of(edge, oldWeight));
                 return true;
             }
             return false;
         });
-        Map<K, ? extends BaseDijkVertex<K, ?>> vertexMap = getVertexMap();
         Iterator<Map.Entry<IEdge<K>, Long>> iterator = decList.iterator();
         while (iterator.hasNext()) {
             Map.Entry<IEdge<K>, Long> entry = iterator.next();
             IEdge<K> edge = entry.getKey();
-            V startVertex = (V) vertexMap.get(edge.getStart());
-            V endVertex = (V) vertexMap.get(edge.getEnd());
+            V startVertex = getStartVertex(edge);
+            V endVertex = getEndVertex(edge);
             long distanceNew = startVertex.getDistance() + edge.getWeight();
             long distanceOld = endVertex.getDistance();
             // D(i) + w'(e) < D(j)
@@ -160,13 +445,13 @@ public class ShortestPathTreeUpdater<K> {
                 continue;
             }
             long diff = distanceNew - distanceOld;
-            endVertex.changeDistanceRecursive(diff);
+            changeDistanceRecursive(endVertex, diff);
             // P(j) = i
-            endVertex.changePrevious(startVertex);
+            changePrevious(endVertex, startVertex);
         }
         for (Map.Entry<IEdge<K>, Long> entry : decList) {
             IEdge<K> edge = entry.getKey();
-            V endVertex = (V) vertexMap.get(edge.getEnd());
+            V endVertex = getEndVertex(edge);
             handleOutEdge(queueWrapper, endVertex, ShortestPathTreeUpdater::decFilter);
         }
         pollUntilEmpty(queueWrapper, (BiPredicate<V, V>) ShortestPathTreeUpdater::decFilter);
@@ -176,87 +461,98 @@ public class ShortestPathTreeUpdater<K> {
     }
 
     private <V extends BaseDijkVertex<K, V>> void mergeUpdateInc(QueueWrapper<K> queueWrapper) {
-        Set<V> mSet = new HashSet<>();
-        Map<K, ? extends BaseDijkVertex<K, ?>> vertexMap = getVertexMap();
+        List<V> incList = new ArrayList<>();
+        // 被移除的树边的终点，即断开的子树的根
+        List<V> detachedList = new ArrayList<>();
         for (Map.Entry<IEdge<K>, Long> pair : changeMap.entrySet()) {
             IEdge<K> edge = pair.getKey();
-            V startVertex = (V) vertexMap.get(edge.getStart());
-            V endVertex = (V) vertexMap.get(edge.getEnd());
+            V startVertex = getStartVertex(edge);
+            V endVertex = getEndVertex(edge);
             if (endVertex.getPrevious() != startVertex) {
                 // 说明这条边不在最短路径树上，不会对原来的最短路径树造成影响
-                return;
+                continue;
             }
-            Long oldWeight = pair.getValue();
-            long weight = edge.getWeight();
-            long diff = weight - oldWeight;
-            endVertex.changeDistanceRecursive(diff);
+            incList.add(endVertex);
+            long weight = weight(edge);
+            // 移除的边使子树暂时位于UNREACHABLE之后，没有被重新连接的顶点即为不可达
+            long diff = weight == Long.MAX_VALUE ? UNREACHABLE - endVertex.getDistance() : weight - pair.getValue();
+            changeDistanceRecursive(endVertex, diff);
             handleSuccessorAndSelfRecursive(endVertex, vertex -> {
-                vertex.markInM();
+                vertex.markInM(epoch);
                 LOGGER.debug("节点进入M集合:{}", vertex);
-                mSet.add(vertex);
             });
+            if (weight == Long.MAX_VALUE) {
+                // 断开子树，避免被重新连接的起点带动
+                changePrevious(endVertex, null);
+                detachedList.add(endVertex);
+            }
         }
-        for (Map.Entry<IEdge<K>, Long> pair : changeMap.entrySet()) {
-            V endVertex = (V) vertexMap.get(pair.getKey().getEnd());
+        for (V endVertex : incList) {
             handleDirectInEdge(queueWrapper, endVertex);
         }
-        pollUntilEmpty(queueWrapper, (BiPredicate<V, V>) ShortestPathTreeUpdater::incFilter);
-        mSet.forEach(BaseDijkVertex::resetStateAndEdgeDiff);
+        pollUntilEmpty(queueWrapper, (BiPredicate<V, V>) this::incFilter);
+        // 没有被重新连接的顶点仍然位于某棵断开的子树中，M集合的状态随轮次失效，不需要逐个重置
+        for (V root : detachedList) {
+            if (root.getPrevious() != null) {
+                // 已经被重新连接，或者并入了另一棵断开的子树
+                continue;
+            }
+            handleSuccessorAndSelfRecursive(root, vertex -> {
+                changePrevious(vertex, null);
+                vertex.changeDistance(Long.MAX_VALUE - vertex.getDistance());
+            });
+        }
         changeMap.clear();
+        removedEdges.clear();
     }
 
     private <V extends BaseDijkVertex<K, V>> void pollUntilEmpty(QueueWrapper<K> queueWrapper, BiPredicate<V, V> edgeFilter) {
         while (queueWrapper.isNotEmpty()) {
             EdgeDiff<K> poll = queueWrapper.poll();
             LOGGER.debug("选中最短路径:{}", poll);
+            // poll不再被顶点持有后会被回收，先取出终点
+            V end = (V) poll.end;
             if (poll.diff != 0) {
-                poll.end.changePrevious(poll.start);
+                changePrevious(end, (V) poll.start);
+                changeDistanceRecursive(end, poll.diff);
             }
-            if (poll.diff != 0) {
-                poll.end.changeDistanceRecursive(poll.diff);
-            }
-            handleSuccessorAndSelfRecursive(poll.end, vertex -> {
-                vertex.replaceMinEdgeDiff(null);
+            handleSuccessorAndSelfRecursive(end, vertex -> {
+                vertex.replaceMinEdgeDiff(null, epoch);
             });
-            handleOutEdge(queueWrapper, (V) poll.end, edgeFilter);
+            handleOutEdge(queueWrapper, end, edgeFilter);
         }
     }
 
     private <V extends BaseDijkVertex<K, V>> void handleOutEdge(QueueWrapper<K> queueWrapper, V endVertex,
                                                                 BiPredicate<V, V> edgeFilter) {
         // 初始化所有出边
-        Map<K, ? extends BaseDijkVertex<K, ?>> vertexMap = getVertexMap();
+        BaseDijkVertex<K, ?>[] vertices = getVertices();
         handleSuccessorAndSelfRecursive(endVertex, start -> {
-            Map<K, IEdge<K>> outEdges = start.getVertex().outEdges;
-            for (Map.Entry<K, IEdge<K>> entry : outEdges.entrySet()) {
-                V end = (V) vertexMap.get(entry.getKey());
-                IEdge<K> edge = entry.getValue();
-                if (end.getPrevious() == null) {
-                    LOGGER.debug("出边{}的终点:{}不在最短路径上，跳过", edge, end);
-                    continue;
-                }
+            start.getVertex().walkOutEdge((adjacent, edge) -> {
+                V end = (V) vertices[adjacent.getId()];
+                // 终点不可达时距离为无穷大，同样会被更新，新增边后原本不可达的顶点可能变得可达
                 if (edgeFilter.test(start, end)) {
-                    continue;
+                    return;
                 }
                 long distanceNew = start.getDistance() + edge.getWeight();
                 long distanceOld = end.getDistance();
                 long diff = distanceNew - distanceOld;
                 if (diff >= 0) {
-                    continue;
+                    return;
                 }
 
-                EdgeDiff<K> minEdgeDiff = end.getMinEdgeDiff();
+                EdgeDiff<K> minEdgeDiff = end.getMinEdgeDiff(epoch);
                 if (minEdgeDiff == null || diff < minEdgeDiff.diff) {
-                    EdgeDiff<K> edgeDiff = new EdgeDiff<>(start, end, diff);
-                    end.replaceMinEdgeDiff(edgeDiff);
+                    EdgeDiff<K> edgeDiff = edgeDiffPool.obtain(start, end, diff);
+                    replaceMinEdgeDiff(end, edgeDiff);
                     queueWrapper.offer(edgeDiff);
                 }
-            }
+            });
         });
     }
 
-    private static <K, V extends BaseDijkVertex<K, V>> boolean incFilter(V start, V end) {
-        boolean check = !end.isInM();
+    private <V extends BaseDijkVertex<K, V>> boolean incFilter(V start, V end) {
+        boolean check = !end.isInM(epoch);
         if (check) {
             LOGGER.debug("起点：{} 终点:{},终点非候选节点，跳过", start, end);
         }
@@ -266,52 +562,68 @@ public class ShortestPathTreeUpdater<K> {
 
     private <V extends BaseDijkVertex<K, V>> void handleDirectInEdge(QueueWrapper<K> queueWrapper, V vertex) {
         // 文章中的des(j)
-        Map<K, ? extends BaseDijkVertex<K, ?>> vertexMap = getVertexMap();
+        BaseDijkVertex<K, ?>[] vertices = getVertices();
         handleSuccessorAndSelfRecursive(vertex, end -> {
-            end.markVisited();
+            end.markVisited(epoch);
             V parent = end.getPrevious();
-            Long minDiff = parent.getMinEdgeDiff() == null ?
-                    null : parent.getMinEdgeDiff().diff;
-            V minEdgeDiffStart = null;
-            EdgeDiff<K> minEdgeDiff = parent.getMinEdgeDiff();
-            Map<K, IEdge<K>> inEdges = end.getVertex().inEdges;
-            for (Map.Entry<K, IEdge<K>> entry : inEdges.entrySet()) {
-                V start = (V) vertexMap.get(entry.getKey());
+            EdgeDiff<K> minEdgeDiff = parent == null ? null : parent.getMinEdgeDiff(epoch);
+            MinInEdge<V> minInEdge = new MinInEdge<>(minEdgeDiff == null ? null : minEdgeDiff.diff);
+            end.getVertex().walkInEdge((adjacent, edge) -> {
+                V start = (V) vertices[adjacent.getId()];
                 if (start.getPrevious() == null) {
-                    continue;
+                    return;
                 }
-                if (start.isInM()) {
-                    continue;
+                if (start.isInM(epoch)) {
+                    return;
                 }
-                long distanceNew = start.getDistance() + entry.getValue().getWeight();
+                long distanceNew = start.getDistance() + edge.getWeight();
                 long distanceOld = end.getDistance();
                 long diff = distanceNew - distanceOld;
                 if (diff > 0) {
-                    continue;
+                    return;
                 }
-                if (minDiff == null) {
-                    minDiff = diff;
-                    minEdgeDiffStart = start;
-                } else if (diff < minDiff) {
-                    minDiff = diff;
-                    minEdgeDiffStart = start;
+                if (minInEdge.minDiff == null) {
+                    minInEdge.minDiff = diff;
+                    minInEdge.start = start;
+                } else if (diff < minInEdge.minDiff) {
+                    minInEdge.minDiff = diff;
+                    minInEdge.start = start;
                 }
-            }
-            if (minEdgeDiffStart != null) {
-                minEdgeDiff = new EdgeDiff<>(minEdgeDiffStart, end, minDiff);
+            });
+            if (minInEdge.start != null) {
+                minEdgeDiff = edgeDiffPool.obtain(minInEdge.start, end, minInEdge.minDiff);
                 queueWrapper.offer(minEdgeDiff);
             }
-            end.replaceMinEdgeDiff(minEdgeDiff);
-        }, BaseDijkVertex::isVisited);
+            replaceMinEdgeDiff(end, minEdgeDiff);
+        }, v -> v.isVisited(epoch));
+    }
+
+    /**
+     * 遍历入边时记录的最小距离变化
+     */
+    private static class MinInEdge<V> {
+        Long minDiff;
+        V start;
+
+        MinInEdge(Long minDiff) {
+            this.minDiff = minDiff;
+        }
     }
 
     public boolean checkAllReset() {
-        for (BaseDijkVertex<K, ?> kBaseDijkVertex : getVertexMap().values()) {
-            boolean waitSelect = kBaseDijkVertex.isInM();
-            if (waitSelect) {
+        if (queueWrapper.isNotEmpty() || !diffHolders.isEmpty() || !edgeDiffPool.checkAllReleased()) {
+            return false;
+        }
+        // 顶点的状态随轮次失效，只需要检查没有释放的EdgeDiff与没有完成的不可达顶点
+        for (BaseDijkVertex<K, ?> kBaseDijkVertex : getVertices()) {
+            if (kBaseDijkVertex == null) {
+                continue;
+            }
+            if (kBaseDijkVertex.getMinEdgeDiff(epoch) != null) {
                 return false;
             }
-            if (kBaseDijkVertex.getMinEdgeDiff() != null) {
+            long distance = kBaseDijkVertex.getDistance();
+            if (distance >= UNREACHABLE && distance != Long.MAX_VALUE) {
                 return false;
             }
         }
@@ -319,25 +631,114 @@ public class ShortestPathTreeUpdater<K> {
     }
 
 
+    /**
+     * 更新时的优先队列，按EdgeDiff的距离变化排序
+     * <p>{@link HeapType#DARY}时为EdgeDiff分配一个槽位，以槽位编号与diff存入{@link DaryHeap}，
+     * 槽位在出队或移除时回收；diff相同的EdgeDiff之间顺序不定。
+     * 更新时的diff不是单调的，{@link HeapType#RADIX}时同样使用{@link DaryHeap}</p>
+     */
     static class QueueWrapper<K> {
-        private FiboHeap<EdgeDiff<K>> queue = FiboHeap.create(EdgeDiff.class);
+        /**
+         * 元素为EdgeDiff对象的堆，EdgeDiff通过{@link EdgeDiff#remove()}把自己从堆中删除
+         */
+        private final Queue<EdgeDiff<K>> queue;
+        private final DaryHeap daryHeap;
+        /**
+         * 槽位 -> 队列中的EdgeDiff
+         */
+        private EdgeDiff<K>[] slots;
+        /**
+         * 回收的槽位
+         */
+        private int[] freeSlots;
+        private int freeCount;
+        /**
+         * 从未使用过的最小槽位
+         */
+        private int nextSlot;
+
+        QueueWrapper(HeapType heapType) {
+            switch (heapType) {
+                case DARY:
+                case RADIX:
+                    queue = null;
+                    daryHeap = new DaryHeap();
+                    slots = newSlots(16);
+                    freeSlots = new int[16];
+                    break;
+                case PAIRING:
+                    queue = PairingHeap.create(EdgeDiff.class);
+                    daryHeap = null;
+                    break;
+                case HOLLOW:
+                    queue = HollowHeap.create(EdgeDiff.class);
+                    daryHeap = null;
+                    break;
+                default:
+                    queue = FiboHeap.create(EdgeDiff.class);
+                    daryHeap = null;
+            }
+        }
 
         @SuppressWarnings("unchecked")
+        private static <K> EdgeDiff<K>[] newSlots(int length) {
+            return (EdgeDiff<K>[]) new EdgeDiff<?>[length];
+        }
+
         public void offer(EdgeDiff<K> edgeDiff) {
-            queue.offer(edgeDiff);
+            if (daryHeap == null) {
+                queue.offer(edgeDiff);
+            } else {
+                int slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot++;
+                if (slot == slots.length) {
+                    slots = Arrays.copyOf(slots, slot << 1);
+                }
+                slots[slot] = edgeDiff;
+                edgeDiff.enqueue(this, slot);
+                daryHeap.offer(slot, edgeDiff.diff);
+            }
             LOGGER.debug("增加edgeDiff:{}", edgeDiff);
         }
 
         public EdgeDiff<K> poll() {
-            return queue.poll();
+            if (daryHeap == null) {
+                return queue.poll();
+            }
+            return release(daryHeap.poll());
+        }
+
+        /**
+         * 从队列中移除，只由{@link EdgeDiff#remove()}调用
+         */
+        void remove(EdgeDiff<K> edgeDiff) {
+            int slot = edgeDiff.getSlot();
+            daryHeap.remove(slot);
+            release(slot);
+        }
+
+        private EdgeDiff<K> release(int slot) {
+            EdgeDiff<K> edgeDiff = slots[slot];
+            slots[slot] = null;
+            edgeDiff.enqueue(null, EdgeDiff.NO_SLOT);
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount << 1);
+            }
+            freeSlots[freeCount++] = slot;
+            return edgeDiff;
         }
 
         public void clear() {
-            queue.clear();
+            if (daryHeap == null) {
+                queue.clear();
+                return;
+            }
+            while (!daryHeap.isEmpty()) {
+                release(daryHeap.poll());
+            }
         }
 
         public boolean isNotEmpty() {
-            return !queue.isEmpty();
+            return daryHeap == null ? !queue.isEmpty() : !daryHeap.isEmpty();
         }
     }
 }
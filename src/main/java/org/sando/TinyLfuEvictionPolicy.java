@@ -0,0 +1,96 @@
+package org.sando;
+
+/**
+ * TinyLFU准入策略：淘汰顺序由被包装的策略决定，缓存已满时，
+ * 只有新起点的近期访问频率高于被淘汰的起点才会被接纳
+ * <p>访问频率使用Count-Min Sketch估算，包括不在缓存中的起点；
+ * 总访问次数达到采样上限后所有计数减半，使频率反映近期的访问</p>
+ * <p>参考文献：<a href="https://arxiv.org/abs/1512.00727">TinyLFU: A Highly Efficient Cache Admission Policy</a></p>
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/11
+ */
+public class TinyLfuEvictionPolicy<K> implements IEvictionPolicy<K> {
+    private static final int DEPTH = 4;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+    private final IEvictionPolicy<K> delegate;
+    private final int[][] table;
+    private final int mask;
+    /**
+     * 采样上限
+     */
+    private final int sampleSize;
+    private int samples;
+
+    /**
+     * @param expectedSize 预计缓存的树的数量
+     */
+    public TinyLfuEvictionPolicy(int expectedSize) {
+        this(new LruEvictionPolicy<>(), expectedSize);
+    }
+
+    /**
+     * @param delegate     决定淘汰顺序的策略
+     * @param expectedSize 预计缓存的树的数量
+     */
+    public TinyLfuEvictionPolicy(IEvictionPolicy<K> delegate, int expectedSize) {
+        this.delegate = delegate;
+        int width = Integer.highestOneBit(Math.max(16, expectedSize) - 1) << 1;
+        this.table = new int[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    private int index(K k, int row) {
+        int h = (k == null ? 0 : k.hashCode()) * SEEDS[row];
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * @return 估算的访问频率
+     */
+    int frequency(K k) {
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, table[row][index(k, row)]);
+        }
+        return min;
+    }
+
+    @Override
+    public void recordAccess(K k) {
+        for (int row = 0; row < DEPTH; row++) {
+            table[row][index(k, row)]++;
+        }
+        if (++samples >= sampleSize) {
+            for (int[] counters : table) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>>= 1;
+                }
+            }
+            samples >>>= 1;
+        }
+        delegate.recordAccess(k);
+    }
+
+    @Override
+    public void onInsert(K k) {
+        delegate.onInsert(k);
+    }
+
+    @Override
+    public void onRemove(K k) {
+        delegate.onRemove(k);
+    }
+
+    @Override
+    public K victim() {
+        return delegate.victim();
+    }
+
+    @Override
+    public boolean admit(K candidate, K victim) {
+        return frequency(candidate) > frequency(victim);
+    }
+}
@@ -0,0 +1,172 @@
+package org.sando;
+
+import java.util.*;
+
+/**
+ * 树边倒排索引：树边 -> 包含该树边的最短路径树，用于把边的权重变化只路由给受影响的树
+ * <ul>
+ *     <li>权重增加：只有包含该树边的树会受影响，直接查索引</li>
+ *     <li>权重减少：对每棵完整的树做一次距离检查D(i) + w'(e) < D(j)</li>
+ *     <li>未完成的树：搜索状态随时可能失效，所有变化都会通知</li>
+ * </ul>
+ * <p>权重减少没有索引，路由代价与完整的树的数量成正比，每棵树是一次O(1)的距离查询。
+ * 一条边是否影响某棵树取决于它在该树中的松弛余量D(i) + w(e) - D(j)，为减少建立索引需要为每条边、
+ * 每棵树维护余量，内存为O(边数 * 树数)，并且树中任何距离的变化都要更新所有相关的余量，代价高于逐个检查</p>
+ * <p>树边以(起点编号, 终点编号)为键，无向图的边两个方向都需要检查。
+ * 树可能在并行更新或者查询的线程中通知树边的变化，因此索引的读写都需要同步；
+ * 树通知时持有树的写锁，所以持有索引的锁时不能再调用树的方法，否则会死锁</p>
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/10
+ */
+final class TreeEdgeIndex<K> {
+    private final Graph<K> graph;
+    /**
+     * (起点编号, 终点编号) -> 包含该树边的完整的最短路径树
+     */
+    private final Map<Long, Set<IShortestPathTree<K>>> treeEdges = new HashMap<>();
+    /**
+     * 已经完整、树边都已加入索引的树
+     */
+    private final Set<IShortestPathTree<K>> indexed = newTreeSet();
+    /**
+     * 尚未完整的树
+     */
+    private final Set<IShortestPathTree<K>> unindexed = newTreeSet();
+
+    TreeEdgeIndex(Graph<K> graph) {
+        this.graph = graph;
+    }
+
+    private static <K> Set<IShortestPathTree<K>> newTreeSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    private static long key(int start, int end) {
+        return ((long) start << 32) | (end & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 开始索引最短路径树
+     */
+    void add(IShortestPathTree<K> tree) {
+        synchronized (this) {
+            unindexed.add(tree);
+        }
+        tree.setTreeEdgeListener(new IShortestPathTree.ITreeEdgeListener() {
+            @Override
+            public void onTreeEdgeChange(int vertex, int oldParent, int newParent) {
+                synchronized (TreeEdgeIndex.this) {
+                    if (oldParent >= 0) {
+                        Set<IShortestPathTree<K>> trees = treeEdges.get(key(oldParent, vertex));
+                        if (trees != null) {
+                            trees.remove(tree);
+                            if (trees.isEmpty()) {
+                                treeEdges.remove(key(oldParent, vertex));
+                            }
+                        }
+                    }
+                    if (newParent >= 0) {
+                        treeEdges.computeIfAbsent(key(newParent, vertex), k -> newTreeSet()).add(tree);
+                    }
+                }
+            }
+
+            @Override
+            public void onComplete() {
+                synchronized (TreeEdgeIndex.this) {
+                    unindexed.remove(tree);
+                    indexed.add(tree);
+                }
+            }
+        });
+    }
+
+    /**
+     * 停止索引最短路径树
+     */
+    void remove(IShortestPathTree<K> tree) {
+        tree.setTreeEdgeListener(null);
+        synchronized (this) {
+            unindexed.remove(tree);
+            indexed.remove(tree);
+        }
+    }
+
+    /**
+     * @return 会受到这条边权重变化影响的树
+     */
+    Set<IShortestPathTree<K>> route(IEdge<K> edge, long oldWeight) {
+        Set<IShortestPathTree<K>> result = newTreeSet();
+        List<IShortestPathTree<K>> candidates;
+        synchronized (this) {
+            result.addAll(unindexed);
+            candidates = new ArrayList<>(indexed);
+        }
+        collect(result, candidates, edge, oldWeight);
+        return result;
+    }
+
+    /**
+     * 批量路由，每棵树只会收到影响它的那部分变化
+     *
+     * @return 树 -> 影响该树的边 -> 变化前的权重
+     */
+    Map<IShortestPathTree<K>, Map<IEdge<K>, Long>> route(Map<IEdge<K>, Long> oldWeights) {
+        Map<IShortestPathTree<K>, Map<IEdge<K>, Long>> result = new IdentityHashMap<>();
+        List<IShortestPathTree<K>> candidates;
+        synchronized (this) {
+            for (IShortestPathTree<K> tree : unindexed) {
+                result.put(tree, oldWeights);
+            }
+            candidates = new ArrayList<>(indexed);
+        }
+        Set<IShortestPathTree<K>> trees = newTreeSet();
+        oldWeights.forEach((edge, oldWeight) -> {
+            collect(trees, candidates, edge, oldWeight);
+            for (IShortestPathTree<K> tree : trees) {
+                result.computeIfAbsent(tree, k -> new LinkedHashMap<>()).put(edge, oldWeight);
+            }
+            trees.clear();
+        });
+        return result;
+    }
+
+    private void collect(Set<IShortestPathTree<K>> result, List<IShortestPathTree<K>> candidates, IEdge<K> edge, long oldWeight) {
+        Vertex<K> start = graph.getVertex(edge.getStart());
+        Vertex<K> end = graph.getVertex(edge.getEnd());
+        long weight = edge.getWeight();
+        collect(result, candidates, start.getId(), end.getId(), weight, weight > oldWeight);
+        if (!graph.isDirected()) {
+            collect(result, candidates, end.getId(), start.getId(), weight, weight > oldWeight);
+        }
+    }
+
+    /**
+     * @param candidates 完整的树，权重减少时逐个检查，代价为O(树数)
+     */
+    private void collect(Set<IShortestPathTree<K>> result, List<IShortestPathTree<K>> candidates,
+                         int start, int end, long weight, boolean inc) {
+        if (inc) {
+            // 不在最短路径树上的边权重增加不会对树造成影响
+            synchronized (this) {
+                Set<IShortestPathTree<K>> trees = treeEdges.get(key(start, end));
+                if (trees != null) {
+                    result.addAll(trees);
+                }
+            }
+            return;
+        }
+        for (IShortestPathTree<K> tree : candidates) {
+            if (result.contains(tree)) {
+                continue;
+            }
+            long distanceStart = tree.getDistanceById(start);
+            // D(i) + w'(e) < D(j)
+            if (distanceStart != Long.MAX_VALUE && distanceStart + weight < tree.getDistanceById(end)) {
+                result.add(tree);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.sando;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 最短路径树的读写锁
+ * <p>查询稳定(已经完整且没有待合并的变化)的树不会修改树，多个线程可以持有读锁同时查询；
+ * 否则查询会继续搜索或者合并更新，需要先持有图的读锁再持有树的写锁。
+ * 图的变化由持有图写锁的线程通知，只需要持有树的写锁。
+ * 加锁顺序总是先图后树，因此不会死锁</p>
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/12
+ */
+final class TreeLock {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock graphReadLock;
+    /**
+     * 树是否稳定，持有树的锁时调用
+     */
+    private final BooleanSupplier stable;
+
+    TreeLock(Graph<?> graph, BooleanSupplier stable) {
+        this.graphReadLock = graph.getLock().readLock();
+        this.stable = stable;
+    }
+
+    /**
+     * 查询前加锁，需要与{@link #unlockQuery(boolean)}成对调用
+     *
+     * @return true：只持有树的读锁；false：持有图的读锁与树的写锁
+     */
+    boolean lockQuery() {
+        lock.readLock().lock();
+        if (stable.getAsBoolean()) {
+            return true;
+        }
+        lock.readLock().unlock();
+        graphReadLock.lock();
+        lock.writeLock().lock();
+        return false;
+    }
+
+    void unlockQuery(boolean read) {
+        if (read) {
+            lock.readLock().unlock();
+        } else {
+            lock.writeLock().unlock();
+            graphReadLock.unlock();
+        }
+    }
+
+    void lockRead() {
+        lock.readLock().lock();
+    }
+
+    void unlockRead() {
+        lock.readLock().unlock();
+    }
+
+    void lockWrite() {
+        lock.writeLock().lock();
+    }
+
+    void unlockWrite() {
+        lock.writeLock().unlock();
+    }
+}
@@ -0,0 +1,273 @@
+package org.sando;
+
+import java.util.*;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * 最短路径树某一版本的只读快照
+ * <p>快照发布后不再改变，多个线程可以不加锁地读取；树的写线程在更新完成后发布下一个版本。
+ * 距离与前驱按顶点编号分块存储，下一个版本只复制发生变化的块，其余的块与上一个版本共享</p>
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/13
+ */
+public final class TreeSnapshot<K> {
+    private static final int CHUNK_SHIFT = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    /**
+     * 版本号，每次发布加一
+     */
+    private final long version;
+    /**
+     * 顶点编号的上界
+     */
+    private final int size;
+    /**
+     * 顶点编号 -> 到顶点的距离，不可达时为{@link Long#MAX_VALUE}
+     */
+    private final long[][] distances;
+    /**
+     * 顶点编号 -> 前驱顶点编号，起点的前驱为自身，不可达时为-1
+     */
+    private final int[][] parents;
+    /**
+     * 发布时图中的顶点，图的顶点集合不变时与上一个版本共享
+     */
+    private final Map<K, Vertex<K>> vertexMap;
+    private final Vertex<K>[] vertices;
+    /**
+     * 发布时图的顶点数量，用于判断顶点集合是否变化
+     */
+    private final int vertexCount;
+
+    private TreeSnapshot(long version, int size, long[][] distances, int[][] parents,
+                         Map<K, Vertex<K>> vertexMap, Vertex<K>[] vertices, int vertexCount) {
+        this.version = version;
+        this.size = size;
+        this.distances = distances;
+        this.parents = parents;
+        this.vertexMap = vertexMap;
+        this.vertices = vertices;
+        this.vertexCount = vertexCount;
+    }
+
+    /**
+     * @return 版本号，同一棵树后发布的快照版本号更大
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 获取到end的最短距离
+     *
+     * @return 最短距离，不可达或者顶点不存在时返回{@link Long#MAX_VALUE}
+     */
+    public long getDistance(K end) {
+        Vertex<K> vertex = vertexMap.get(end);
+        return vertex == null ? Long.MAX_VALUE : getDistanceById(vertex.getId());
+    }
+
+    /**
+     * @param id 顶点编号，见{@link Vertex#getId()}
+     * @return 最短距离，不可达时返回{@link Long#MAX_VALUE}
+     */
+    public long getDistanceById(int id) {
+        if (id < 0 || id >= size) {
+            return Long.MAX_VALUE;
+        }
+        return distances[id >>> CHUNK_SHIFT][id & CHUNK_MASK];
+    }
+
+    /**
+     * 获取最短路径上k的前驱顶点
+     *
+     * @return 前驱顶点，起点的前驱顶点为自身，不可达或者顶点不存在时返回null
+     */
+    public Vertex<K> getPrevious(K k) {
+        Vertex<K> vertex = vertexMap.get(k);
+        if (vertex == null) {
+            return null;
+        }
+        int parent = parentOf(vertex.getId());
+        return parent < 0 ? null : vertices[parent];
+    }
+
+    /**
+     * 获取从起点到end的最短路径
+     *
+     * @return 路径上的顶点，第一个为起点，最后一个为end；不可达时返回空列表
+     */
+    public List<K> getPath(K end) {
+        Vertex<K> vertex = vertexMap.get(end);
+        if (vertex == null) {
+            return Collections.emptyList();
+        }
+        int id = vertex.getId();
+        if (parentOf(id) < 0) {
+            return Collections.emptyList();
+        }
+        List<K> path = new ArrayList<>();
+        path.add(end);
+        int parent;
+        while ((parent = parentOf(id)) != id) {
+            id = parent;
+            path.add(vertices[id].getK());
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private int parentOf(int id) {
+        if (id >= size) {
+            return -1;
+        }
+        return parents[id >>> CHUNK_SHIFT][id & CHUNK_MASK];
+    }
+
+    /**
+     * 快照的写入者，只由持有树写锁的线程调用
+     * <p>记录上一次发布之后发生变化的顶点编号，发布时只复制这些顶点所在的块</p>
+     */
+    static final class Writer<K> {
+        private final Graph<K> graph;
+        private volatile TreeSnapshot<K> published;
+        /**
+         * 上一次发布之后发生变化的顶点编号
+         */
+        private int[] dirty = new int[16];
+        private int dirtyCount;
+        private final BitSet marked = new BitSet();
+        /**
+         * 下一次发布是否需要写入所有顶点
+         */
+        private boolean all;
+
+        Writer(Graph<K> graph) {
+            this.graph = graph;
+        }
+
+        /**
+         * @return 最近一次发布的快照，还未发布过时返回null
+         */
+        TreeSnapshot<K> get() {
+            return published;
+        }
+
+        /**
+         * 记录顶点的距离或前驱发生了变化，第一次发布之前不需要记录
+         */
+        void markDirty(int id) {
+            if (published == null || all || marked.get(id)) {
+                return;
+            }
+            marked.set(id);
+            if (dirtyCount == dirty.length) {
+                dirty = Arrays.copyOf(dirty, dirtyCount << 1);
+            }
+            dirty[dirtyCount++] = id;
+        }
+
+        /**
+         * 记录所有顶点都可能发生了变化，例如重新计算整棵树
+         */
+        void markAll() {
+            all = true;
+            clearDirty();
+        }
+
+        /**
+         * 发布新的版本
+         *
+         * @param size     顶点编号的上界
+         * @param distance 顶点编号 -> 距离
+         * @param parent   顶点编号 -> 前驱顶点编号，没有时为-1
+         */
+        void publish(int size, IntToLongFunction distance, IntUnaryOperator parent) {
+            TreeSnapshot<K> old = published;
+            int chunks = (size + CHUNK_MASK) >>> CHUNK_SHIFT;
+            long[][] distances;
+            int[][] parents;
+            if (old == null || all) {
+                distances = new long[chunks][];
+                parents = new int[chunks][];
+                for (int c = 0; c < chunks; c++) {
+                    distances[c] = new long[CHUNK_SIZE];
+                    parents[c] = new int[CHUNK_SIZE];
+                }
+                for (int id = 0; id < size; id++) {
+                    write(distances, parents, id, distance, parent);
+                }
+            } else {
+                distances = Arrays.copyOf(old.distances, chunks);
+                parents = Arrays.copyOf(old.parents, chunks);
+                // 复制过的块，同一个块只复制一次
+                boolean[] copied = new boolean[chunks];
+                for (int c = old.distances.length; c < chunks; c++) {
+                    distances[c] = new long[CHUNK_SIZE];
+                    parents[c] = new int[CHUNK_SIZE];
+                    copied[c] = true;
+                }
+                for (int id = old.size; id < size; id++) {
+                    writeCopy(distances, parents, copied, id, distance, parent);
+                }
+                for (int i = 0; i < dirtyCount; i++) {
+                    if (dirty[i] < size) {
+                        writeCopy(distances, parents, copied, dirty[i], distance, parent);
+                    }
+                }
+            }
+            Map<K, Vertex<K>> vertexMap;
+            Vertex<K>[] vertices;
+            if (old != null && old.vertices.length == graph.idBound() && old.vertexCount == graph.size()) {
+                // 编号不会复用，上界与数量都不变时顶点集合不变
+                vertexMap = old.vertexMap;
+                vertices = old.vertices;
+            } else {
+                vertexMap = new HashMap<>();
+                vertices = newVertexArray(graph.idBound());
+                graph.walkVertex(vertex -> {
+                    vertexMap.put(vertex.getK(), vertex);
+                    vertices[vertex.getId()] = vertex;
+                });
+            }
+            clearDirty();
+            all = false;
+            published = new TreeSnapshot<>(old == null ? 1 : old.version + 1, size, distances, parents,
+                    vertexMap, vertices, graph.size());
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <K> Vertex<K>[] newVertexArray(int length) {
+            return (Vertex<K>[]) new Vertex<?>[length];
+        }
+
+        private void clearDirty() {
+            for (int i = 0; i < dirtyCount; i++) {
+                marked.clear(dirty[i]);
+            }
+            dirtyCount = 0;
+        }
+
+        private static void writeCopy(long[][] distances, int[][] parents, boolean[] copied, int id,
+                                      IntToLongFunction distance, IntUnaryOperator parent) {
+            int c = id >>> CHUNK_SHIFT;
+            if (!copied[c]) {
+                distances[c] = distances[c].clone();
+                parents[c] = parents[c].clone();
+                copied[c] = true;
+            }
+            write(distances, parents, id, distance, parent);
+        }
+
+        private static void write(long[][] distances, int[][] parents, int id,
+                                  IntToLongFunction distance, IntUnaryOperator parent) {
+            int p = parent.applyAsInt(id);
+            distances[id >>> CHUNK_SHIFT][id & CHUNK_MASK] = p < 0 ? Long.MAX_VALUE : distance.applyAsLong(id);
+            parents[id >>> CHUNK_SHIFT][id & CHUNK_MASK] = p;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.sando;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 最短路径树更新策略的统计，用于调整重新计算的阈值
+ * <p>每次合并更新前，更新器估算受影响的顶点数量，超过阈值时重新计算整棵树，否则增量更新。
+ * 多棵树可以共享同一个统计，各个计数可以被多个线程同时累加</p>
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/15
+ */
+public final class UpdateMetrics {
+    /**
+     * 默认的阈值：估算受影响的顶点超过图中顶点的一半时重新计算
+     */
+    public static final double DEFAULT_RECOMPUTE_RATIO = 0.5;
+    private final LongAdder incrementalCount = new LongAdder();
+    private final LongAdder incrementalNanos = new LongAdder();
+    private final LongAdder incrementalAffected = new LongAdder();
+    private final LongAdder recomputeCount = new LongAdder();
+    private final LongAdder recomputeNanos = new LongAdder();
+    private final LongAdder recomputeAffected = new LongAdder();
+    /**
+     * 做出决定时图中顶点数量的总和
+     */
+    private final LongAdder vertices = new LongAdder();
+
+    /**
+     * 记录一次更新
+     *
+     * @param recompute 是否重新计算
+     * @param affected  估算的受影响顶点数量，达到阈值后不再继续估算
+     * @param vertices  图中的顶点数量
+     * @param nanos     更新耗时
+     */
+    void record(boolean recompute, int affected, int vertices, long nanos) {
+        if (recompute) {
+            recomputeCount.increment();
+            recomputeNanos.add(nanos);
+            recomputeAffected.add(affected);
+        } else {
+            incrementalCount.increment();
+            incrementalNanos.add(nanos);
+            incrementalAffected.add(affected);
+        }
+        this.vertices.add(vertices);
+    }
+
+    public long getIncrementalCount() {
+        return incrementalCount.sum();
+    }
+
+    public long getIncrementalNanos() {
+        return incrementalNanos.sum();
+    }
+
+    /**
+     * @return 增量更新时估算的受影响顶点数量之和
+     */
+    public long getIncrementalAffected() {
+        return incrementalAffected.sum();
+    }
+
+    public long getRecomputeCount() {
+        return recomputeCount.sum();
+    }
+
+    public long getRecomputeNanos() {
+        return recomputeNanos.sum();
+    }
+
+    /**
+     * @return 重新计算时估算的受影响顶点数量之和
+     */
+    public long getRecomputeAffected() {
+        return recomputeAffected.sum();
+    }
+
+    /**
+     * @return 估算的受影响顶点占图中顶点的平均比例
+     */
+    public double getAverageAffectedRatio() {
+        long total = vertices.sum();
+        return total == 0 ? 0 : (double) (incrementalAffected.sum() + recomputeAffected.sum()) / total;
+    }
+
+    @Override
+    public String toString() {
+        return "UpdateMetrics{" +
+                "incremental=" + getIncrementalCount() + "/" + getIncrementalNanos() + "ns" +
+                ", recompute=" + getRecomputeCount() + "/" + getRecomputeNanos() + "ns" +
+                ", affectedRatio=" + getAverageAffectedRatio() +
+                '}';
+    }
+}
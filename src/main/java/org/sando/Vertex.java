@@ -1,6 +1,7 @@
 package org.sando;
 
 import java.util.*;
+import java.util.function.BiConsumer;
 
 /**
  * 顶点
@@ -13,15 +14,20 @@ public class Vertex<K> {
     /**
      * 入边
      */
-    Map<K, IEdge<K>> inEdges = Collections.emptyMap();
+    Map<Vertex<K>, IEdge<K>> inEdges = Collections.emptyMap();
     /**
      * 出边
      */
-    Map<K, IEdge<K>> outEdges = Collections.emptyMap();
+    Map<Vertex<K>, IEdge<K>> outEdges = Collections.emptyMap();
     private final K k;
+    /**
+     * 顶点在图中的编号，由{@link Graph}分配，从0开始连续递增且不会改变
+     */
+    private final int id;
 
-    public Vertex(K value) {
+    public Vertex(K value, int id) {
         this.k = value;
+        this.id = id;
     }
 
     /**
@@ -34,7 +40,7 @@ public class Vertex<K> {
         if (outEdges.isEmpty()) {
             outEdges = new HashMap<>();
         }
-        outEdges.put(end.getK(), edge);
+        outEdges.put(end, edge);
     }
 
     /**
@@ -47,13 +53,73 @@ public class Vertex<K> {
         if (inEdges.isEmpty()) {
             inEdges = new HashMap<>();
         }
-        inEdges.put(start.getK(), edge);
+        inEdges.put(start, edge);
+    }
+
+    /**
+     * 移除到终点的边
+     *
+     * @param end 终点
+     * @return 被移除的边，不存在则返回null
+     */
+    public IEdge<K> removeOutEdge(Vertex<K> end) {
+        return outEdges.remove(end);
+    }
+
+    /**
+     * 移除来自起点的边
+     *
+     * @param start 起点
+     * @return 被移除的边，不存在则返回null
+     */
+    public IEdge<K> removeInEdge(Vertex<K> start) {
+        return inEdges.remove(start);
+    }
+
+    /**
+     * 获取当前顶点到end的边
+     *
+     * @param end 终点
+     * @return 对应的边，不存在则返回null
+     */
+    public IEdge<K> getOutEdge(Vertex<K> end) {
+        return outEdges.get(end);
+    }
+
+    /**
+     * 遍历所有出边
+     *
+     * @param consumer 消费(终点, 边)
+     */
+    public void walkOutEdge(BiConsumer<? super Vertex<K>, ? super IEdge<K>> consumer) {
+        outEdges.forEach(consumer);
+    }
+
+    /**
+     * 遍历所有入边
+     *
+     * @param consumer 消费(起点, 边)
+     */
+    public void walkInEdge(BiConsumer<? super Vertex<K>, ? super IEdge<K>> consumer) {
+        inEdges.forEach(consumer);
+    }
+
+    public int outDegree() {
+        return outEdges.size();
+    }
+
+    public int inDegree() {
+        return inEdges.size();
     }
 
     public K getK() {
         return k;
     }
 
+    public int getId() {
+        return id;
+    }
+
     @Override
     public String toString() {
         return "" + k;
@@ -0,0 +1,48 @@
+package org.sando;
+
+/**
+ * 边的权重变化，用于{@link Graph#updateWeights(java.util.Collection)}批量更新
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/10
+ */
+public final class WeightChange<K> {
+    private final K start;
+    private final K end;
+    private final long weight;
+
+    public WeightChange(K start, K end, long weight) {
+        this.start = start;
+        this.end = end;
+        this.weight = weight;
+    }
+
+    public static <K> WeightChange<K> of(K start, K end, long weight) {
+        return new WeightChange<>(start, end, weight);
+    }
+
+    public K getStart() {
+        return start;
+    }
+
+    public K getEnd() {
+        return end;
+    }
+
+    /**
+     * @return 新的权重
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return "WeightChange{" +
+                "start=" + start +
+                ", end=" + end +
+                ", weight=" + weight +
+                '}';
+    }
+}
@@ -0,0 +1,423 @@
+package org.sando;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 边权重变化的异步写入管道
+ * <p>多个线程提交权重变化到有界的环形缓冲区，由单独的应用线程批量写入图，
+ * 每一批只通知一次最短路径树(见{@link Graph#updateWeights(Collection)})，提交线程不需要等待树的更新。
+ * 缓冲区满时的行为由{@link Backpressure}决定；{@link #flush()}等待之前提交的变化全部生效。
+ * 设置合并窗口后(见{@link #setCoalesceWindow(long, TimeUnit, int)})，同一条边在窗口内的多次变化只产生一次净变化</p>
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/14
+ */
+public class WeightUpdatePipeline<K> implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WeightUpdatePipeline.class);
+    private final Graph<K> graph;
+    private final Backpressure backpressure;
+    /**
+     * 环形缓冲区，长度为2的幂
+     */
+    private final WeightChange<K>[] buffer;
+    private final int mask;
+    /**
+     * 下一个出队的位置，单调递增
+     */
+    private long head;
+    /**
+     * 下一个入队的位置，单调递增
+     */
+    private long tail;
+    /**
+     * 合并模式下，尚未出队的边(起点, 终点) -> 所在的位置
+     */
+    private final Map<Pair<K, K>, Long> pendingSlots;
+    /**
+     * 已提交的变化数量，包括被合并与被丢弃的
+     */
+    private long submitted;
+    /**
+     * 最近一次出队时的{@link #submitted}
+     */
+    private long drained;
+    /**
+     * 已经生效(或者被合并、丢弃)的变化数量
+     */
+    private long applied;
+    private long dropped;
+    /**
+     * 被同一条边的后续变化覆盖的变化数量
+     */
+    private long coalesced;
+    private long rejected;
+    private RuntimeException failure;
+    private boolean closed;
+    /**
+     * 合并窗口的时长，为0时有变化就立即写入
+     */
+    private long windowNanos;
+    /**
+     * 合并窗口内最多等待的提交次数
+     */
+    private int windowCount = Integer.MAX_VALUE;
+    /**
+     * 正在等待的flush数量，此时不再等待合并窗口
+     */
+    private int flushWaiters;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition appliedChanged = lock.newCondition();
+    private final Thread applier;
+
+    /**
+     * 缓冲区满时的处理方式
+     */
+    public enum Backpressure {
+        /**
+         * 提交线程等待缓冲区有空位
+         */
+        BLOCK,
+        /**
+         * 丢弃最早的变化
+         */
+        DROP_OLDEST,
+        /**
+         * 同一条边尚未生效的变化只保留最后一次；缓冲区满并且无法合并时等待
+         */
+        COALESCE
+    }
+
+    /**
+     * @param capacity     缓冲区的容量，会向上取整为2的幂
+     * @param backpressure 缓冲区满时的处理方式
+     */
+    public WeightUpdatePipeline(Graph<K> graph, int capacity, Backpressure backpressure) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity必须大于0：" + capacity);
+        }
+        this.graph = Objects.requireNonNull(graph);
+        this.backpressure = Objects.requireNonNull(backpressure);
+        this.buffer = newBuffer(capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1);
+        this.mask = buffer.length - 1;
+        this.pendingSlots = backpressure == Backpressure.COALESCE ? new HashMap<>() : null;
+        this.applier = new Thread(this::applyLoop, "weight-update-applier");
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> WeightChange<K>[] newBuffer(int length) {
+        return (WeightChange<K>[]) new WeightChange<?>[length];
+    }
+
+    /**
+     * 提交边的权重变化，边在生效时不存在则忽略
+     *
+     * @throws IllegalStateException 管道已经关闭
+     */
+    public void submit(K start, K end, long weight) {
+        WeightChange<K> change = WeightChange.of(start, end, weight);
+        lock.lock();
+        try {
+            checkOpen();
+            if (pendingSlots != null) {
+                Long slot = pendingSlots.get(ImmutablePair.of(start, end));
+                if (slot != null) {
+                    buffer[(int) (slot & mask)] = change;
+                    // 被合并的变化随着合并后的变化一起生效
+                    submitted++;
+                    coalesced++;
+                    if (submitted - drained >= windowCount) {
+                        notEmpty.signal();
+                    }
+                    return;
+                }
+            }
+            while (tail - head == buffer.length) {
+                if (backpressure == Backpressure.DROP_OLDEST) {
+                    buffer[(int) (head & mask)] = null;
+                    head++;
+                    dropped++;
+                    break;
+                }
+                notFull.awaitUninterruptibly();
+                checkOpen();
+            }
+            if (pendingSlots != null) {
+                pendingSlots.put(ImmutablePair.of(start, end), tail);
+            }
+            buffer[(int) (tail & mask)] = change;
+            tail++;
+            submitted++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待调用之前提交的变化全部生效，此后的查询可以看到这些变化
+     *
+     * @throws IllegalStateException 应用线程写入失败时抛出，失败只会抛出一次
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            long target = submitted;
+            flushWaiters++;
+            notEmpty.signal();
+            try {
+                while (applied < target && failure == null) {
+                    appliedChanged.awaitUninterruptibly();
+                }
+            } finally {
+                flushWaiters--;
+            }
+            throwFailure();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待调用之前提交的变化全部生效
+     *
+     * @return 是否在超时之前全部生效
+     * @throws IllegalStateException 应用线程写入失败时抛出，失败只会抛出一次
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            long target = submitted;
+            flushWaiters++;
+            notEmpty.signal();
+            try {
+                while (applied < target && failure == null) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    nanos = appliedChanged.awaitNanos(nanos);
+                }
+            } finally {
+                flushWaiters--;
+            }
+            throwFailure();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 应用线程写入失败时抛出并清除失败，需要持有锁
+     */
+    private void throwFailure() {
+        if (failure != null) {
+            RuntimeException e = failure;
+            failure = null;
+            throw new IllegalStateException("权重变化写入失败", e);
+        }
+    }
+
+    /**
+     * 设置合并窗口：有变化之后继续等待window时长或者maxChanges次提交再写入，
+     * 窗口内同一条边的多次变化合并为一次，变化前后权重相同的边不会通知最短路径树
+     * <p>{@link Backpressure#COALESCE}时同一条边在缓冲区中只占一个位置，窗口可以覆盖更多的变化；
+     * 其他方式在缓冲区满时提前结束窗口。{@link #flush()}会立即结束当前窗口</p>
+     *
+     * @param window     窗口时长，为0时不等待
+     * @param maxChanges 窗口内最多等待的提交次数
+     */
+    public void setCoalesceWindow(long window, TimeUnit unit, int maxChanges) {
+        if (window < 0 || maxChanges <= 0) {
+            throw new IllegalArgumentException("无效的合并窗口：" + window + " " + maxChanges);
+        }
+        lock.lock();
+        try {
+            windowNanos = unit.toNanos(window);
+            windowCount = maxChanges;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 被同一条边的后续变化覆盖的变化数量
+     */
+    public long getCoalesced() {
+        lock.lock();
+        try {
+            return coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 因为缓冲区满而被丢弃的变化数量
+     */
+    public long getDropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 生效时边已经不存在而被忽略的变化数量
+     */
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 不再接受新的变化，等待已提交的变化全部生效后停止应用线程
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            applier.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("权重变化管道已经关闭");
+        }
+    }
+
+    private void applyLoop() {
+        List<WeightChange<K>> batch = new ArrayList<>(buffer.length);
+        while (true) {
+            long batchEnd;
+            lock.lock();
+            try {
+                while (head == tail && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (head == tail) {
+                    return;
+                }
+                awaitWindow();
+                while (head < tail) {
+                    int index = (int) (head & mask);
+                    batch.add(buffer[index]);
+                    buffer[index] = null;
+                    head++;
+                }
+                if (pendingSlots != null) {
+                    pendingSlots.clear();
+                }
+                // 此前提交的变化要么在这一批中，要么已经被合并或丢弃
+                drained = submitted;
+                batchEnd = drained;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            RuntimeException error = null;
+            int missing = 0;
+            try {
+                missing = apply(batch);
+            } catch (RuntimeException e) {
+                LOGGER.error("权重变化写入失败", e);
+                error = e;
+            }
+            batch.clear();
+            lock.lock();
+            try {
+                applied = batchEnd;
+                rejected += missing;
+                if (error != null && failure == null) {
+                    failure = error;
+                }
+                appliedChanged.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 等待合并窗口结束：超时、提交次数达到上限、缓冲区满、有线程在flush或者管道关闭
+     * <p>提交次数从上一次出队之后开始计算，包括被合并的提交。应用线程被中断视为关闭，
+     * 不再接受新的变化，已提交的变化全部写入后退出</p>
+     */
+    private void awaitWindow() {
+        long nanos = windowNanos;
+        while (nanos > 0 && submitted - drained < windowCount && tail - head < buffer.length
+                && flushWaiters == 0 && !closed) {
+            try {
+                nanos = notEmpty.awaitNanos(nanos);
+            } catch (InterruptedException e) {
+                closed = true;
+                notFull.signalAll();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 批量写入图，存在已经不在图中的边时去掉这些边，其余的变化仍然作为一批写入
+     *
+     * @return 被忽略的变化数量
+     */
+    private int apply(List<WeightChange<K>> batch) {
+        if (graph.updateWeights(batch)) {
+            return 0;
+        }
+        List<WeightChange<K>> present = new ArrayList<>(batch.size());
+        graph.getLock().readLock().lock();
+        try {
+            for (WeightChange<K> change : batch) {
+                if (graph.getEdge(change.getStart(), change.getEnd()) != null) {
+                    present.add(change);
+                }
+            }
+        } finally {
+            graph.getLock().readLock().unlock();
+        }
+        int missing = batch.size() - present.size();
+        if (present.isEmpty() || graph.updateWeights(present)) {
+            return missing;
+        }
+        // 过滤之后又有边被移除，逐条写入
+        for (WeightChange<K> change : present) {
+            if (!graph.updateWeight(change.getStart(), change.getEnd(), change.getWeight())) {
+                missing++;
+            }
+        }
+        return missing;
+    }
+}
@@ -0,0 +1,77 @@
+package org.sando.heap;
+
+import java.util.NoSuchElementException;
+
+/**
+ * 以long为优先级、以非负int编号为元素的可索引堆，同一个编号在堆中最多出现一次
+ * <p>与{@link IHeap}不同，元素是编号而不是对象，修改优先级时通过编号定位</p>
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/19
+ */
+public interface IIndexedLongHeap {
+    int size();
+
+    boolean isEmpty();
+
+    boolean contains(int id);
+
+    /**
+     * @return 编号的优先级
+     * @throws NoSuchElementException 编号不在堆中
+     */
+    long getPriority(int id);
+
+    /**
+     * 插入编号
+     *
+     * @throws IllegalArgumentException 编号为负数或者已经在堆中
+     */
+    void offer(int id, long priority);
+
+    /**
+     * 编号不在堆中时插入，否则在优先级更小时decrease key，即Dijkstra的松弛
+     *
+     * @return 是否插入或者修改了优先级
+     */
+    boolean offerOrDecrease(int id, long priority);
+
+    /**
+     * 修改堆中编号的优先级
+     *
+     * @throws NoSuchElementException 编号不在堆中
+     */
+    void changePriority(int id, long priority);
+
+    /**
+     * @return 优先级最小的编号
+     * @throws NoSuchElementException 堆为空
+     */
+    int peek();
+
+    /**
+     * @return 最小的优先级
+     * @throws NoSuchElementException 堆为空
+     */
+    long peekPriority();
+
+    /**
+     * 取出优先级最小的编号
+     *
+     * @throws NoSuchElementException 堆为空
+     */
+    int poll();
+
+    /**
+     * 移除编号
+     *
+     * @return 编号是否在堆中
+     */
+    boolean remove(int id);
+
+    /**
+     * 清空堆
+     */
+    void clear();
+}
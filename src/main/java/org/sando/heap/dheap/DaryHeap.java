@@ -0,0 +1,267 @@
+package org.sando.heap.dheap;
+
+import org.sando.heap.IIndexedLongHeap;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * 以long为优先级、以非负int编号为元素的d叉堆
+ * <p>编号与优先级存放在两个平行的数组中，比较时不需要访问对象；另有编号 -> 堆中位置的索引，
+ * 支持O(log n)的decrease/increase key与删除。同一个编号在堆中最多出现一次，
+ * 索引数组按出现过的最大编号扩容</p>
+ * <p>d越大树越矮，decrease key(Dijkstra中最频繁的操作)越快，poll时每层需要比较d个孩子；
+ * 默认为4，一次poll比较的孩子大致落在同一个缓存行中</p>
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/18
+ */
+public class DaryHeap implements IIndexedLongHeap {
+    public static final int DEFAULT_ARITY = 4;
+    /**
+     * 编号不在堆中时的位置
+     */
+    public static final int NOT_IN_HEAP = -1;
+    private final int arity;
+    /**
+     * 堆中位置 -> 编号
+     */
+    private int[] ids;
+    /**
+     * 堆中位置 -> 优先级
+     */
+    private long[] priorities;
+    /**
+     * 编号 -> 堆中位置，不在堆中时为{@link #NOT_IN_HEAP}
+     */
+    private int[] positions;
+    private int size;
+
+    public DaryHeap() {
+        this(DEFAULT_ARITY, 16);
+    }
+
+    /**
+     * @param arity    每个节点的孩子数量，不小于2
+     * @param capacity 初始容量，同时是编号的初始上界
+     */
+    public DaryHeap(int arity, int capacity) {
+        if (arity < 2) {
+            throw new IllegalArgumentException("arity必须不小于2：" + arity);
+        }
+        if (capacity < 1) {
+            capacity = 1;
+        }
+        this.arity = arity;
+        this.ids = new int[capacity];
+        this.priorities = new long[capacity];
+        this.positions = new int[capacity];
+        Arrays.fill(positions, NOT_IN_HEAP);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return id >= 0 && id < positions.length && positions[id] != NOT_IN_HEAP;
+    }
+
+    @Override
+    public long getPriority(int id) {
+        return priorities[positionOf(id)];
+    }
+
+    @Override
+    public void offer(int id, long priority) {
+        if (id < 0) {
+            throw new IllegalArgumentException("编号不能为负数：" + id);
+        }
+        if (id >= positions.length) {
+            growPositions(id + 1);
+        } else if (positions[id] != NOT_IN_HEAP) {
+            throw new IllegalArgumentException("编号已经在堆中：" + id);
+        }
+        if (size == ids.length) {
+            int capacity = size + (size >> 1) + 1;
+            ids = Arrays.copyOf(ids, capacity);
+            priorities = Arrays.copyOf(priorities, capacity);
+        }
+        siftUp(size++, id, priority);
+    }
+
+    @Override
+    public boolean offerOrDecrease(int id, long priority) {
+        if (!contains(id)) {
+            offer(id, priority);
+            return true;
+        }
+        int index = positions[id];
+        if (priority >= priorities[index]) {
+            return false;
+        }
+        siftUp(index, id, priority);
+        return true;
+    }
+
+    /**
+     * 修改堆中编号的优先级，变大或变小都可以
+     */
+    @Override
+    public void changePriority(int id, long priority) {
+        int index = positionOf(id);
+        if (priority < priorities[index]) {
+            siftUp(index, id, priority);
+        } else {
+            siftDown(index, id, priority);
+        }
+    }
+
+    @Override
+    public int peek() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return ids[0];
+    }
+
+    @Override
+    public long peekPriority() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return priorities[0];
+    }
+
+    @Override
+    public int poll() {
+        int result = peek();
+        removeAt(0);
+        return result;
+    }
+
+    @Override
+    public boolean remove(int id) {
+        if (!contains(id)) {
+            return false;
+        }
+        removeAt(positions[id]);
+        return true;
+    }
+
+    /**
+     * 清空堆，只重置堆中编号的索引，耗时与堆的大小成正比
+     */
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[ids[i]] = NOT_IN_HEAP;
+        }
+        size = 0;
+    }
+
+    private int positionOf(int id) {
+        if (!contains(id)) {
+            throw new NoSuchElementException("编号不在堆中：" + id);
+        }
+        return positions[id];
+    }
+
+    private void growPositions(int minCapacity) {
+        int oldCapacity = positions.length;
+        int capacity = Math.max(minCapacity, oldCapacity + (oldCapacity >> 1));
+        positions = Arrays.copyOf(positions, capacity);
+        Arrays.fill(positions, oldCapacity, capacity, NOT_IN_HEAP);
+    }
+
+    private void removeAt(int index) {
+        positions[ids[index]] = NOT_IN_HEAP;
+        int last = --size;
+        if (index == last) {
+            return;
+        }
+        int id = ids[last];
+        long priority = priorities[last];
+        if (index > 0 && priority < priorities[(index - 1) / arity]) {
+            siftUp(index, id, priority);
+        } else {
+            siftDown(index, id, priority);
+        }
+    }
+
+    /**
+     * 把编号放到index处，并向上调整
+     */
+    private void siftUp(int index, int id, long priority) {
+        while (index > 0) {
+            int parent = (index - 1) / arity;
+            long parentPriority = priorities[parent];
+            if (priority >= parentPriority) {
+                break;
+            }
+            move(parent, index);
+            index = parent;
+        }
+        set(index, id, priority);
+    }
+
+    /**
+     * 把编号放到index处，并向下调整
+     */
+    private void siftDown(int index, int id, long priority) {
+        while (true) {
+            int first = index * arity + 1;
+            if (first >= size) {
+                break;
+            }
+            int end = Math.min(first + arity, size);
+            int child = first;
+            long childPriority = priorities[first];
+            for (int i = first + 1; i < end; i++) {
+                if (priorities[i] < childPriority) {
+                    child = i;
+                    childPriority = priorities[i];
+                }
+            }
+            if (priority <= childPriority) {
+                break;
+            }
+            move(child, index);
+            index = child;
+        }
+        set(index, id, priority);
+    }
+
+    private void move(int from, int to) {
+        int id = ids[from];
+        ids[to] = id;
+        priorities[to] = priorities[from];
+        positions[id] = to;
+    }
+
+    private void set(int index, int id, long priority) {
+        ids[index] = id;
+        priorities[index] = priority;
+        positions[id] = index;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(ids[i]).append('=').append(priorities[i]);
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -25,21 +25,34 @@ class AwareFiboHeap<Key extends IFiboHeapAware<Key>> extends AbstractQueue<Key>
 
     public IHandle<Key> insert(Key key) {
         Entry<Key> entry = heap.insert(key);
-        key.aware(heap, entry);
+        // key感知的是当前堆而不是内部的heap，通过key删除时才会清空key的句柄
+        key.aware(this, entry);
         return entry;
     }
 
     public void union(NormalFiboHeap<Key> other) {
-        other.forEach(key -> key.union(heap));
+        other.forEach(key -> key.union(this));
         heap.union(other);
     }
 
     public Key extractMin() {
         Key key = heap.extractMin();
-        key.aware(null, null);
+        if (key != null) {
+            key.aware(null, null);
+        }
         return key;
     }
 
+    @Override
+    public void increaseKey(IHandle<Key> handle) {
+        heap.increaseKey((Entry<Key>) handle);
+    }
+
+    @Override
+    public void decreaseKey(IHandle<Key> handle) {
+        heap.decreaseKey((Entry<Key>) handle);
+    }
+
     public Key minKey() {
         return heap.minKey();
     }
@@ -80,8 +93,15 @@ class AwareFiboHeap<Key extends IFiboHeapAware<Key>> extends AbstractQueue<Key>
         return heap.size();
     }
 
+    /**
+     * 清空堆，堆中的key同样感知到出堆，清空后的堆可以继续使用
+     */
     @Override
     public void clear() {
+        if (heap.isEmpty()) {
+            return;
+        }
+        heap.forEach(key -> key.aware(null, null));
         heap.clear();
     }
 
@@ -55,6 +55,16 @@ public class FiboHeap<Key> extends AbstractQueue<Key> implements IFiboHeap<Key>
         return queue.size();
     }
 
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        queue.clear();
+    }
+
     @Override
     public boolean offer(Key key) {
         return queue.offer(key);
@@ -95,6 +105,16 @@ public class FiboHeap<Key> extends AbstractQueue<Key> implements IFiboHeap<Key>
         heap.delete(entry);
     }
 
+    @Override
+    public void decreaseKey(IHandle<Key> handle) {
+        heap.decreaseKey(handle);
+    }
+
+    @Override
+    public void increaseKey(IHandle<Key> handle) {
+        heap.increaseKey(handle);
+    }
+
     @Override
     public void print() {
         heap.print();
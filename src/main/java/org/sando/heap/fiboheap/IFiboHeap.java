@@ -19,5 +19,19 @@ public interface IFiboHeap<Key> extends IHeap<Key> {
      */
     void delete(IHandle<Key> handle);
 
+    /**
+     * 节点的key已经变小，调整节点的位置，为了效率，不检查节点是否属于当前堆
+     *
+     * @param handle key变小的节点
+     */
+    void decreaseKey(IHandle<Key> handle);
+
+    /**
+     * 节点的key已经变大，调整节点的位置，为了效率，不检查节点是否属于当前堆
+     *
+     * @param handle key变大的节点
+     */
+    void increaseKey(IHandle<Key> handle);
+
     void print();
 }
@@ -3,7 +3,6 @@ package org.sando.heap.fiboheap;
 /**
  * 斐波那契堆Key出/入堆感知接口
  */
-@SuppressWarnings("unchecked")
 public interface IFiboHeapAware<Key extends IFiboHeapAware<Key>> {
     /**
      * 当Key出/入堆时调用,用于知道自己入堆和出堆
@@ -45,8 +44,7 @@ public interface IFiboHeapAware<Key extends IFiboHeapAware<Key>> {
         if (getHeap() == null) {
             return;
         }
-        NormalFiboHeap<Key> heap = (NormalFiboHeap<Key>)getHeap();
-        heap.increaseKey((Entry<Key>) getHandle());
+        getHeap().increaseKey(getHandle());
     }
 
     /**
@@ -56,7 +54,6 @@ public interface IFiboHeapAware<Key extends IFiboHeapAware<Key>> {
         if (getHeap() == null) {
             return;
         }
-        NormalFiboHeap<Key> heap = (NormalFiboHeap<Key>)getHeap();
-        heap.decreaseKey((Entry<Key>)getHandle());
+        getHeap().decreaseKey(getHandle());
     }
 }
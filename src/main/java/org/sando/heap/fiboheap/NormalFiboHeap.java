@@ -153,13 +153,15 @@ class NormalFiboHeap<Key> extends AbstractQueue<Key> implements IFiboHeap<Key> {
         Entry<Key> oldMin = minimum;
         Key key = oldMin.key;
         oldMin.key = null;
+        // oldMin的孩子可能小于secondMin(oldMin通过decreaseKey成为最小节点时)，此时secondMin不可用
+        boolean hasChild = oldMin.child != null;
         allChild2RootList(oldMin);
 
         // 若oldMin是堆中唯一节点，则设置堆的最小节点为null；
         if (oldMin.right == oldMin) {
             minimum = null;
         } else {
-            if (secondMin != null) {
+            if (secondMin != null && !hasChild) {
                 minimum = secondMin;
                 secondMin = null;
                 removeEntry(oldMin);
@@ -201,6 +203,8 @@ class NormalFiboHeap<Key> extends AbstractQueue<Key> implements IFiboHeap<Key> {
      * 堆的节点总数对应斐波那契数，让节点的度对应斐波那契数列上的位置下标
      */
     private void consolidate() {
+        // 合并后secondMin可能成为其他节点的孩子，不再可用
+        secondMin = null;
         Entry[] cons = CONS.get();
         // cur当前节点，当cur等于iter时，循环终止
         Entry<Key> iter = minimum, cur = minimum;
@@ -433,12 +437,8 @@ class NormalFiboHeap<Key> extends AbstractQueue<Key> implements IFiboHeap<Key> {
      * 最小值可能已经发生变化,需要刷新minimum
      */
     private void refreshMinimum() {
-        if (secondMin != null) {
-            boolean success = tryReplaceMin(secondMin);
-            if (success) {
-                return;
-            }
-        }
+        // 原最小节点的孩子已经进入根链表，且可能小于secondMin，因此需要遍历整个根链表
+        secondMin = null;
         Entry<Key> right = minimum.right;
         while (right != minimum) {
             tryReplaceMin(right);
@@ -477,6 +477,16 @@ class NormalFiboHeap<Key> extends AbstractQueue<Key> implements IFiboHeap<Key> {
         mod_count++;
     }
 
+    @Override
+    public void decreaseKey(IHandle<Key> handle) {
+        decreaseKey((Entry<Key>) handle);
+    }
+
+    @Override
+    public void increaseKey(IHandle<Key> handle) {
+        increaseKey((Entry<Key>) handle);
+    }
+
     /**
      * entry1是否小于entry2, key为null，意味着处于最小值
      *
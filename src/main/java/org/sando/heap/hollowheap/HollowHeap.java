@@ -0,0 +1,398 @@
+package org.sando.heap.hollowheap;
+
+import org.sando.heap.fiboheap.IFiboHeap;
+import org.sando.heap.fiboheap.IFiboHeapAware;
+import org.sando.heap.fiboheap.IHandle;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 空心堆(hollow heap)，使用双父节点的单根版本
+ * <p>元素与节点分离：decrease key不移动子树，而是为元素新建一个节点挂到根上，
+ * 原节点变为空心节点并把新节点作为第二个父节点(ep)；删除非最小元素时只把节点变为空心。
+ * 取出最小元素时根变为空心，依次拆开空心节点，把其中的实心子节点按秩合并，最后合并成一棵树。
+ * 插入、decrease key为O(1)，删除均摊O(log n)，不需要斐波那契堆的级联剪切</p>
+ * <p>一个空心节点有两个父节点时，它是第二个父节点ep的最后一个孩子，
+ * 它的next属于第一个父节点的孩子链表，遍历ep的孩子时遇到它即停止</p>
+ * <p>key实现了{@link IFiboHeapAware}时，与斐波那契堆一样在出/入堆时通知key；
+ * 插入返回的句柄是元素而不是节点，decrease key之后句柄不变</p>
+ *
+ * @param <Key> 堆中元素的类型
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/20
+ */
+@SuppressWarnings(value = {"unchecked", "rawtypes"})
+public class HollowHeap<Key> extends AbstractQueue<Key> implements IFiboHeap<Key> {
+    private final Comparator comp;
+    /**
+     * key是否实现了{@link IFiboHeapAware}
+     */
+    private final boolean aware;
+    /**
+     * 根节点，堆不为空时总是实心节点
+     */
+    private Node<Key> root;
+    private int size;
+    /**
+     * 删除最小元素时，秩 -> 该秩的实心节点，复用以避免每次删除时分配
+     */
+    private Node<Key>[] ranks = new Node[32];
+
+    public static <Key, T extends Key> HollowHeap<T> create(Class<Key> keyClass) {
+        return new HollowHeap(keyClass, null);
+    }
+
+    public static <Key, T extends Key> HollowHeap<T> create(Class<Key> keyClass, Comparator<? super Key> comp) {
+        return new HollowHeap(keyClass, comp);
+    }
+
+    HollowHeap(Class<?> keyClass, Comparator<? super Key> comp) {
+        this.aware = IFiboHeapAware.class.isAssignableFrom(keyClass);
+        this.comp = comp == null ? Comparator.naturalOrder() : comp;
+    }
+
+    @Override
+    public IHandle<Key> insert(Key key) {
+        Item<Key> item = new Item<>(key);
+        root = meld(root, new Node<>(item));
+        size++;
+        if (aware) {
+            ((IFiboHeapAware) key).aware(this, item);
+        }
+        return item;
+    }
+
+    @Override
+    public Key extractMin() {
+        if (root == null) {
+            return null;
+        }
+        Item<Key> item = root.item;
+        remove(item);
+        size--;
+        return detach(item);
+    }
+
+    @Override
+    public Key minKey() {
+        return root == null ? null : root.item.key;
+    }
+
+    @Override
+    public void decreaseKey(IHandle<Key> handle) {
+        Item<Key> item = (Item<Key>) handle;
+        Node<Key> u = item.node;
+        if (u == root) {
+            return;
+        }
+        Node<Key> v = new Node<>(item);
+        u.item = null;
+        if (u.rank > 2) {
+            v.rank = u.rank - 2;
+        }
+        v.child = u;
+        u.ep = v;
+        root = link(v, root);
+    }
+
+    /**
+     * 删除元素后以新的节点重新插入，句柄不变
+     */
+    @Override
+    public void increaseKey(IHandle<Key> handle) {
+        Item<Key> item = (Item<Key>) handle;
+        remove(item);
+        root = meld(root, new Node<>(item));
+    }
+
+    @Override
+    public void delete(IHandle<Key> handle) {
+        Item<Key> item = (Item<Key>) handle;
+        remove(item);
+        size--;
+        detach(item);
+    }
+
+    /**
+     * 将other合并到当前堆中，other同为空心堆时只合并两个根，否则逐个取出后插入
+     */
+    @Override
+    public void union(IFiboHeap<Key> other) {
+        if (other == null || other == this) {
+            return;
+        }
+        if (!(other instanceof HollowHeap)) {
+            Key key;
+            while ((key = other.extractMin()) != null) {
+                insert(key);
+            }
+            return;
+        }
+        HollowHeap<Key> hollowHeap = (HollowHeap<Key>) other;
+        if (aware) {
+            hollowHeap.forEachItem(item -> ((IFiboHeapAware) item.key).union(this));
+        }
+        root = meld(root, hollowHeap.root);
+        size += hollowHeap.size;
+        hollowHeap.root = null;
+        hollowHeap.size = 0;
+    }
+
+    /**
+     * 清空堆，堆中的key同样感知到出堆，清空后的堆可以继续使用
+     */
+    @Override
+    public void clear() {
+        forEachItem(item -> {
+            item.node = null;
+            if (aware) {
+                ((IFiboHeapAware) item.key).aware(null, null);
+            }
+        });
+        root = null;
+        size = 0;
+    }
+
+    @Override
+    public boolean offer(Key key) {
+        insert(key);
+        return true;
+    }
+
+    @Override
+    public Key poll() {
+        return extractMin();
+    }
+
+    @Override
+    public Key peek() {
+        return minKey();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private Key detach(Item<Key> item) {
+        Key key = item.key;
+        if (aware) {
+            ((IFiboHeapAware) key).aware(null, null);
+        }
+        return key;
+    }
+
+    /**
+     * 把元素所在的节点变为空心，根变为空心时重建
+     */
+    private void remove(Item<Key> item) {
+        item.node.item = null;
+        item.node = null;
+        if (root.item == null) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 根为空心：拆开所有能到达的空心节点，实心节点按秩合并，最后合并成一棵树
+     */
+    private void rebuild() {
+        int maxRank = -1;
+        // 待拆开的空心节点链表
+        Node<Key> hollow = root;
+        hollow.next = null;
+        while (hollow != null) {
+            Node<Key> parent = hollow;
+            Node<Key> w = parent.child;
+            hollow = parent.next;
+            parent.child = null;
+            while (w != null) {
+                Node<Key> u = w;
+                w = w.next;
+                if (u.item == null) {
+                    if (u.ep == null) {
+                        u.next = hollow;
+                        hollow = u;
+                    } else {
+                        // 还有另一个父节点，只断开与当前父节点的关系
+                        if (u.ep == parent) {
+                            // u是ep的最后一个孩子，next属于另一个父节点的孩子链表
+                            w = null;
+                        } else {
+                            u.next = null;
+                        }
+                        u.ep = null;
+                    }
+                } else {
+                    while (u.rank < ranks.length && ranks[u.rank] != null) {
+                        Node<Key> other = ranks[u.rank];
+                        ranks[u.rank] = null;
+                        u = link(u, other);
+                        u.rank++;
+                    }
+                    if (u.rank >= ranks.length) {
+                        ranks = Arrays.copyOf(ranks, u.rank + 1 << 1);
+                    }
+                    ranks[u.rank] = u;
+                    maxRank = Math.max(maxRank, u.rank);
+                }
+            }
+        }
+        root = null;
+        for (int i = 0; i <= maxRank; i++) {
+            if (ranks[i] != null) {
+                root = meld(root, ranks[i]);
+                ranks[i] = null;
+            }
+        }
+        if (root != null) {
+            root.next = null;
+        }
+    }
+
+    private Node<Key> meld(Node<Key> a, Node<Key> b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return link(a, b);
+    }
+
+    /**
+     * 合并两个实心节点，较大的成为较小的第一个孩子
+     *
+     * @return 较小的节点
+     */
+    private Node<Key> link(Node<Key> a, Node<Key> b) {
+        if (comp.compare(b.item.key, a.item.key) < 0) {
+            Node<Key> temp = a;
+            a = b;
+            b = temp;
+        }
+        b.next = a.child;
+        a.child = b;
+        return a;
+    }
+
+    /**
+     * 遍历所有实心节点的元素，有两个父节点的节点只从ep到达
+     */
+    private void forEachItem(Consumer<Item<Key>> consumer) {
+        if (root == null) {
+            return;
+        }
+        Deque<Node<Key>> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node<Key> node = stack.pop();
+            pushChildren(stack, node);
+            if (node.item != null) {
+                consumer.accept(node.item);
+            }
+        }
+    }
+
+    private static <Key> void pushChildren(Deque<Node<Key>> stack, Node<Key> node) {
+        for (Node<Key> child = node.child; child != null; child = child.next) {
+            if (child.ep == null) {
+                stack.push(child);
+            } else if (child.ep == node) {
+                stack.push(child);
+                break;
+            }
+        }
+    }
+
+    @Override
+    public Iterator<Key> iterator() {
+        List<Key> keys = new ArrayList<>(size);
+        forEachItem(item -> keys.add(item.key));
+        return Collections.unmodifiableList(keys).iterator();
+    }
+
+    @Override
+    public void print() {
+        if (root == null) {
+            return;
+        }
+        Deque<Node<Key>> stack = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        stack.push(root);
+        depths.push(0);
+        while (!stack.isEmpty()) {
+            Node<Key> node = stack.pop();
+            int depth = depths.pop();
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < depth; i++) {
+                line.append('\t');
+            }
+            System.out.println(line.append("└-->").append(node));
+            int before = stack.size();
+            pushChildren(stack, node);
+            for (int i = stack.size(); i > before; i--) {
+                depths.push(depth + 1);
+            }
+        }
+    }
+
+    /**
+     * 元素，同时是插入返回的句柄
+     */
+    static final class Item<Key> implements IHandle<Key> {
+        Key key;
+        /**
+         * 元素当前所在的节点，不在堆中时为null
+         */
+        Node<Key> node;
+
+        Item(Key key) {
+            this.key = key;
+        }
+
+        @Override
+        public Key getKey() {
+            return key;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(key);
+        }
+    }
+
+    /**
+     * 堆节点，元素被移出或decrease key之后变为空心
+     */
+    static final class Node<Key> {
+        /**
+         * 节点中的元素，空心节点为null
+         */
+        Item<Key> item;
+        Node<Key> child;
+        Node<Key> next;
+        /**
+         * 第二个父节点，只有空心节点可能非null
+         */
+        Node<Key> ep;
+        int rank;
+
+        Node(Item<Key> item) {
+            this.item = item;
+            item.node = this;
+        }
+
+        @Override
+        public String toString() {
+            return item == null ? "[]" : "[" + item.key + "]";
+        }
+    }
+}
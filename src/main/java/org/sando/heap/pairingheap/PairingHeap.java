@@ -0,0 +1,366 @@
+package org.sando.heap.pairingheap;
+
+import org.sando.heap.fiboheap.IFiboHeap;
+import org.sando.heap.fiboheap.IFiboHeapAware;
+import org.sando.heap.fiboheap.IHandle;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 配对堆
+ * <p>堆是一棵多叉树，孩子之间为双向链表，第一个孩子的prev指向父节点。
+ * 插入与decrease key只把节点(子树)与根比较一次后挂到根上，O(1)；
+ * 取出最小节点时对根的孩子做两趟配对合并：从左到右两两合并，再从右到左依次合并，均摊O(log n)</p>
+ * <p>key实现了{@link IFiboHeapAware}时，与斐波那契堆一样在出/入堆时通知key，
+ * key可以通过{@link IFiboHeapAware#decreaseKey()}等方法调整自己的位置</p>
+ *
+ * @param <Key> 堆中元素的类型
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/20
+ */
+@SuppressWarnings(value = {"unchecked", "rawtypes"})
+public class PairingHeap<Key> extends AbstractQueue<Key> implements IFiboHeap<Key> {
+    private final Comparator comp;
+    /**
+     * key是否实现了{@link IFiboHeapAware}
+     */
+    private final boolean aware;
+    private Node<Key> root;
+    private int size;
+    /**
+     * 两趟合并时第一趟的结果，复用以避免每次取出时分配
+     */
+    private Node<Key>[] pairs = new Node[16];
+
+    public static <Key, T extends Key> PairingHeap<T> create(Class<Key> keyClass) {
+        return new PairingHeap(keyClass, null);
+    }
+
+    public static <Key, T extends Key> PairingHeap<T> create(Class<Key> keyClass, Comparator<? super Key> comp) {
+        return new PairingHeap(keyClass, comp);
+    }
+
+    PairingHeap(Class<?> keyClass, Comparator<? super Key> comp) {
+        this.aware = IFiboHeapAware.class.isAssignableFrom(keyClass);
+        this.comp = comp == null ? Comparator.naturalOrder() : comp;
+    }
+
+    @Override
+    public IHandle<Key> insert(Key key) {
+        Node<Key> node = new Node<>(key);
+        root = meld(root, node);
+        size++;
+        if (aware) {
+            ((IFiboHeapAware) key).aware(this, node);
+        }
+        return node;
+    }
+
+    @Override
+    public Key extractMin() {
+        if (root == null) {
+            return null;
+        }
+        Node<Key> min = root;
+        root = combine(min.child);
+        min.child = null;
+        size--;
+        return detach(min);
+    }
+
+    @Override
+    public Key minKey() {
+        return root == null ? null : root.key;
+    }
+
+    @Override
+    public void decreaseKey(IHandle<Key> handle) {
+        Node<Key> node = (Node<Key>) handle;
+        if (node == root) {
+            return;
+        }
+        cut(node);
+        root = link(root, node);
+    }
+
+    /**
+     * 节点的孩子可能比节点小，把孩子合并后与节点分别重新挂到根上
+     */
+    @Override
+    public void increaseKey(IHandle<Key> handle) {
+        Node<Key> node = (Node<Key>) handle;
+        Node<Key> children = node.child;
+        node.child = null;
+        if (node == root) {
+            root = null;
+        } else {
+            cut(node);
+        }
+        root = meld(meld(root, combine(children)), node);
+    }
+
+    @Override
+    public void delete(IHandle<Key> handle) {
+        Node<Key> node = (Node<Key>) handle;
+        if (node == root) {
+            extractMin();
+            return;
+        }
+        cut(node);
+        root = meld(root, combine(node.child));
+        node.child = null;
+        size--;
+        detach(node);
+    }
+
+    /**
+     * 将other合并到当前堆中，other同为配对堆时只合并两个根，否则逐个取出后插入
+     */
+    @Override
+    public void union(IFiboHeap<Key> other) {
+        if (other == null || other == this) {
+            return;
+        }
+        if (!(other instanceof PairingHeap)) {
+            Key key;
+            while ((key = other.extractMin()) != null) {
+                insert(key);
+            }
+            return;
+        }
+        PairingHeap<Key> pairingHeap = (PairingHeap<Key>) other;
+        if (aware) {
+            pairingHeap.forEachNode(node -> ((IFiboHeapAware) node.key).union(this));
+        }
+        root = meld(root, pairingHeap.root);
+        size += pairingHeap.size;
+        pairingHeap.root = null;
+        pairingHeap.size = 0;
+    }
+
+    /**
+     * 清空堆，堆中的key同样感知到出堆，清空后的堆可以继续使用
+     */
+    @Override
+    public void clear() {
+        if (aware) {
+            forEachNode(node -> ((IFiboHeapAware) node.key).aware(null, null));
+        }
+        root = null;
+        size = 0;
+    }
+
+    @Override
+    public boolean offer(Key key) {
+        insert(key);
+        return true;
+    }
+
+    @Override
+    public Key poll() {
+        return extractMin();
+    }
+
+    @Override
+    public Key peek() {
+        return minKey();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private Key detach(Node<Key> node) {
+        Key key = node.key;
+        if (aware) {
+            ((IFiboHeapAware) key).aware(null, null);
+        }
+        return key;
+    }
+
+    private Node<Key> meld(Node<Key> a, Node<Key> b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return link(a, b);
+    }
+
+    /**
+     * 合并两棵树，较大的根成为较小的根的第一个孩子
+     *
+     * @param a 树根，没有兄弟
+     * @param b 树根，没有兄弟
+     * @return 新的树根
+     */
+    private Node<Key> link(Node<Key> a, Node<Key> b) {
+        if (comp.compare(b.key, a.key) < 0) {
+            Node<Key> temp = a;
+            a = b;
+            b = temp;
+        }
+        Node<Key> child = a.child;
+        b.next = child;
+        if (child != null) {
+            child.prev = b;
+        }
+        b.prev = a;
+        a.child = b;
+        return a;
+    }
+
+    /**
+     * 把节点(及其子树)从父节点的孩子链表中移除
+     */
+    private void cut(Node<Key> node) {
+        Node<Key> prev = node.prev;
+        Node<Key> next = node.next;
+        if (prev.child == node) {
+            prev.child = next;
+        } else {
+            prev.next = next;
+        }
+        if (next != null) {
+            next.prev = prev;
+        }
+        node.prev = null;
+        node.next = null;
+    }
+
+    /**
+     * 两趟配对合并兄弟链表
+     *
+     * @param first 链表的第一个节点
+     * @return 合并后的树根
+     */
+    private Node<Key> combine(Node<Key> first) {
+        if (first == null) {
+            return null;
+        }
+        int count = 0;
+        Node<Key> a = first;
+        while (a != null) {
+            Node<Key> b = a.next;
+            Node<Key> following = b == null ? null : b.next;
+            a.prev = a.next = null;
+            if (b != null) {
+                b.prev = b.next = null;
+                a = link(a, b);
+            }
+            if (count == pairs.length) {
+                pairs = Arrays.copyOf(pairs, count << 1);
+            }
+            pairs[count++] = a;
+            a = following;
+        }
+        Node<Key> result = pairs[--count];
+        pairs[count] = null;
+        while (count > 0) {
+            result = link(pairs[--count], result);
+            pairs[count] = null;
+        }
+        return result;
+    }
+
+    private void forEachNode(Consumer<Node<Key>> consumer) {
+        if (root == null) {
+            return;
+        }
+        Deque<Node<Key>> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node<Key> node = stack.pop();
+            for (Node<Key> child = node.child; child != null; child = child.next) {
+                stack.push(child);
+            }
+            consumer.accept(node);
+        }
+    }
+
+    @Override
+    public Iterator<Key> iterator() {
+        Deque<Node<Key>> stack = new ArrayDeque<>();
+        if (root != null) {
+            stack.push(root);
+        }
+        return new Iterator<Key>() {
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public Key next() {
+                if (stack.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node<Key> node = stack.pop();
+                for (Node<Key> child = node.child; child != null; child = child.next) {
+                    stack.push(child);
+                }
+                return node.key;
+            }
+        };
+    }
+
+    @Override
+    public void print() {
+        if (root == null) {
+            return;
+        }
+        Deque<Node<Key>> stack = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        stack.push(root);
+        depths.push(0);
+        while (!stack.isEmpty()) {
+            Node<Key> node = stack.pop();
+            int depth = depths.pop();
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < depth; i++) {
+                line.append('\t');
+            }
+            System.out.println(line.append("└-->[").append(node.key).append(']'));
+            for (Node<Key> child = node.child; child != null; child = child.next) {
+                stack.push(child);
+                depths.push(depth + 1);
+            }
+        }
+    }
+
+    /**
+     * 堆节点，同时是插入返回的句柄
+     */
+    static final class Node<Key> implements IHandle<Key> {
+        Key key;
+        Node<Key> child;
+        Node<Key> next;
+        /**
+         * 前一个兄弟，第一个孩子时为父节点
+         */
+        Node<Key> prev;
+
+        Node(Key key) {
+            this.key = key;
+        }
+
+        @Override
+        public Key getKey() {
+            return key;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(key);
+        }
+    }
+}
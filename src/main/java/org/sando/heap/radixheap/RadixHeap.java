@@ -0,0 +1,316 @@
+package org.sando.heap.radixheap;
+
+import org.sando.heap.IIndexedLongHeap;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * 单调的基数堆(radix heap)，优先级为非负long，元素为非负int编号
+ * <p>单调：插入或修改的优先级不能小于最近一次取出的优先级{@link #last}，Dijkstra满足这个条件。
+ * 优先级按与last的最高不同位分到64个桶中，桶0中的优先级都等于last；
+ * 桶0为空时找到第一个非空的桶，把其中最小的优先级作为新的last，再把桶中的编号重新分到更低的桶中。
+ * 一个编号最多下降63次，poll均摊O(log C)，C为最大优先级；插入与decrease key为O(1)</p>
+ * <p>每个桶是编号的双向链表，链表指针存放在按编号索引的数组中，不需要为元素分配对象；
+ * 另有一个位图记录非空的桶</p>
+ *
+ * @author Sando
+ * @version 1.0
+ * @since 2024/6/19
+ */
+public class RadixHeap implements IIndexedLongHeap {
+    /**
+     * 编号不在堆中时所在的桶
+     */
+    public static final int NOT_IN_HEAP = -1;
+    private static final int NIL = -1;
+    private static final int BUCKETS = 64;
+    /**
+     * 桶 -> 链表的第一个编号
+     */
+    private final int[] heads = new int[BUCKETS];
+    /**
+     * 第i位表示桶i是否非空
+     */
+    private long nonEmpty;
+    /**
+     * 编号 -> 所在的桶，不在堆中时为{@link #NOT_IN_HEAP}
+     */
+    private int[] buckets;
+    private int[] next;
+    private int[] prev;
+    /**
+     * 编号 -> 优先级
+     */
+    private long[] priorities;
+    /**
+     * 最近一次取出的优先级，堆中所有的优先级都不小于它
+     */
+    private long last;
+    private int size;
+
+    public RadixHeap() {
+        this(16);
+    }
+
+    /**
+     * @param capacity 编号的初始上界
+     */
+    public RadixHeap(int capacity) {
+        if (capacity < 1) {
+            capacity = 1;
+        }
+        Arrays.fill(heads, NIL);
+        buckets = new int[capacity];
+        next = new int[capacity];
+        prev = new int[capacity];
+        priorities = new long[capacity];
+        Arrays.fill(buckets, NOT_IN_HEAP);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return id >= 0 && id < buckets.length && buckets[id] != NOT_IN_HEAP;
+    }
+
+    @Override
+    public long getPriority(int id) {
+        checkContains(id);
+        return priorities[id];
+    }
+
+    /**
+     * @return 最近一次取出的优先级，之后插入的优先级不能小于它
+     */
+    public long getLast() {
+        return last;
+    }
+
+    /**
+     * @throws IllegalArgumentException 编号为负数、已经在堆中，或者优先级小于{@link #getLast()}
+     */
+    @Override
+    public void offer(int id, long priority) {
+        if (id < 0) {
+            throw new IllegalArgumentException("编号不能为负数：" + id);
+        }
+        if (id >= buckets.length) {
+            grow(id + 1);
+        } else if (buckets[id] != NOT_IN_HEAP) {
+            throw new IllegalArgumentException("编号已经在堆中：" + id);
+        }
+        checkMonotone(priority);
+        priorities[id] = priority;
+        link(id, bucketOf(priority));
+        size++;
+    }
+
+    /**
+     * @throws IllegalArgumentException 优先级小于{@link #getLast()}
+     */
+    @Override
+    public boolean offerOrDecrease(int id, long priority) {
+        if (!contains(id)) {
+            offer(id, priority);
+            return true;
+        }
+        if (priority >= priorities[id]) {
+            return false;
+        }
+        checkMonotone(priority);
+        move(id, priority);
+        return true;
+    }
+
+    /**
+     * 修改堆中编号的优先级，变大或变小都可以，但不能小于{@link #getLast()}
+     *
+     * @throws IllegalArgumentException 优先级小于{@link #getLast()}
+     */
+    @Override
+    public void changePriority(int id, long priority) {
+        checkContains(id);
+        checkMonotone(priority);
+        move(id, priority);
+    }
+
+    @Override
+    public int peek() {
+        fillFirstBucket();
+        return heads[0];
+    }
+
+    @Override
+    public long peekPriority() {
+        fillFirstBucket();
+        return last;
+    }
+
+    @Override
+    public int poll() {
+        fillFirstBucket();
+        int id = heads[0];
+        unlink(id);
+        buckets[id] = NOT_IN_HEAP;
+        size--;
+        return id;
+    }
+
+    @Override
+    public boolean remove(int id) {
+        if (!contains(id)) {
+            return false;
+        }
+        unlink(id);
+        buckets[id] = NOT_IN_HEAP;
+        size--;
+        return true;
+    }
+
+    /**
+     * 清空堆，并把{@link #getLast()}重置为0，耗时与堆的大小成正比
+     */
+    @Override
+    public void clear() {
+        while (nonEmpty != 0) {
+            int bucket = Long.numberOfTrailingZeros(nonEmpty);
+            for (int id = heads[bucket]; id != NIL; id = next[id]) {
+                buckets[id] = NOT_IN_HEAP;
+            }
+            heads[bucket] = NIL;
+            nonEmpty &= nonEmpty - 1;
+        }
+        size = 0;
+        last = 0;
+    }
+
+    /**
+     * 与last的最高不同位，相等时为0
+     */
+    private int bucketOf(long priority) {
+        return BUCKETS - Long.numberOfLeadingZeros(priority ^ last);
+    }
+
+    /**
+     * 保证桶0非空：找到第一个非空的桶，以其中最小的优先级作为新的last，并重新分配桶中的编号
+     * <p>这个桶中的优先级与旧的last的最高不同位相同，与新的last的最高不同位只会更低，
+     * 因此都会进入更低的桶；更高的桶中的优先级与新旧last的最高不同位相同，不需要移动</p>
+     */
+    private void fillFirstBucket() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        if (heads[0] != NIL) {
+            return;
+        }
+        int bucket = Long.numberOfTrailingZeros(nonEmpty);
+        long min = Long.MAX_VALUE;
+        for (int id = heads[bucket]; id != NIL; id = next[id]) {
+            min = Math.min(min, priorities[id]);
+        }
+        last = min;
+        int id = heads[bucket];
+        heads[bucket] = NIL;
+        nonEmpty &= ~(1L << bucket);
+        while (id != NIL) {
+            int following = next[id];
+            link(id, bucketOf(priorities[id]));
+            id = following;
+        }
+    }
+
+    private void move(int id, long priority) {
+        priorities[id] = priority;
+        int bucket = bucketOf(priority);
+        if (bucket != buckets[id]) {
+            unlink(id);
+            link(id, bucket);
+        }
+    }
+
+    /**
+     * 把编号插入到桶的链表头
+     */
+    private void link(int id, int bucket) {
+        int head = heads[bucket];
+        next[id] = head;
+        prev[id] = NIL;
+        if (head != NIL) {
+            prev[head] = id;
+        }
+        heads[bucket] = id;
+        buckets[id] = bucket;
+        nonEmpty |= 1L << bucket;
+    }
+
+    /**
+     * 把编号从所在桶的链表中移除，不修改编号所在的桶
+     */
+    private void unlink(int id) {
+        int bucket = buckets[id];
+        int p = prev[id];
+        int n = next[id];
+        if (p != NIL) {
+            next[p] = n;
+        } else {
+            heads[bucket] = n;
+            if (n == NIL) {
+                nonEmpty &= ~(1L << bucket);
+            }
+        }
+        if (n != NIL) {
+            prev[n] = p;
+        }
+    }
+
+    private void checkContains(int id) {
+        if (!contains(id)) {
+            throw new NoSuchElementException("编号不在堆中：" + id);
+        }
+    }
+
+    private void checkMonotone(long priority) {
+        if (priority < last) {
+            throw new IllegalArgumentException("优先级不能小于最近一次取出的优先级：" + priority + " < " + last);
+        }
+    }
+
+    private void grow(int minCapacity) {
+        int oldCapacity = buckets.length;
+        int capacity = Math.max(minCapacity, oldCapacity + (oldCapacity >> 1));
+        buckets = Arrays.copyOf(buckets, capacity);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+        Arrays.fill(buckets, oldCapacity, capacity, NOT_IN_HEAP);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        long bits = nonEmpty;
+        boolean first = true;
+        while (bits != 0) {
+            int bucket = Long.numberOfTrailingZeros(bits);
+            for (int id = heads[bucket]; id != NIL; id = next[id]) {
+                if (!first) {
+                    builder.append(", ");
+                }
+                first = false;
+                builder.append(id).append('=').append(priorities[id]);
+            }
+            bits &= bits - 1;
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -7,14 +7,22 @@ import java.util.*;
 
 /**
  * 弱堆
+ * <p>数组存储，每个节点有一个反转位r：i的左孩子为2i+r[i]，右孩子为2i+1-r[i]，根只有右孩子1。
+ * 弱堆性质只要求节点不大于其右子树中的节点，因此节点j只需要与它的"区分祖先"(j是其右子树中的节点)比较，
+ * 上浮时每层比较一次，poll时沿右子树的最左路径比较log n次，比较次数少于二叉堆</p>
+ * <p>插入返回句柄，句柄记录节点在数组中的位置，支持decrease key与删除。
+ * 删除时把节点视为无穷小上浮到根，再按poll移除</p>
  *
  * @author Sando
  * @version 1.0
  * @since 2024/6/7
  */
-@SuppressWarnings("unchecked")
 public class WeakHeap<E> extends AbstractQueue<E> implements IHeap<E> {
-    transient Object[] queue;
+    /**
+     * 句柄不在堆中时的位置
+     */
+    public static final int NOT_IN_HEAP = -1;
+    transient Node<E>[] queue;
     /**
      * 堆当前大小
      */
@@ -22,10 +30,16 @@ public class WeakHeap<E> extends AbstractQueue<E> implements IHeap<E> {
     /**
      * Comparator.
      */
-    private Comparator comp = Comparator.naturalOrder();
+    private final Comparator<? super E> comp;
 
+    /**
+     * 反转位r
+     */
     private final BitSet bitSet = new BitSet();
 
+    /**
+     * j的区分祖先：向上直到某个节点是其父节点的右孩子，返回该父节点
+     */
     private int dAncestor(int j) {
         while (((j & 1) == 1) == bitSet.get(j >> 1)) {
             j >>= 1;
@@ -33,78 +47,279 @@ public class WeakHeap<E> extends AbstractQueue<E> implements IHeap<E> {
         return j >> 1;
     }
 
+    /**
+     * 合并以i为根的弱堆与以j为根的弱堆，i为j的区分祖先
+     *
+     * @return j不小于i时返回true，否则交换i与j并反转j的孩子，返回false
+     */
     private boolean join(int i, int j) {
         if (smaller(j, i)) {
-            // swap
-            Object temp = queue[i];
-            queue[i] = queue[j];
-            queue[j] = temp;
-            bitSet.flip(j);
+            swapAndFlip(i, j);
             return false;
         }
         return true;
     }
 
+    private void swapAndFlip(int i, int j) {
+        Node<E> temp = queue[i];
+        queue[i] = queue[j];
+        queue[j] = temp;
+        queue[i].index = i;
+        temp.index = j;
+        bitSet.flip(j);
+    }
+
     private boolean smaller(int i, int j) {
-        return comp.compare(queue[i], queue[j]) < 0;
+        return comp.compare(queue[i].key, queue[j].key) < 0;
     }
 
     public WeakHeap() {
+        this(naturalOrder());
+    }
+
+    public WeakHeap(Comparator<? super E> comp) {
+        this.comp = comp;
+        this.queue = newArray(16);
     }
 
     public WeakHeap(Collection<? extends E> c) {
+        this(naturalOrder());
         initElementsFromCollection(c);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> Comparator<? super E> naturalOrder() {
+        return (Comparator<? super E>) Comparator.naturalOrder();
+    }
 
+    @SuppressWarnings("unchecked")
+    private static <E> Node<E>[] newArray(int length) {
+        return (Node<E>[]) new Node<?>[length];
     }
 
+    /**
+     * 自底向上建堆，O(n)次比较
+     */
+    @SuppressWarnings("unchecked")
     private void initElementsFromCollection(Collection<? extends E> c) {
         Object[] a = c.toArray();
         int len = a.length;
-        if (len == 1 || comp != null)
-            for (Object o : a)
-                if (o == null)
-                    throw new NullPointerException();
-        this.queue = a;
-        this.size = a.length;
+        if (len > queue.length) {
+            queue = newArray(len);
+        }
+        for (int i = 0; i < len; i++) {
+            if (a[i] == null) {
+                throw new NullPointerException();
+            }
+            queue[i] = new Node<>((E) a[i], i);
+        }
+        this.size = len;
+        for (int j = len - 1; j > 0; j--) {
+            join(dAncestor(j), j);
+        }
     }
 
     @Override
     public Iterator<E> iterator() {
-        return null;
+        return new Iterator<E>() {
+            private int cursor;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < size;
+            }
+
+            @Override
+            public E next() {
+                if (cursor >= size) {
+                    throw new NoSuchElementException();
+                }
+                return queue[cursor++].key;
+            }
+        };
     }
 
     @Override
     public int size() {
-        return 0;
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
     }
 
     @Override
     public boolean offer(E e) {
-        return false;
+        insert(e);
+        return true;
     }
 
     @Override
     public E poll() {
-        return null;
+        return extractMin();
     }
 
     @Override
     public E peek() {
-        return null;
+        return minKey();
     }
 
     @Override
     public IHandle<E> insert(E e) {
-        return null;
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        int n = size;
+        if (n == queue.length) {
+            queue = Arrays.copyOf(queue, n + (n >> 1) + 1);
+        }
+        Node<E> node = new Node<>(e, n);
+        queue[n] = node;
+        bitSet.clear(n);
+        if ((n & 1) == 0) {
+            // n是n/2的第一个孩子，n/2原来是叶子，重置反转位使n成为左孩子
+            bitSet.clear(n >> 1);
+        }
+        size++;
+        siftUp(n);
+        return node;
     }
 
     @Override
     public E extractMin() {
-        return null;
+        if (size == 0) {
+            return null;
+        }
+        return removeRoot();
     }
 
     @Override
     public E minKey() {
-        return null;
+        return size == 0 ? null : queue[0].key;
+    }
+
+    /**
+     * 把句柄的key替换为更小的key
+     *
+     * @throws IllegalArgumentException 句柄不在堆中，或者新的key更大
+     */
+    public void decreaseKey(IHandle<E> handle, E key) {
+        Node<E> node = checkInHeap(handle);
+        if (comp.compare(key, node.key) > 0) {
+            throw new IllegalArgumentException("新的key更大：" + key + " > " + node.key);
+        }
+        node.key = key;
+        siftUp(node.index);
+    }
+
+    /**
+     * 移除句柄对应的节点
+     *
+     * @throws IllegalArgumentException 句柄不在堆中
+     */
+    public void delete(IHandle<E> handle) {
+        Node<E> node = checkInHeap(handle);
+        // 视为无穷小，上浮到根
+        for (int j = node.index; j != 0; ) {
+            int i = dAncestor(j);
+            swapAndFlip(i, j);
+            j = i;
+        }
+        removeRoot();
+    }
+
+    /**
+     * @return 句柄是否在当前堆中
+     */
+    public boolean contains(IHandle<E> handle) {
+        if (!(handle instanceof Node)) {
+            return false;
+        }
+        int index = ((Node<E>) handle).index;
+        return index != NOT_IN_HEAP && index < size && queue[index] == handle;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            queue[i].index = NOT_IN_HEAP;
+            queue[i] = null;
+        }
+        size = 0;
+        bitSet.clear();
+    }
+
+    private Node<E> checkInHeap(IHandle<E> handle) {
+        if (!contains(handle)) {
+            throw new IllegalArgumentException("句柄不在堆中：" + handle);
+        }
+        return (Node<E>) handle;
+    }
+
+    private E removeRoot() {
+        Node<E> root = queue[0];
+        root.index = NOT_IN_HEAP;
+        int n = --size;
+        if (n > 0) {
+            queue[0] = queue[n];
+            queue[0].index = 0;
+        }
+        queue[n] = null;
+        if (n > 1) {
+            siftDown(0);
+        }
+        return root.key;
+    }
+
+    private void siftUp(int j) {
+        while (j != 0) {
+            int i = dAncestor(j);
+            if (join(i, j)) {
+                break;
+            }
+            j = i;
+        }
+    }
+
+    /**
+     * 沿i右子树的最左路径下降到底，再自底向上与i合并
+     */
+    private void siftDown(int i) {
+        int j = 2 * i + 1 - (bitSet.get(i) ? 1 : 0);
+        int k;
+        while ((k = 2 * j + (bitSet.get(j) ? 1 : 0)) < size) {
+            j = k;
+        }
+        while (j != i) {
+            join(i, j);
+            j >>= 1;
+        }
+    }
+
+    /**
+     * 堆节点，同时是插入返回的句柄
+     */
+    static final class Node<E> implements IHandle<E> {
+        E key;
+        /**
+         * 在数组中的位置，不在堆中时为{@link #NOT_IN_HEAP}
+         */
+        int index;
+
+        Node(E key, int index) {
+            this.key = key;
+            this.index = index;
+        }
+
+        @Override
+        public E getKey() {
+            return key;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(key);
+        }
     }
 }
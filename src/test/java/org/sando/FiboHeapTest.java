@@ -2,13 +2,19 @@ package org.sando;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.sando.heap.dheap.DaryHeap;
 import org.sando.heap.fiboheap.FiboHeap;
 import org.sando.heap.fiboheap.IFiboHeap;
 import org.sando.heap.fiboheap.IHandle;
+import org.sando.heap.hollowheap.HollowHeap;
 import org.sando.heap.indexheap.Heap;
+import org.sando.heap.pairingheap.PairingHeap;
+import org.sando.heap.radixheap.RadixHeap;
+import org.sando.heap.weakheap.WeakHeap;
 
 import java.util.*;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * @author Sando
@@ -156,8 +162,396 @@ class FiboHeapTest {
         }
     }
 
+    /**
+     * 通过key感知到的堆删除后，key的句柄被清空，之后修改key不会再影响堆
+     */
+    @Test
+    void deleteThroughKey() {
+        FiboHeap<IntKey> fiboHeap = FiboHeap.create(IntKey.class);
+        List<IntKey> keys = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            IntKey key = new IntKey(i * 10);
+            fiboHeap.offer(key);
+            keys.add(key);
+        }
+        // 触发合并，使节点之间形成父子关系
+        Assertions.assertEquals(0, fiboHeap.poll().getKey());
+        IntKey deleted = keys.get(5);
+        deleted.getHeap().delete(deleted.getHandle());
+        Assertions.assertNull(deleted.getHeap());
+        Assertions.assertNull(deleted.getHandle());
+        deleted.delta(-100);
+        Assertions.assertEquals(8, fiboHeap.size());
+        for (int i = 1; i < 10; i++) {
+            if (i != 5) {
+                Assertions.assertEquals(i * 10, fiboHeap.poll().getKey());
+            }
+        }
+        Assertions.assertTrue(fiboHeap.isEmpty());
+    }
+
+    /**
+     * 插入、取出、增大、减小与删除交替进行，检查每次取出的都是最小值
+     * <p>取出与删除会触发合并，合并后secondMin可能已经成为其他节点的孩子，增大最小值时其孩子可能小于secondMin</p>
+     */
+    @Test
+    void mixedOperations() {
+        Random random = new Random(7);
+        for (int round = 0; round < 2000; round++) {
+            FiboHeap<IntKey> fiboHeap = FiboHeap.create(IntKey.class);
+            List<IntKey> keys = new ArrayList<>();
+            for (int op = 0; op < 200; op++) {
+                int type = random.nextInt(6);
+                if (type <= 1 || keys.isEmpty()) {
+                    IntKey key = new IntKey(random.nextInt(100));
+                    fiboHeap.offer(key);
+                    keys.add(key);
+                } else if (type == 2) {
+                    IntKey min = Collections.min(keys);
+                    Assertions.assertEquals(min.getKey(), fiboHeap.poll().getKey());
+                    keys.removeIf(key -> key.getHeap() == null);
+                } else {
+                    int index = random.nextInt(keys.size());
+                    IntKey key = keys.get(index);
+                    if (type == 3) {
+                        key.delta(-random.nextInt(50));
+                    } else if (type == 4) {
+                        key.delta(random.nextInt(50));
+                    } else {
+                        fiboHeap.delete(key.getHandle());
+                        // IntKey按值判断相等，按下标移除
+                        keys.remove(index);
+                    }
+                }
+                Assertions.assertEquals(keys.size(), fiboHeap.size());
+            }
+        }
+    }
+
     public static void main(String[] args) {
         new FiboHeapTest().delete();
     }
 
+    @Test
+    void daryHeap() {
+        for (int arity : new int[]{2, 3, 4, 8}) {
+            DaryHeap daryHeap = new DaryHeap(arity, 1);
+            int size = 10_0000;
+            // 优先级 -> 堆中该优先级的编号数量
+            TreeMap<Long, Integer> counts = new TreeMap<>();
+            long[] priorities = new long[size];
+            boolean[] contained = new boolean[size];
+            for (int i = 0; i < size * 3; i++) {
+                int id = rnd.nextInt(size);
+                long priority = rnd.nextInt(size) - (size >> 1) + ((long) rnd.nextInt(4) << 40);
+                int op = rnd.nextInt(10);
+                if (!contained[id]) {
+                    Assertions.assertFalse(daryHeap.contains(id));
+                    daryHeap.offer(id, priority);
+                } else if (op < 3) {
+                    daryHeap.changePriority(id, priority);
+                } else if (op < 5) {
+                    priority = Math.min(priority, priorities[id]);
+                    Assertions.assertEquals(priority < priorities[id], daryHeap.offerOrDecrease(id, priority));
+                } else if (op < 6) {
+                    Assertions.assertTrue(daryHeap.remove(id));
+                    contained[id] = false;
+                    counts.merge(priorities[id], -1, (a, b) -> a + b == 0 ? null : a + b);
+                    continue;
+                } else {
+                    long min = counts.firstKey();
+                    Assertions.assertEquals(min, daryHeap.peekPriority());
+                    int polled = daryHeap.poll();
+                    Assertions.assertTrue(contained[polled]);
+                    Assertions.assertEquals(min, priorities[polled]);
+                    contained[polled] = false;
+                    counts.merge(min, -1, (a, b) -> a + b == 0 ? null : a + b);
+                    continue;
+                }
+                if (contained[id]) {
+                    counts.merge(priorities[id], -1, (a, b) -> a + b == 0 ? null : a + b);
+                }
+                contained[id] = true;
+                priorities[id] = priority;
+                counts.merge(priority, 1, Integer::sum);
+                Assertions.assertEquals(priority, daryHeap.getPriority(id));
+            }
+            Assertions.assertEquals(counts.values().stream().mapToInt(Integer::intValue).sum(), daryHeap.size());
+            if (rnd.nextBoolean()) {
+                daryHeap.clear();
+                Assertions.assertTrue(daryHeap.isEmpty());
+                for (int id = 0; id < size; id++) {
+                    Assertions.assertFalse(daryHeap.contains(id));
+                }
+                continue;
+            }
+            long last = Long.MIN_VALUE;
+            while (!daryHeap.isEmpty()) {
+                long priority = daryHeap.peekPriority();
+                Assertions.assertTrue(priority >= last);
+                last = priority;
+                int id = daryHeap.poll();
+                Assertions.assertTrue(contained[id]);
+                Assertions.assertEquals(priorities[id], priority);
+                contained[id] = false;
+            }
+        }
+    }
+
+    @Test
+    void radixHeap() {
+        RadixHeap radixHeap = new RadixHeap(1);
+        for (int round = 0; round < 4; round++) {
+            int size = 10_0000;
+            // 优先级 -> 堆中该优先级的编号数量
+            TreeMap<Long, Integer> counts = new TreeMap<>();
+            long[] priorities = new long[size];
+            boolean[] contained = new boolean[size];
+            // 不同轮次使用不同的优先级范围，覆盖高位的桶
+            long range = 1L << (16 + round * 15);
+            for (int i = 0; i < size * 3; i++) {
+                int id = rnd.nextInt(size);
+                long last = radixHeap.getLast();
+                long priority = last + (long) (rnd.nextDouble() * range);
+                int op = rnd.nextInt(10);
+                if (!contained[id]) {
+                    Assertions.assertFalse(radixHeap.contains(id));
+                    radixHeap.offer(id, priority);
+                } else if (op < 2) {
+                    radixHeap.changePriority(id, priority);
+                } else if (op < 4) {
+                    priority = Math.min(priority, priorities[id]);
+                    Assertions.assertEquals(priority < priorities[id], radixHeap.offerOrDecrease(id, priority));
+                } else if (op < 5) {
+                    Assertions.assertTrue(radixHeap.remove(id));
+                    contained[id] = false;
+                    counts.merge(priorities[id], -1, (a, b) -> a + b == 0 ? null : a + b);
+                    continue;
+                } else {
+                    long min = counts.firstKey();
+                    Assertions.assertEquals(min, radixHeap.peekPriority());
+                    int polled = radixHeap.poll();
+                    Assertions.assertTrue(contained[polled]);
+                    Assertions.assertEquals(min, priorities[polled]);
+                    Assertions.assertEquals(min, radixHeap.getLast());
+                    contained[polled] = false;
+                    counts.merge(min, -1, (a, b) -> a + b == 0 ? null : a + b);
+                    continue;
+                }
+                if (contained[id]) {
+                    counts.merge(priorities[id], -1, (a, b) -> a + b == 0 ? null : a + b);
+                }
+                contained[id] = true;
+                priorities[id] = priority;
+                counts.merge(priority, 1, Integer::sum);
+                Assertions.assertEquals(priority, radixHeap.getPriority(id));
+            }
+            Assertions.assertEquals(counts.values().stream().mapToInt(Integer::intValue).sum(), radixHeap.size());
+            if (!radixHeap.isEmpty()) {
+                long last = radixHeap.getLast();
+                Assertions.assertThrows(IllegalArgumentException.class, () -> radixHeap.offer(size, last - 1));
+            }
+            if (rnd.nextBoolean()) {
+                radixHeap.clear();
+                Assertions.assertTrue(radixHeap.isEmpty());
+                Assertions.assertEquals(0, radixHeap.getLast());
+                for (int id = 0; id < size; id++) {
+                    Assertions.assertFalse(radixHeap.contains(id));
+                }
+                continue;
+            }
+            long last = Long.MIN_VALUE;
+            while (!radixHeap.isEmpty()) {
+                long priority = radixHeap.peekPriority();
+                Assertions.assertTrue(priority >= last);
+                last = priority;
+                int id = radixHeap.poll();
+                Assertions.assertTrue(contained[id]);
+                Assertions.assertEquals(priorities[id], priority);
+                contained[id] = false;
+            }
+        }
+    }
+
+    @Test
+    void weakHeap() {
+        int size = 10_0000;
+        List<Integer> initial = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            initial.add(rnd.nextInt(size));
+        }
+        WeakHeap<Integer> weakHeap = new WeakHeap<>(initial);
+        // key -> 堆中该key的数量
+        TreeMap<Integer, Integer> counts = new TreeMap<>();
+        initial.forEach(key -> counts.merge(key, 1, Integer::sum));
+        List<IHandle<Integer>> handles = new ArrayList<>();
+        int expectedSize = initial.size();
+        for (int i = 0; i < size * 3; i++) {
+            int op = rnd.nextInt(10);
+            if (op < 4 || handles.isEmpty()) {
+                int key = rnd.nextInt(size);
+                handles.add(weakHeap.insert(key));
+                counts.merge(key, 1, Integer::sum);
+                expectedSize++;
+            } else if (op < 6) {
+                int index = rnd.nextInt(handles.size());
+                IHandle<Integer> handle = handles.get(index);
+                if (!weakHeap.contains(handle)) {
+                    handles.set(index, handles.get(handles.size() - 1));
+                    handles.remove(handles.size() - 1);
+                    continue;
+                }
+                int old = handle.getKey();
+                int key = old - rnd.nextInt(size);
+                weakHeap.decreaseKey(handle, key);
+                counts.merge(old, -1, (a, b) -> a + b == 0 ? null : a + b);
+                counts.merge(key, 1, Integer::sum);
+            } else if (op < 7) {
+                int index = rnd.nextInt(handles.size());
+                IHandle<Integer> handle = handles.get(index);
+                handles.set(index, handles.get(handles.size() - 1));
+                handles.remove(handles.size() - 1);
+                if (!weakHeap.contains(handle)) {
+                    continue;
+                }
+                weakHeap.delete(handle);
+                Assertions.assertFalse(weakHeap.contains(handle));
+                counts.merge(handle.getKey(), -1, (a, b) -> a + b == 0 ? null : a + b);
+                expectedSize--;
+            } else if (!counts.isEmpty()) {
+                int min = counts.firstKey();
+                Assertions.assertEquals(min, weakHeap.minKey());
+                Assertions.assertEquals(min, weakHeap.poll());
+                counts.merge(min, -1, (a, b) -> a + b == 0 ? null : a + b);
+                expectedSize--;
+            }
+            Assertions.assertEquals(expectedSize, weakHeap.size());
+        }
+        IHandle<Integer> handle = weakHeap.insert(size);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> weakHeap.decreaseKey(handle, size + 1));
+        weakHeap.delete(handle);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> weakHeap.delete(handle));
+        Integer last = null;
+        while (!weakHeap.isEmpty()) {
+            Integer key = weakHeap.poll();
+            Assertions.assertTrue(last == null || key >= last);
+            last = key;
+            counts.merge(key, -1, (a, b) -> a + b == 0 ? null : a + b);
+        }
+        Assertions.assertTrue(counts.isEmpty());
+        Assertions.assertNull(weakHeap.poll());
+    }
+
+    @Test
+    void pairingHeap() {
+        checkAddressableHeap(() -> PairingHeap.create(IntKey.class));
+        checkNormalHeap(PairingHeap.create(Integer.class));
+    }
+
+    @Test
+    void hollowHeap() {
+        checkAddressableHeap(() -> HollowHeap.create(IntKey.class));
+        checkNormalHeap(HollowHeap.create(Integer.class));
+    }
+
+    private static void checkNormalHeap(IFiboHeap<Integer> heap) {
+        PriorityQueue<Integer> queue = new PriorityQueue<>();
+        int size = 10_0000;
+        List<IHandle<Integer>> handles = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            int random = rnd.nextInt(size);
+            handles.add(heap.insert(random));
+            queue.offer(random);
+        }
+        for (int i = 0; i < size / 100; i++) {
+            IHandle<Integer> handle = handles.get(rnd.nextInt(handles.size()));
+            if (queue.remove(handle.getKey())) {
+                heap.delete(handle);
+                // 同一个句柄不再删除
+                handles.remove(handle);
+            }
+            pollAndCheck((Queue<Integer>) heap, queue);
+        }
+        while (!queue.isEmpty()) {
+            pollAndCheck((Queue<Integer>) heap, queue);
+        }
+        Assertions.assertTrue(heap.isEmpty());
+        Assertions.assertNull(heap.extractMin());
+    }
+
+    /**
+     * 随机插入、decrease/increase key、删除与取出，与按key计数的TreeMap比较
+     */
+    private static void checkAddressableHeap(Supplier<IFiboHeap<IntKey>> heapSupplier) {
+        IFiboHeap<IntKey> heap = heapSupplier.get();
+        int size = 10_0000;
+        // key -> 堆中该key的数量
+        TreeMap<Integer, Integer> counts = new TreeMap<>();
+        List<IntKey> keys = new ArrayList<>();
+        int expectedSize = 0;
+        for (int i = 0; i < size * 3; i++) {
+            int op = rnd.nextInt(10);
+            if (op < 4 || expectedSize == 0) {
+                IntKey key = new IntKey(rnd.nextInt(size));
+                heap.insert(key);
+                Assertions.assertSame(heap, key.getHeap());
+                keys.add(key);
+                counts.merge(key.getKey(), 1, Integer::sum);
+                expectedSize++;
+            } else if (op < 8) {
+                int index = rnd.nextInt(keys.size());
+                IntKey key = keys.get(index);
+                if (key.getHeap() == null) {
+                    keys.set(index, keys.get(keys.size() - 1));
+                    keys.remove(keys.size() - 1);
+                    continue;
+                }
+                counts.merge(key.getKey(), -1, (a, b) -> a + b == 0 ? null : a + b);
+                if (op < 6) {
+                    key.delta(-rnd.nextInt(size));
+                } else if (op < 7) {
+                    key.delta(rnd.nextInt(size / 4));
+                } else {
+                    heap.delete(key.getHandle());
+                    Assertions.assertNull(key.getHeap());
+                    expectedSize--;
+                    continue;
+                }
+                counts.merge(key.getKey(), 1, Integer::sum);
+            } else {
+                int min = counts.firstKey();
+                Assertions.assertEquals(min, heap.minKey().getKey());
+                IntKey polled = heap.extractMin();
+                Assertions.assertEquals(min, polled.getKey());
+                Assertions.assertNull(polled.getHeap());
+                counts.merge(min, -1, (a, b) -> a + b == 0 ? null : a + b);
+                expectedSize--;
+            }
+            Assertions.assertEquals(expectedSize, ((Queue<IntKey>) heap).size());
+        }
+        // 合并另一个同类型的堆，key感知到新的堆
+        IFiboHeap<IntKey> other = heapSupplier.get();
+        List<IntKey> otherKeys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            IntKey key = new IntKey(rnd.nextInt(size));
+            other.insert(key);
+            otherKeys.add(key);
+            counts.merge(key.getKey(), 1, Integer::sum);
+            expectedSize++;
+        }
+        heap.union(other);
+        Assertions.assertTrue(other.isEmpty());
+        otherKeys.forEach(key -> Assertions.assertSame(heap, key.getHeap()));
+        Assertions.assertEquals(expectedSize, ((Queue<IntKey>) heap).size());
+        for (int i = 0; i < expectedSize / 2; i++) {
+            int min = counts.firstKey();
+            Assertions.assertEquals(min, heap.extractMin().getKey());
+            counts.merge(min, -1, (a, b) -> a + b == 0 ? null : a + b);
+        }
+        List<IntKey> remaining = new ArrayList<>((Queue<IntKey>) heap);
+        Assertions.assertEquals(counts.values().stream().mapToInt(Integer::intValue).sum(), remaining.size());
+        heap.clear();
+        Assertions.assertTrue(heap.isEmpty());
+        remaining.forEach(key -> Assertions.assertNull(key.getHeap()));
+    }
 }
\ No newline at end of file
@@ -11,6 +11,7 @@ import org.jgrapht.generate.GnpRandomGraphGenerator;
 import org.jgrapht.graph.DefaultDirectedWeightedGraph;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.DirectedWeightedMultigraph;
+import org.jgrapht.graph.WeightedMultigraph;
 import org.jgrapht.graph.builder.GraphBuilder;
 import org.jgrapht.util.SupplierUtil;
 import org.junit.jupiter.api.Assertions;
@@ -18,6 +19,9 @@ import org.junit.jupiter.api.Test;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Sando
@@ -168,6 +172,1383 @@ class GraphTest {
         });
     }
 
+    @Test
+    void csrGraph() {
+        for (int i = 0; i < 500; i++) {
+            DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+            List<Edge> edges = new ArrayList<>();
+            multigraph.iterables().edges().forEach(edge -> {
+                edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+            });
+            if (edges.isEmpty()) {
+                continue;
+            }
+            Graph<Integer> csrGraph = new Graph<>(edges, true, true);
+            Integer start = edges.get(rnd.nextInt(edges.size())).getStart();
+            ShortestPathTreeCache<Integer> treeCache = new ShortestPathTreeCache<>(csrGraph);
+            ShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(start);
+            pathTree.getPrevious(null);
+            for (int j = 0; j < 5; j++) {
+                Edge edge = edges.get(rnd.nextInt(edges.size()));
+                long weightNew = Math.max(1, edge.getWeight() + rnd.nextInt(100) - 50);
+                Assertions.assertTrue(csrGraph.updateWeight(edge.getStart(), edge.getEnd(), weightNew));
+                Assertions.assertSame(edge, csrGraph.getEdge(edge.getStart(), edge.getEnd()));
+                multigraph.setEdgeWeight(multigraph.getEdge(edge.getStart(), edge.getEnd()), weightNew);
+            }
+            ShortestPathAlgorithm.SingleSourcePaths<Integer, WeightedEdge> paths =
+                    new IntVertexDijkstraShortestPath<>(multigraph).getPaths(start);
+            checkDistanceSame(csrGraph, pathTree, paths);
+            // 图只弱引用监听者，保持缓存可达
+            Assertions.assertSame(pathTree, treeCache.getOrCreateShortestPathTree(start));
+        }
+        Graph<Integer> csrGraph = new Graph<>(Collections.singletonList(new Edge(1, 2, 1)), true, true);
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> csrGraph.addEdge(new Edge(2, 1, 1)));
+    }
+
+    @Test
+    void compactTree() {
+        for (int i = 0; i < 500; i++) {
+            DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+            List<Edge> edges = new ArrayList<>();
+            multigraph.iterables().edges().forEach(edge -> {
+                edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+            });
+            if (edges.isEmpty()) {
+                continue;
+            }
+            Graph<Integer> graph = new Graph<>(edges, true);
+            Integer start = edges.get(rnd.nextInt(edges.size())).getStart();
+            boolean mergeUpdate = rnd.nextBoolean();
+            ShortestPathTreeCache<Integer> treeCache = new ShortestPathTreeCache<>(graph,
+                    (g, root) -> new CompactShortestPathTree<>(g, root, mergeUpdate));
+            CompactShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(start);
+            if (rnd.nextBoolean()) {
+                pathTree.getPrevious(null);
+            } else {
+                pathTree.getPrevious(edges.get(rnd.nextInt(edges.size())).getEnd());
+            }
+            for (int j = 0; j < 5; j++) {
+                Edge edge = edges.get(rnd.nextInt(edges.size()));
+                long weightNew = Math.max(1, edge.getWeight() + rnd.nextInt(100) - 50);
+                graph.updateWeight(edge.getStart(), edge.getEnd(), weightNew);
+                multigraph.setEdgeWeight(multigraph.getEdge(edge.getStart(), edge.getEnd()), weightNew);
+            }
+            ShortestPathAlgorithm.SingleSourcePaths<Integer, WeightedEdge> paths =
+                    new IntVertexDijkstraShortestPath<>(multigraph).getPaths(start);
+            checkDistanceSame(graph, pathTree, paths);
+            Assertions.assertTrue(pathTree.checkAllReset());
+            Assertions.assertSame(pathTree, treeCache.getOrCreateShortestPathTree(start));
+        }
+    }
+
+    @Test
+    void updateWeights() {
+        for (int i = 0; i < 500; i++) {
+            DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+            List<Edge> edges = new ArrayList<>();
+            multigraph.iterables().edges().forEach(edge -> {
+                edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+            });
+            if (edges.isEmpty()) {
+                continue;
+            }
+            Graph<Integer> graph = new Graph<>(edges, true);
+            Integer start = edges.get(rnd.nextInt(edges.size())).getStart();
+            boolean compact = rnd.nextBoolean();
+            boolean mergeUpdate = rnd.nextBoolean();
+            ShortestPathTreeCache<Integer> treeCache = new ShortestPathTreeCache<>(graph, compact
+                    ? (g, root) -> new CompactShortestPathTree<>(g, root, mergeUpdate)
+                    : (g, root) -> new ShortestPathTree<>(g, root, mergeUpdate));
+            IShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(start);
+            if (rnd.nextBoolean()) {
+                pathTree.getPrevious(null);
+            } else {
+                pathTree.getPrevious(edges.get(rnd.nextInt(edges.size())).getEnd());
+            }
+            List<WeightChange<Integer>> changes = new ArrayList<>();
+            for (int j = 0; j < 10; j++) {
+                Edge edge = edges.get(rnd.nextInt(edges.size()));
+                long weightNew = Math.max(1, edge.getWeight() + rnd.nextInt(100) - 50);
+                changes.add(WeightChange.of(edge.getStart(), edge.getEnd(), weightNew));
+                multigraph.setEdgeWeight(multigraph.getEdge(edge.getStart(), edge.getEnd()), weightNew);
+            }
+            Assertions.assertTrue(graph.updateWeights(changes));
+            ShortestPathAlgorithm.SingleSourcePaths<Integer, WeightedEdge> paths =
+                    new IntVertexDijkstraShortestPath<>(multigraph).getPaths(start);
+            checkDistanceSame(graph, pathTree, paths);
+            Assertions.assertTrue(pathTree.checkAllReset());
+            Assertions.assertSame(pathTree, treeCache.getOrCreateShortestPathTree(start));
+        }
+        // 任意一条边不存在时不做任何修改
+        Edge edge = new Edge(1, 2, 1);
+        Graph<Integer> graph = new Graph<>(Collections.singletonList(edge), true);
+        Assertions.assertFalse(graph.updateWeights(Arrays.asList(WeightChange.of(1, 2, 5), WeightChange.of(2, 1, 5))));
+        Assertions.assertEquals(1, edge.getWeight());
+    }
+
+    @Test
+    void edgeDiffPoolReuse() {
+        for (int i = 0; i < 200; i++) {
+            DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+            List<Edge> edges = new ArrayList<>();
+            multigraph.iterables().edges().forEach(edge -> {
+                edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+            });
+            if (edges.isEmpty()) {
+                continue;
+            }
+            Graph<Integer> graph = new Graph<>(edges, true);
+            HeapType heapType = HeapType.values()[rnd.nextInt(HeapType.values().length)];
+            // 不经过缓存，直接通知树，便于设置树边监听
+            ShortestPathTree<Integer> pathTree = new ShortestPathTree<>(graph, edges.get(0).getStart(), false, heapType);
+            pathTree.getPrevious(null);
+            EdgeDiff.Pool<Integer> pool = pathTree.getTreeUpdater().getEdgeDiffPool();
+            // 每次更新结束后所有EdgeDiff都回到池中，下一次更新复用
+            for (int j = 0; j < 10; j++) {
+                Edge edge = edges.get(rnd.nextInt(edges.size()));
+                updateWeight(pathTree, edge, Math.max(1, edge.getWeight() + rnd.nextInt(100) - 50));
+                Assertions.assertTrue(pathTree.checkAllReset());
+                Assertions.assertEquals(pool.getCreated(), pool.size(), heapType.name());
+            }
+            // 更新异常中断时顶点持有的EdgeDiff在下一次更新时释放
+            AtomicBoolean armed = new AtomicBoolean();
+            pathTree.setTreeEdgeListener(new IShortestPathTree.ITreeEdgeListener() {
+                @Override
+                public void onTreeEdgeChange(int vertex, int oldParent, int newParent) {
+                    if (armed.getAndSet(false)) {
+                        throw new IllegalStateException("中断更新");
+                    }
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+            armed.set(true);
+            for (int j = 0; j < 10 && armed.get(); j++) {
+                Edge edge = edges.get(rnd.nextInt(edges.size()));
+                try {
+                    updateWeight(pathTree, edge, edge.getWeight() * 10);
+                } catch (IllegalStateException ignored) {
+                }
+            }
+            armed.set(false);
+            Edge edge = edges.get(rnd.nextInt(edges.size()));
+            updateWeight(pathTree, edge, edge.getWeight() + 1);
+            Assertions.assertEquals(pool.getCreated(), pool.size(), heapType.name());
+        }
+    }
+
+    private static void updateWeight(IShortestPathTree<Integer> pathTree, Edge edge, long weight) {
+        long oldWeight = edge.getWeight();
+        edge.setWeight(weight);
+        pathTree.edgeUpdate(edge, oldWeight);
+    }
+
+    @Test
+    void warmUp() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 100; i++) {
+                DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+                List<Edge> edges = new ArrayList<>();
+                multigraph.iterables().edges().forEach(edge -> {
+                    edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+                });
+                if (edges.isEmpty()) {
+                    continue;
+                }
+                Graph<Integer> graph = new Graph<>(edges, true);
+                boolean compact = rnd.nextBoolean();
+                ShortestPathTreeCache<Integer> treeCache = compact
+                        ? new ShortestPathTreeCache<>(graph, CompactShortestPathTree::new) : new ShortestPathTreeCache<>(graph);
+                IShortestPathTree<Integer> cached = treeCache.getOrCreateShortestPathTree(edges.get(0).getStart());
+                List<Integer> roots = new ArrayList<>(graph.getVertexSet());
+                // 不在图中的顶点会被忽略
+                roots.add(-1);
+                if (rnd.nextBoolean()) {
+                    treeCache.warmUp(roots, 4);
+                } else {
+                    treeCache.warmUp(roots, executor);
+                }
+                Assertions.assertSame(cached, treeCache.getOrCreateShortestPathTree(edges.get(0).getStart()));
+                IntVertexDijkstraShortestPath<WeightedEdge> shortestPath = new IntVertexDijkstraShortestPath<>(multigraph);
+                for (Integer root : graph.getVertexSet()) {
+                    checkDistanceSame(graph, treeCache.getOrCreateShortestPathTree(root), shortestPath.getPaths(root));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void warmUpConcurrentUpdate() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+            List<Edge> edges = new ArrayList<>();
+            multigraph.iterables().edges().forEach(edge -> {
+                edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+            });
+            if (edges.isEmpty()) {
+                continue;
+            }
+            Graph<Integer> graph = new Graph<>(edges, true);
+            boolean compact = rnd.nextBoolean();
+            ShortestPathTreeCache<Integer> treeCache = compact
+                    ? new ShortestPathTreeCache<>(graph, CompactShortestPathTree::new) : new ShortestPathTreeCache<>(graph);
+            Random random = new Random(rnd.nextLong());
+            // 预热期间修改权重
+            Thread writer = new Thread(() -> {
+                for (int j = 0; j < 20; j++) {
+                    Edge edge = edges.get(random.nextInt(edges.size()));
+                    long weightNew = Math.max(1, edge.getWeight() + random.nextInt(100) - 50);
+                    graph.updateWeight(edge.getStart(), edge.getEnd(), weightNew);
+                    multigraph.setEdgeWeight(multigraph.getEdge(edge.getStart(), edge.getEnd()), weightNew);
+                }
+            });
+            writer.start();
+            treeCache.warmUp(graph.getVertexSet(), 4);
+            writer.join();
+            IntVertexDijkstraShortestPath<WeightedEdge> shortestPath = new IntVertexDijkstraShortestPath<>(multigraph);
+            for (Integer root : graph.getVertexSet()) {
+                checkDistanceSame(graph, treeCache.getOrCreateShortestPathTree(root), shortestPath.getPaths(root));
+            }
+        }
+    }
+
+    @Test
+    void parallelUpdate() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 100; i++) {
+                DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+                List<Edge> edges = new ArrayList<>();
+                multigraph.iterables().edges().forEach(edge -> {
+                    edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+                });
+                if (edges.isEmpty()) {
+                    continue;
+                }
+                Graph<Integer> graph = new Graph<>(edges, true);
+                boolean compact = rnd.nextBoolean();
+                boolean mergeUpdate = rnd.nextBoolean();
+                ShortestPathTreeCache<Integer> treeCache = new ShortestPathTreeCache<>(graph, compact
+                        ? (g, root) -> new CompactShortestPathTree<>(g, root, mergeUpdate)
+                        : (g, root) -> new ShortestPathTree<>(g, root, mergeUpdate));
+                boolean async = rnd.nextBoolean();
+                treeCache.setUpdateExecutor(executor, async);
+                treeCache.warmUp(graph.getVertexSet(), 2);
+                treeCache.setHot(edges.get(0).getStart(), true);
+                for (int j = 0; j < 5; j++) {
+                    Edge edge = edges.get(rnd.nextInt(edges.size()));
+                    long weightNew = Math.max(1, edge.getWeight() + rnd.nextInt(100) - 50);
+                    graph.updateWeight(edge.getStart(), edge.getEnd(), weightNew);
+                    multigraph.setEdgeWeight(multigraph.getEdge(edge.getStart(), edge.getEnd()), weightNew);
+                    if (!async) {
+                        Assertions.assertTrue(treeCache.pendingUpdate().isDone());
+                    }
+                    // 异步更新完成之前不能再修改图
+                    treeCache.pendingUpdate().join();
+                }
+                IntVertexDijkstraShortestPath<WeightedEdge> shortestPath = new IntVertexDijkstraShortestPath<>(multigraph);
+                for (Integer root : graph.getVertexSet()) {
+                    checkDistanceSame(graph, treeCache.getOrCreateShortestPathTree(root), shortestPath.getPaths(root));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void treeEdgeIndex() {
+        for (int i = 0; i < 100; i++) {
+            DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+            List<Edge> edges = new ArrayList<>();
+            multigraph.iterables().edges().forEach(edge -> {
+                edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+            });
+            if (edges.isEmpty()) {
+                continue;
+            }
+            Graph<Integer> graph = new Graph<>(edges, true);
+            TreeEdgeIndex<Integer> index = new TreeEdgeIndex<>(graph);
+            List<IShortestPathTree<Integer>> trees = new ArrayList<>();
+            List<Integer> roots = new ArrayList<>(graph.getVertexSet());
+            for (Integer root : roots) {
+                IShortestPathTree<Integer> tree = rnd.nextBoolean()
+                        ? new CompactShortestPathTree<>(graph, root, false) : new ShortestPathTree<>(graph, root, false);
+                index.add(tree);
+                tree.getPrevious(null);
+                trees.add(tree);
+            }
+            for (int j = 0; j < 10; j++) {
+                Edge edge = edges.get(rnd.nextInt(edges.size()));
+                long oldWeight = edge.getWeight();
+                // 权重增加只会路由给包含该树边的树
+                edge.setWeight(oldWeight + rnd.nextInt(100) + 1);
+                Set<IShortestPathTree<Integer>> routed = index.route(edge, oldWeight);
+                edge.setWeight(oldWeight);
+                for (IShortestPathTree<Integer> tree : trees) {
+                    Vertex<Integer> previous = tree.getPrevious(edge.getEnd());
+                    boolean treeEdge = previous != null && previous.getK().equals(edge.getStart());
+                    Assertions.assertEquals(treeEdge, routed.contains(tree));
+                }
+                // 树边变化后索引随之更新
+                long weightNew = Math.max(1, oldWeight + rnd.nextInt(100) - 50);
+                graph.updateWeight(edge.getStart(), edge.getEnd(), weightNew);
+                Set<IShortestPathTree<Integer>> affected = index.route(edge, oldWeight);
+                affected.forEach(tree -> tree.edgeUpdate(edge, oldWeight));
+                multigraph.setEdgeWeight(multigraph.getEdge(edge.getStart(), edge.getEnd()), weightNew);
+            }
+            IntVertexDijkstraShortestPath<WeightedEdge> shortestPath = new IntVertexDijkstraShortestPath<>(multigraph);
+            for (int j = 0; j < trees.size(); j++) {
+                checkDistanceSame(graph, trees.get(j), shortestPath.getPaths(roots.get(j)));
+            }
+        }
+    }
+
+    @Test
+    void boundedCache() {
+        List<Edge> edges = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            edges.add(new Edge(i, (i + 1) % 6, i + 1));
+        }
+        Graph<Integer> graph = new Graph<>(edges, true);
+        // LRU：淘汰最久未被访问的树
+        ShortestPathTreeCache<Integer> treeCache = new ShortestPathTreeCache<>(graph, CompactShortestPathTree::new);
+        treeCache.setBudget(3, Long.MAX_VALUE);
+        IShortestPathTree<Integer> tree0 = treeCache.getOrCreateShortestPathTree(0);
+        treeCache.getOrCreateShortestPathTree(1);
+        treeCache.getOrCreateShortestPathTree(2);
+        Assertions.assertSame(tree0, treeCache.getOrCreateShortestPathTree(0));
+        IShortestPathTree<Integer> tree1 = treeCache.getOrCreateShortestPathTree(3);
+        Assertions.assertEquals(3, treeCache.size());
+        Assertions.assertSame(tree0, treeCache.getOrCreateShortestPathTree(0));
+        Assertions.assertNotSame(tree1, treeCache.getOrCreateShortestPathTree(1));
+        // LFU：淘汰访问次数最少的树
+        treeCache = new ShortestPathTreeCache<>(graph, CompactShortestPathTree::new);
+        treeCache.setEvictionPolicy(new LfuEvictionPolicy<>());
+        treeCache.setBudget(2, Long.MAX_VALUE);
+        tree0 = treeCache.getOrCreateShortestPathTree(0);
+        treeCache.getOrCreateShortestPathTree(0);
+        tree1 = treeCache.getOrCreateShortestPathTree(1);
+        treeCache.getOrCreateShortestPathTree(2);
+        Assertions.assertSame(tree0, treeCache.getOrCreateShortestPathTree(0));
+        Assertions.assertNotSame(tree1, treeCache.getOrCreateShortestPathTree(1));
+        // TinyLFU：访问频率不高于被淘汰者的新树不会被接纳
+        treeCache = new ShortestPathTreeCache<>(graph, CompactShortestPathTree::new);
+        treeCache.setEvictionPolicy(new TinyLfuEvictionPolicy<>(16));
+        treeCache.setBudget(1, Long.MAX_VALUE);
+        tree0 = treeCache.getOrCreateShortestPathTree(0);
+        treeCache.getOrCreateShortestPathTree(0);
+        // 没有被接纳的树不在缓存中，不会收到图的变化
+        Assertions.assertTrue(treeCache.getOrCreateShortestPathTree(1).isDetached());
+        Assertions.assertSame(tree0, treeCache.getOrCreateShortestPathTree(0));
+        Assertions.assertFalse(tree0.isDetached());
+        treeCache.getOrCreateShortestPathTree(1);
+        treeCache.getOrCreateShortestPathTree(1);
+        treeCache.getOrCreateShortestPathTree(1);
+        Assertions.assertNotSame(tree0, treeCache.getOrCreateShortestPathTree(0));
+        // 内存预算
+        treeCache = new ShortestPathTreeCache<>(graph, CompactShortestPathTree::new);
+        tree0 = treeCache.getOrCreateShortestPathTree(0);
+        treeCache.setBudget(Integer.MAX_VALUE, tree0.estimateMemory() * 2);
+        for (int i = 1; i < 6; i++) {
+            treeCache.getOrCreateShortestPathTree(i).getPrevious(null);
+        }
+        Assertions.assertEquals(2, treeCache.size());
+        // 被淘汰的树不再收到图的变化
+        IShortestPathTree<Integer> evicted = treeCache.getOrCreateShortestPathTree(0);
+        evicted.getPrevious(null);
+        treeCache.getOrCreateShortestPathTree(1);
+        treeCache.getOrCreateShortestPathTree(2);
+        graph.updateWeight(0, 1, 100);
+        Assertions.assertTrue(evicted.isDetached());
+        Assertions.assertEquals(1, evicted.getDistance(1));
+        Assertions.assertEquals(100, treeCache.getOrCreateShortestPathTree(0).getDistance(1));
+        // 淘汰策略给出的起点不在缓存中时停止淘汰
+        treeCache = new ShortestPathTreeCache<>(graph, CompactShortestPathTree::new);
+        treeCache.setEvictionPolicy(new LruEvictionPolicy<Integer>() {
+            @Override
+            public Integer victim() {
+                return -1;
+            }
+        });
+        tree0 = treeCache.getOrCreateShortestPathTree(0);
+        treeCache.setBudget(0, Long.MAX_VALUE);
+        Assertions.assertEquals(1, treeCache.size());
+        Assertions.assertTrue(treeCache.getOrCreateShortestPathTree(1).isDetached());
+        Assertions.assertSame(tree0, treeCache.getOrCreateShortestPathTree(0));
+    }
+
+    @Test
+    void concurrentCache() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int i = 0; i < 50; i++) {
+                DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+                List<Edge> edges = new ArrayList<>();
+                multigraph.iterables().edges().forEach(edge -> {
+                    edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+                });
+                if (edges.isEmpty()) {
+                    continue;
+                }
+                Graph<Integer> graph = new Graph<>(edges, true);
+                boolean compact = rnd.nextBoolean();
+                boolean mergeUpdate = rnd.nextBoolean();
+                AtomicInteger created = new AtomicInteger();
+                ShortestPathTreeCache<Integer> treeCache = new ShortestPathTreeCache<>(graph, (g, root) -> {
+                    created.incrementAndGet();
+                    return compact ? new CompactShortestPathTree<>(g, root, mergeUpdate) : new ShortestPathTree<>(g, root, mergeUpdate);
+                });
+                // 同一个起点只创建一次
+                Integer start = edges.get(0).getStart();
+                CountDownLatch ready = new CountDownLatch(1);
+                List<Future<IShortestPathTree<Integer>>> futures = new ArrayList<>();
+                for (int j = 0; j < 8; j++) {
+                    futures.add(executor.submit(() -> {
+                        ready.await();
+                        return treeCache.getOrCreateShortestPathTree(start);
+                    }));
+                }
+                ready.countDown();
+                Set<IShortestPathTree<Integer>> trees = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (Future<IShortestPathTree<Integer>> future : futures) {
+                    trees.add(getQuietly(future));
+                }
+                Assertions.assertEquals(1, trees.size());
+                Assertions.assertEquals(1, created.get());
+                // 查询与图的修改同时进行
+                List<Integer> vertices = new ArrayList<>(graph.getVertexSet());
+                AtomicBoolean stop = new AtomicBoolean();
+                List<Future<?>> readers = new ArrayList<>();
+                for (int j = 0; j < 4; j++) {
+                    long seed = rnd.nextLong();
+                    readers.add(executor.submit(() -> {
+                        Random random = new Random(seed);
+                        while (!stop.get()) {
+                            Integer root = vertices.get(random.nextInt(vertices.size()));
+                            Integer vertex = vertices.get(random.nextInt(vertices.size()));
+                            treeCache.getOrCreateShortestPathTree(root).getDistance(vertex);
+                        }
+                    }));
+                }
+                for (int j = 0; j < 20; j++) {
+                    Edge edge = edges.get(rnd.nextInt(edges.size()));
+                    long weightNew = Math.max(1, edge.getWeight() + rnd.nextInt(100) - 50);
+                    graph.updateWeight(edge.getStart(), edge.getEnd(), weightNew);
+                    multigraph.setEdgeWeight(multigraph.getEdge(edge.getStart(), edge.getEnd()), weightNew);
+                }
+                stop.set(true);
+                for (Future<?> reader : readers) {
+                    getQuietly(reader);
+                }
+                IntVertexDijkstraShortestPath<WeightedEdge> shortestPath = new IntVertexDijkstraShortestPath<>(multigraph);
+                for (Integer root : vertices) {
+                    checkDistanceSame(graph, treeCache.getOrCreateShortestPathTree(root), shortestPath.getPaths(root));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void snapshot() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 50; i++) {
+                DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+                List<Edge> edges = new ArrayList<>();
+                multigraph.iterables().edges().forEach(edge -> {
+                    edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+                });
+                if (edges.isEmpty()) {
+                    continue;
+                }
+                Graph<Integer> graph = new Graph<>(edges, true);
+                Integer root = edges.get(0).getStart();
+                // 不合并更新，每次变化生效后立即发布
+                boolean compact = rnd.nextBoolean();
+                ShortestPathTreeCache<Integer> treeCache = new ShortestPathTreeCache<>(graph, compact
+                        ? (g, k) -> new CompactShortestPathTree<>(g, k, false)
+                        : (g, k) -> new ShortestPathTree<>(g, k, false));
+                IShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(root);
+                List<Integer> vertices = new ArrayList<>(graph.getVertexSet());
+                TreeSnapshot<Integer> first = pathTree.getSnapshot();
+                Map<Integer, Long> firstDistance = new HashMap<>();
+                for (Integer vertex : vertices) {
+                    firstDistance.put(vertex, first.getDistance(vertex));
+                }
+                // 读者只能看到完整的版本：路径从起点出发，距离沿路径严格递增
+                AtomicBoolean stop = new AtomicBoolean();
+                List<Future<?>> readers = new ArrayList<>();
+                for (int j = 0; j < 2; j++) {
+                    readers.add(executor.submit(() -> {
+                        while (!stop.get()) {
+                            TreeSnapshot<Integer> snapshot = pathTree.getSnapshot();
+                            for (Integer vertex : vertices) {
+                                List<Integer> path = snapshot.getPath(vertex);
+                                if (path.isEmpty()) {
+                                    Assertions.assertEquals(Long.MAX_VALUE, snapshot.getDistance(vertex));
+                                    continue;
+                                }
+                                Assertions.assertEquals(root, path.get(0));
+                                for (int k = 1; k < path.size(); k++) {
+                                    Assertions.assertTrue(snapshot.getDistance(path.get(k - 1)) < snapshot.getDistance(path.get(k)));
+                                }
+                            }
+                        }
+                    }));
+                }
+                for (int j = 0; j < 20; j++) {
+                    Edge edge = edges.get(rnd.nextInt(edges.size()));
+                    long weightNew = Math.max(1, edge.getWeight() + rnd.nextInt(100) - 50);
+                    graph.updateWeight(edge.getStart(), edge.getEnd(), weightNew);
+                    multigraph.setEdgeWeight(multigraph.getEdge(edge.getStart(), edge.getEnd()), weightNew);
+                }
+                stop.set(true);
+                for (Future<?> reader : readers) {
+                    getQuietly(reader);
+                }
+                // 已经发布的版本不会改变
+                for (Integer vertex : vertices) {
+                    Assertions.assertEquals(firstDistance.get(vertex), first.getDistance(vertex));
+                }
+                TreeSnapshot<Integer> last = pathTree.getSnapshot();
+                Assertions.assertTrue(last.getVersion() >= first.getVersion());
+                ShortestPathAlgorithm.SingleSourcePaths<Integer, WeightedEdge> paths = new IntVertexDijkstraShortestPath<>(multigraph).getPaths(root);
+                for (Integer vertex : vertices) {
+                    double weight = paths.getWeight(vertex);
+                    Assertions.assertEquals(weight == Double.POSITIVE_INFINITY ? Long.MAX_VALUE : (long) weight, last.getDistance(vertex));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void weightUpdatePipeline() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (WeightUpdatePipeline.Backpressure backpressure : WeightUpdatePipeline.Backpressure.values()) {
+                for (int i = 0; i < 20; i++) {
+                    DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+                    List<Edge> edges = new ArrayList<>();
+                    multigraph.iterables().edges().forEach(edge -> {
+                        edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+                    });
+                    if (edges.isEmpty()) {
+                        continue;
+                    }
+                    Graph<Integer> graph = new Graph<>(edges, true);
+                    ShortestPathTreeCache<Integer> treeCache = new ShortestPathTreeCache<>(graph, CompactShortestPathTree::new);
+                    treeCache.warmUp(graph.getVertexSet(), 2);
+                    // 每个线程只修改自己的边，同一条边的变化按提交顺序生效
+                    Map<Edge, Long> expected = new ConcurrentHashMap<>();
+                    List<Future<?>> producers = new ArrayList<>();
+                    try (WeightUpdatePipeline<Integer> pipeline = new WeightUpdatePipeline<>(graph, 4, backpressure)) {
+                        for (int j = 0; j < 4; j++) {
+                            int producer = j;
+                            long seed = rnd.nextLong();
+                            producers.add(executor.submit(() -> {
+                                Random random = new Random(seed);
+                                for (int k = 0; k < 50; k++) {
+                                    Edge edge = edges.get(random.nextInt(edges.size()));
+                                    if (Math.floorMod(edge.getStart() * 31 + edge.getEnd(), 4) != producer) {
+                                        continue;
+                                    }
+                                    long weightNew = 1 + random.nextInt(100);
+                                    expected.put(edge, weightNew);
+                                    pipeline.submit(edge.getStart(), edge.getEnd(), weightNew);
+                                }
+                            }));
+                        }
+                        for (Future<?> future : producers) {
+                            getQuietly(future);
+                        }
+                        pipeline.flush();
+                        Assertions.assertEquals(0, pipeline.getRejected());
+                        if (backpressure != WeightUpdatePipeline.Backpressure.DROP_OLDEST) {
+                            Assertions.assertEquals(0, pipeline.getDropped());
+                            expected.forEach((edge, weight) -> Assertions.assertEquals(weight, edge.getWeight()));
+                        }
+                    }
+                    for (Edge edge : edges) {
+                        multigraph.setEdgeWeight(multigraph.getEdge(edge.getStart(), edge.getEnd()), edge.getWeight());
+                    }
+                    IntVertexDijkstraShortestPath<WeightedEdge> shortestPath = new IntVertexDijkstraShortestPath<>(multigraph);
+                    for (Integer root : graph.getVertexSet()) {
+                        checkDistanceSame(graph, treeCache.getOrCreateShortestPathTree(root), shortestPath.getPaths(root));
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void coalesceWindow() {
+        List<Edge> edges = Arrays.asList(new Edge(0, 1, 10), new Edge(1, 2, 10), new Edge(0, 2, 30));
+        Graph<Integer> graph = new Graph<>(edges, true);
+        ShortestPathTreeCache<Integer> treeCache = new ShortestPathTreeCache<>(graph, CompactShortestPathTree::new);
+        IShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(0);
+        Assertions.assertEquals(20, pathTree.getDistance(2));
+        List<Map<IEdge<Integer>, Long>> notified = new ArrayList<>();
+        Graph.IEdgeUpdate<Integer> listener = new Graph.IEdgeUpdate<Integer>() {
+            @Override
+            public void onEdgeUpdate(IEdge<Integer> edge, long oldWeight) {
+                notified.add(Collections.singletonMap(edge, oldWeight));
+            }
+
+            @Override
+            public void onEdgesUpdate(Map<IEdge<Integer>, Long> oldWeights) {
+                notified.add(new HashMap<>(oldWeights));
+            }
+        };
+        graph.onEdgeUpdate(listener);
+        try (WeightUpdatePipeline<Integer> pipeline = new WeightUpdatePipeline<>(graph, 4, WeightUpdatePipeline.Backpressure.COALESCE)) {
+            pipeline.setCoalesceWindow(10, TimeUnit.SECONDS, Integer.MAX_VALUE);
+            // 窗口内同一条边的多次变化只通知一次净变化
+            for (int i = 1; i <= 100; i++) {
+                pipeline.submit(0, 1, 10 + i);
+            }
+            pipeline.submit(1, 2, 5);
+            pipeline.flush();
+            Assertions.assertEquals(1, notified.size());
+            Assertions.assertEquals(2, notified.get(0).size());
+            Assertions.assertEquals(99, pipeline.getCoalesced());
+            Assertions.assertEquals(30, pathTree.getDistance(2));
+            // 变化后又恢复原来的权重，不通知
+            pipeline.submit(0, 1, 1);
+            pipeline.submit(0, 1, 110);
+            pipeline.flush();
+            Assertions.assertEquals(1, notified.size());
+            // 提交次数达到上限时不等待窗口结束
+            pipeline.setCoalesceWindow(10, TimeUnit.SECONDS, 3);
+            pipeline.submit(0, 1, 10);
+            pipeline.submit(0, 1, 11);
+            pipeline.submit(0, 1, 10);
+            long start = System.nanoTime();
+            while (edges.get(0).getWeight() != 10 && System.nanoTime() - start < 5_000_000_000L) {
+                Thread.yield();
+            }
+            Assertions.assertEquals(10, edges.get(0).getWeight());
+            pipeline.flush();
+            Assertions.assertEquals(15, pathTree.getDistance(2));
+        }
+    }
+
+    @Test
+    void pipelineFailure() throws InterruptedException {
+        List<Edge> edges = Arrays.asList(new Edge(0, 1, 10), new Edge(1, 2, 20));
+        AtomicBoolean fail = new AtomicBoolean(true);
+        Graph<Integer> graph = new Graph<Integer>(edges, true) {
+            @Override
+            public boolean updateWeights(Collection<WeightChange<Integer>> changes) {
+                if (fail.get()) {
+                    throw new IllegalArgumentException("写入失败");
+                }
+                return super.updateWeights(changes);
+            }
+        };
+        try (WeightUpdatePipeline<Integer> pipeline = new WeightUpdatePipeline<>(graph, 4, WeightUpdatePipeline.Backpressure.BLOCK)) {
+            // 两种flush都抛出写入失败，并且只抛出一次
+            pipeline.submit(0, 1, 5);
+            IllegalStateException e = Assertions.assertThrows(IllegalStateException.class,
+                    () -> pipeline.flush(10, TimeUnit.SECONDS));
+            Assertions.assertTrue(e.getCause() instanceof IllegalArgumentException);
+            Assertions.assertTrue(pipeline.flush(10, TimeUnit.SECONDS));
+            pipeline.submit(0, 1, 6);
+            Assertions.assertThrows(IllegalStateException.class, pipeline::flush);
+            pipeline.flush();
+            // 失败之后管道可以继续使用
+            fail.set(false);
+            pipeline.submit(0, 1, 7);
+            Assertions.assertTrue(pipeline.flush(10, TimeUnit.SECONDS));
+            Assertions.assertEquals(7, edges.get(0).getWeight());
+        }
+    }
+
+    @Test
+    void pipelineMissingEdgeAndInterrupt() throws InterruptedException {
+        List<Edge> edges = Arrays.asList(new Edge(0, 1, 10), new Edge(1, 2, 20), new Edge(2, 3, 30));
+        Graph<Integer> graph = new Graph<>(edges, true);
+        List<Map<IEdge<Integer>, Long>> notified = new ArrayList<>();
+        Graph.IEdgeUpdate<Integer> listener = new Graph.IEdgeUpdate<Integer>() {
+            @Override
+            public void onEdgeUpdate(IEdge<Integer> edge, long oldWeight) {
+                notified.add(Collections.singletonMap(edge, oldWeight));
+            }
+
+            @Override
+            public void onEdgesUpdate(Map<IEdge<Integer>, Long> oldWeights) {
+                notified.add(new HashMap<>(oldWeights));
+            }
+        };
+        graph.onEdgeUpdate(listener);
+        try (WeightUpdatePipeline<Integer> pipeline = new WeightUpdatePipeline<>(graph, 8, WeightUpdatePipeline.Backpressure.BLOCK)) {
+            pipeline.setCoalesceWindow(1, TimeUnit.HOURS, 4);
+            // 不存在的边被忽略，其余的变化仍然作为一批生效
+            pipeline.submit(0, 1, 11);
+            pipeline.submit(3, 0, 5);
+            pipeline.submit(1, 2, 21);
+            pipeline.submit(2, 3, 31);
+            pipeline.flush();
+            Assertions.assertEquals(1, pipeline.getRejected());
+            Assertions.assertEquals(1, notified.size());
+            Assertions.assertEquals(3, notified.get(0).size());
+            // 应用线程被中断视为关闭，已提交的变化仍然生效
+            pipeline.submit(0, 1, 12);
+            Thread applier = Thread.getAllStackTraces().keySet().stream()
+                    .filter(thread -> thread.getName().equals("weight-update-applier") && thread.isAlive())
+                    .findFirst().orElseThrow(IllegalStateException::new);
+            applier.interrupt();
+            applier.join(10_000);
+            Assertions.assertFalse(applier.isAlive());
+            Assertions.assertEquals(12, edges.get(0).getWeight());
+            Assertions.assertTrue(pipeline.flush(10, TimeUnit.SECONDS));
+            Assertions.assertThrows(IllegalStateException.class, () -> pipeline.submit(0, 1, 13));
+        }
+    }
+
+    @Test
+    void adaptiveRecompute() {
+        double[] ratios = {0, 0.3, Double.POSITIVE_INFINITY};
+        for (double ratio : ratios) {
+            ShortestPathTreeCache<Integer> lastCache = null;
+            for (int i = 0; i < 50; i++) {
+                DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+                List<Edge> edges = new ArrayList<>();
+                multigraph.iterables().edges().forEach(edge -> {
+                    edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+                });
+                if (edges.isEmpty()) {
+                    continue;
+                }
+                Graph<Integer> graph = new Graph<>(edges, true);
+                boolean compact = rnd.nextBoolean();
+                boolean mergeUpdate = rnd.nextBoolean();
+                ShortestPathTreeCache<Integer> treeCache = new ShortestPathTreeCache<>(graph, compact
+                        ? (g, root) -> new CompactShortestPathTree<>(g, root, mergeUpdate)
+                        : (g, root) -> new ShortestPathTree<>(g, root, mergeUpdate));
+                treeCache.setRecomputeRatio(ratio);
+                treeCache.warmUp(graph.getVertexSet(), 2);
+                for (int j = 0; j < 10; j++) {
+                    List<WeightChange<Integer>> changes = new ArrayList<>();
+                    for (int k = rnd.nextInt(3); k >= 0; k--) {
+                        Edge edge = edges.get(rnd.nextInt(edges.size()));
+                        long weightNew = Math.max(1, edge.getWeight() + rnd.nextInt(100) - 50);
+                        changes.add(WeightChange.of(edge.getStart(), edge.getEnd(), weightNew));
+                        multigraph.setEdgeWeight(multigraph.getEdge(edge.getStart(), edge.getEnd()), weightNew);
+                    }
+                    graph.updateWeights(changes);
+                    if (rnd.nextBoolean()) {
+                        // 合并更新时查询会触发更新
+                        for (Integer root : graph.getVertexSet()) {
+                            treeCache.getOrCreateShortestPathTree(root).getDistance(root);
+                        }
+                    }
+                }
+                IntVertexDijkstraShortestPath<WeightedEdge> shortestPath = new IntVertexDijkstraShortestPath<>(multigraph);
+                for (Integer root : graph.getVertexSet()) {
+                    IShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(root);
+                    checkDistanceSame(graph, pathTree, shortestPath.getPaths(root));
+                    TreeSnapshot<Integer> snapshot = pathTree.getSnapshot();
+                    for (Integer vertex : graph.getVertexSet()) {
+                        Assertions.assertEquals(pathTree.getDistance(vertex), snapshot.getDistance(vertex));
+                    }
+                }
+                lastCache = treeCache;
+            }
+            UpdateMetrics metrics = lastCache.getUpdateMetrics();
+            if (ratio == 0) {
+                Assertions.assertTrue(metrics.getRecomputeCount() > 0);
+            } else if (Double.isInfinite(ratio)) {
+                Assertions.assertEquals(0, metrics.getRecomputeCount());
+                Assertions.assertTrue(metrics.getIncrementalCount() > 0);
+            }
+        }
+    }
+
+    @Test
+    void daryHeapType() {
+        checkHeapType(HeapType.DARY);
+    }
+
+    @Test
+    void radixHeapType() {
+        checkHeapType(HeapType.RADIX);
+        // 未完成的搜索中新增边，松弛得到的距离不能小于已选中顶点的距离
+        for (int i = 0; i < 200; i++) {
+            DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+            List<Edge> edges = new ArrayList<>();
+            multigraph.iterables().edges().forEach(edge -> {
+                edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+            });
+            if (edges.isEmpty()) {
+                continue;
+            }
+            Graph<Integer> graph = new Graph<>(edges, true);
+            Integer start = edges.get(rnd.nextInt(edges.size())).getStart();
+            boolean mergeUpdate = rnd.nextBoolean();
+            ShortestPathTreeCache<Integer> treeCache = new ShortestPathTreeCache<>(graph,
+                    (g, root) -> new ShortestPathTree<>(g, root, mergeUpdate, HeapType.RADIX));
+            IShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(start);
+            pathTree.getPrevious(edges.get(rnd.nextInt(edges.size())).getEnd());
+            int vertexBound = graph.size() + 3;
+            for (int j = 0; j < 10; j++) {
+                int edgeStart = rnd.nextInt(vertexBound);
+                int edgeEnd = rnd.nextInt(vertexBound);
+                if (edgeStart == edgeEnd || graph.getEdge(edgeStart, edgeEnd) != null) {
+                    continue;
+                }
+                Edge edge = new Edge(edgeStart, edgeEnd, rnd.nextInt(100) + 1);
+                graph.addEdge(edge);
+                multigraph.addVertex(edgeStart);
+                multigraph.addVertex(edgeEnd);
+                multigraph.setEdgeWeight(multigraph.addEdge(edgeStart, edgeEnd), edge.getWeight());
+                if (rnd.nextInt(3) == 0) {
+                    pathTree.getDistance(edgeEnd);
+                }
+            }
+            ShortestPathAlgorithm.SingleSourcePaths<Integer, WeightedEdge> paths =
+                    new IntVertexDijkstraShortestPath<>(multigraph).getPaths(start);
+            checkDistanceSame(graph, pathTree, paths);
+            Assertions.assertTrue(pathTree.checkAllReset());
+        }
+    }
+
+    @Test
+    void pairingHeapType() {
+        checkHeapType(HeapType.PAIRING);
+    }
+
+    @Test
+    void hollowHeapType() {
+        checkHeapType(HeapType.HOLLOW);
+    }
+
+    private void checkHeapType(HeapType heapType) {
+        for (int i = 0; i < 50; i++) {
+            DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+            List<Edge> edges = new ArrayList<>();
+            multigraph.iterables().edges().forEach(edge -> {
+                edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+            });
+            if (edges.isEmpty()) {
+                continue;
+            }
+            Graph<Integer> graph = new Graph<>(edges, true);
+            boolean mergeUpdate = rnd.nextBoolean();
+            ShortestPathTreeCache<Integer> treeCache = new ShortestPathTreeCache<>(graph,
+                    (g, root) -> new ShortestPathTree<>(g, root, mergeUpdate, heapType));
+            // 只走增量更新，使用更新器的队列
+            treeCache.setRecomputeRatio(Double.POSITIVE_INFINITY);
+            List<Integer> vertices = new ArrayList<>(graph.getVertexSet());
+            for (Integer root : vertices) {
+                IShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(root);
+                if (rnd.nextBoolean()) {
+                    // 只搜索到某个顶点为止
+                    pathTree.getDistance(vertices.get(rnd.nextInt(vertices.size())));
+                } else {
+                    vertices.forEach(pathTree::getDistance);
+                }
+            }
+            for (int j = 0; j < 10; j++) {
+                List<WeightChange<Integer>> changes = new ArrayList<>();
+                for (int k = rnd.nextInt(3); k >= 0; k--) {
+                    Edge edge = edges.get(rnd.nextInt(edges.size()));
+                    long weightNew = Math.max(1, edge.getWeight() + rnd.nextInt(100) - 50);
+                    changes.add(WeightChange.of(edge.getStart(), edge.getEnd(), weightNew));
+                    multigraph.setEdgeWeight(multigraph.getEdge(edge.getStart(), edge.getEnd()), weightNew);
+                }
+                graph.updateWeights(changes);
+            }
+            IntVertexDijkstraShortestPath<WeightedEdge> shortestPath = new IntVertexDijkstraShortestPath<>(multigraph);
+            for (Integer root : vertices) {
+                IShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(root);
+                checkDistanceSame(graph, pathTree, shortestPath.getPaths(root));
+                Assertions.assertTrue(pathTree.checkAllReset());
+            }
+        }
+    }
+
+    @Test
+    void subtreeSize() {
+        for (int i = 0; i < 100; i++) {
+            DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+            List<Edge> edges = new ArrayList<>();
+            multigraph.iterables().edges().forEach(edge -> {
+                edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+            });
+            if (edges.isEmpty()) {
+                continue;
+            }
+            Graph<Integer> graph = new Graph<>(edges, true);
+            boolean compact = rnd.nextBoolean();
+            ShortestPathTreeCache<Integer> treeCache = new ShortestPathTreeCache<>(graph, compact
+                    ? (g, root) -> new CompactShortestPathTree<>(g, root, false)
+                    : (g, root) -> new ShortestPathTree<>(g, root, false));
+            // 只走增量更新，检查增量更新之后按需批量计算的子树大小
+            treeCache.setRecomputeRatio(Double.POSITIVE_INFINITY);
+            treeCache.warmUp(graph.getVertexSet(), 2);
+            for (int j = 0; j < 10; j++) {
+                Edge edge = edges.get(rnd.nextInt(edges.size()));
+                if (rnd.nextInt(5) == 0 && graph.getEdge(edge.getStart(), edge.getEnd()) != null) {
+                    graph.removeEdge(edge.getStart(), edge.getEnd());
+                } else if (graph.getEdge(edge.getStart(), edge.getEnd()) == null) {
+                    graph.addEdge(edge);
+                } else {
+                    graph.updateWeight(edge.getStart(), edge.getEnd(), Math.max(1, edge.getWeight() + rnd.nextInt(100) - 50));
+                }
+            }
+            for (Integer root : graph.getVertexSet()) {
+                IShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(root);
+                Map<Integer, Integer> expected = new HashMap<>();
+                for (Integer vertex : graph.getVertexSet()) {
+                    if (pathTree.getPrevious(vertex) == null) {
+                        continue;
+                    }
+                    Integer ancestor = vertex;
+                    while (true) {
+                        expected.merge(ancestor, 1, Integer::sum);
+                        Integer previous = pathTree.getPrevious(ancestor).getK();
+                        if (previous.equals(ancestor)) {
+                            break;
+                        }
+                        ancestor = previous;
+                    }
+                }
+                for (Integer vertex : graph.getVertexSet()) {
+                    Assertions.assertEquals((int) expected.getOrDefault(vertex, 0),
+                            pathTree.getSubtreeSizeById(graph.getVertex(vertex).getId()));
+                }
+            }
+        }
+    }
+
+    /**
+     * 合并更新的权重增加中混有不在树上的边，跳过它们之后仍要处理树边
+     */
+    @Test
+    void mergeIncreaseSkipsNonTreeEdges() {
+        for (int i = 0; i < 20; i++) {
+            List<Edge> edges = new ArrayList<>();
+            edges.add(new Edge(0, 1, 1));
+            Edge treeEdge = new Edge(1, 2, 1);
+            edges.add(treeEdge);
+            List<Edge> nonTreeEdges = new ArrayList<>();
+            for (int k = 3; k < 23; k++) {
+                edges.add(new Edge(0, k, 1));
+                Edge edge = new Edge(k, 2, 100);
+                edges.add(edge);
+                nonTreeEdges.add(edge);
+            }
+            Graph<Integer> graph = new Graph<>(edges, true);
+            // 缓存只会把树边的权重增加分发给树，因此直接通知树
+            ShortestPathTree<Integer> pathTree = new ShortestPathTree<>(graph, 0);
+            pathTree.setRecomputeRatio(Double.POSITIVE_INFINITY);
+            Assertions.assertEquals(2, pathTree.getDistance(2));
+            // 合并更新时变化按HashMap的顺序处理，树边可能排在任意位置
+            for (Edge edge : nonTreeEdges) {
+                edge.setWeight(200);
+                pathTree.edgeUpdate(edge, 100);
+            }
+            treeEdge.setWeight(50);
+            pathTree.edgeUpdate(treeEdge, 1);
+            Assertions.assertEquals(51, pathTree.getDistance(2));
+            Assertions.assertEquals(1, pathTree.getPrevious(2).getK());
+            Assertions.assertTrue(pathTree.checkAllReset());
+        }
+    }
+
+    /**
+     * 未完成的树在持续的权重变化下保留已搜索的部分，只修复受影响的临时距离
+     */
+    @Test
+    void incompleteTreeUnderUpdates() {
+        List<Edge> chain = new ArrayList<>();
+        chain.add(new Edge(0, 1, 1));
+        chain.add(new Edge(1, 2, 1));
+        chain.add(new Edge(0, 3, 10));
+        chain.add(new Edge(3, 4, 1));
+        Graph<Integer> chainGraph = new Graph<>(chain, true);
+        for (HeapType heapType : HeapType.values()) {
+            ShortestPathTree<Integer> pathTree = new ShortestPathTree<>(chainGraph, 0, false, heapType);
+            Assertions.assertEquals(1, pathTree.getDistance(1));
+            // 临时距离来自权重增加的边，只修改顶点3的临时距离
+            chainGraph.getEdge(0, 3).setWeight(20);
+            pathTree.edgeUpdate(chainGraph.getEdge(0, 3), 10);
+            // 起点未被选中，选中时再松弛
+            chainGraph.getEdge(3, 4).setWeight(5);
+            pathTree.edgeUpdate(chainGraph.getEdge(3, 4), 1);
+            Assertions.assertNotNull(pathTree.heapWrapper);
+            chainGraph.getEdge(0, 3).setWeight(10);
+            pathTree.edgeUpdate(chainGraph.getEdge(0, 3), 20);
+            chainGraph.getEdge(3, 4).setWeight(1);
+            pathTree.edgeUpdate(chainGraph.getEdge(3, 4), 5);
+            Assertions.assertNotNull(pathTree.heapWrapper);
+            // 已选中顶点的最短路径变长时才重新搜索
+            chainGraph.getEdge(0, 1).setWeight(3);
+            pathTree.edgeUpdate(chainGraph.getEdge(0, 1), 1);
+            Assertions.assertNull(pathTree.heapWrapper);
+            Assertions.assertEquals(11, pathTree.getDistance(4));
+            Assertions.assertEquals(4, pathTree.getDistance(2));
+            chainGraph.getEdge(0, 1).setWeight(1);
+        }
+        for (int i = 0; i < 300; i++) {
+            DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+            List<Edge> edges = new ArrayList<>();
+            multigraph.iterables().edges().forEach(edge -> {
+                edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+            });
+            if (edges.isEmpty()) {
+                continue;
+            }
+            Graph<Integer> graph = new Graph<>(edges, true);
+            List<Integer> vertices = new ArrayList<>(graph.getVertexSet());
+            Integer root = vertices.get(rnd.nextInt(vertices.size()));
+            HeapType heapType = HeapType.values()[rnd.nextInt(HeapType.values().length)];
+            IShortestPathTree<Integer> pathTree = rnd.nextBoolean()
+                    ? new CompactShortestPathTree<>(graph, root, false) : new ShortestPathTree<>(graph, root, false, heapType);
+            for (int j = 0; j < 20; j++) {
+                Map<IEdge<Integer>, Long> oldWeights = new HashMap<>();
+                int count = rnd.nextInt(3) + 1;
+                for (int k = 0; k < count; k++) {
+                    Edge edge = edges.get(rnd.nextInt(edges.size()));
+                    oldWeights.putIfAbsent(edge, edge.getWeight());
+                    long weightNew = Math.max(1, edge.getWeight() + rnd.nextInt(100) - 50);
+                    edge.setWeight(weightNew);
+                    multigraph.setEdgeWeight(multigraph.getEdge(edge.getStart(), edge.getEnd()), weightNew);
+                }
+                if (oldWeights.size() == 1) {
+                    oldWeights.forEach(pathTree::edgeUpdate);
+                } else {
+                    pathTree.edgesUpdate(oldWeights);
+                }
+                Integer target = vertices.get(rnd.nextInt(vertices.size()));
+                double expected = new IntVertexDijkstraShortestPath<>(multigraph).getPaths(root).getWeight(target);
+                Assertions.assertEquals((long) expected, pathTree.getDistance(target));
+            }
+            checkDistanceSame(graph, pathTree, new IntVertexDijkstraShortestPath<>(multigraph).getPaths(root));
+        }
+    }
+
+    @Test
+    void deepChain() {
+        int depth = 100_000;
+        List<Edge> edges = new ArrayList<>();
+        for (int i = 0; i < depth; i++) {
+            edges.add(new Edge(i, i + 1, 1));
+        }
+        // 绕过第一条边的捷径
+        edges.add(new Edge(0, 2, 5));
+        for (boolean compact : new boolean[]{false, true}) {
+            Graph<Integer> graph = new Graph<>(edges, true);
+            ShortestPathTreeCache<Integer> treeCache = new ShortestPathTreeCache<>(graph, compact
+                    ? (g, root) -> new CompactShortestPathTree<>(g, root, false)
+                    : (g, root) -> new ShortestPathTree<>(g, root, false));
+            // 只走增量更新，整条链的距离都会沿树向下修改
+            treeCache.setRecomputeRatio(Double.POSITIVE_INFINITY);
+            IShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(0);
+            Assertions.assertEquals(depth, pathTree.getDistance(depth));
+            graph.updateWeight(1, 2, 10);
+            Assertions.assertEquals(depth + 3, pathTree.getDistance(depth));
+            Assertions.assertEquals(depth - 1, pathTree.getSubtreeSizeById(graph.getVertex(2).getId()));
+            graph.updateWeight(1, 2, 1);
+            Assertions.assertEquals(depth, pathTree.getDistance(depth));
+            Assertions.assertEquals(2, treeCache.getUpdateMetrics().getIncrementalCount());
+        }
+    }
+
+    private static <T> T getQuietly(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new AssertionError(e.getCause());
+        }
+    }
+
+    @Test
+    void edgeAdd() {
+        for (int i = 0; i < 500; i++) {
+            DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+            List<Edge> edges = new ArrayList<>();
+            multigraph.iterables().edges().forEach(edge -> {
+                edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+            });
+            if (edges.isEmpty()) {
+                continue;
+            }
+            Graph<Integer> graph = new Graph<>(edges, true);
+            Integer start = edges.get(rnd.nextInt(edges.size())).getStart();
+            boolean compact = rnd.nextBoolean();
+            ShortestPathTreeCache<Integer> treeCache = compact
+                    ? new ShortestPathTreeCache<>(graph, CompactShortestPathTree::new) : new ShortestPathTreeCache<>(graph);
+            IShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(start);
+            if (rnd.nextBoolean()) {
+                pathTree.getPrevious(null);
+            } else {
+                pathTree.getPrevious(edges.get(rnd.nextInt(edges.size())).getEnd());
+            }
+            int vertexBound = graph.size() + 3;
+            for (int j = 0; j < 5; j++) {
+                int edgeStart = rnd.nextInt(vertexBound);
+                int edgeEnd = rnd.nextInt(vertexBound);
+                if (edgeStart == edgeEnd || graph.getEdge(edgeStart, edgeEnd) != null) {
+                    continue;
+                }
+                Edge edge = new Edge(edgeStart, edgeEnd, rnd.nextInt(100) + 1);
+                graph.addEdge(edge);
+                multigraph.addVertex(edgeStart);
+                multigraph.addVertex(edgeEnd);
+                multigraph.setEdgeWeight(multigraph.addEdge(edgeStart, edgeEnd), edge.getWeight());
+                if (rnd.nextInt(3) == 0) {
+                    pathTree.getDistance(edgeEnd);
+                }
+            }
+            ShortestPathAlgorithm.SingleSourcePaths<Integer, WeightedEdge> paths =
+                    new IntVertexDijkstraShortestPath<>(multigraph).getPaths(start);
+            checkDistanceSame(graph, pathTree, paths);
+            Assertions.assertTrue(pathTree.checkAllReset());
+            Assertions.assertSame(pathTree, treeCache.getOrCreateShortestPathTree(start));
+        }
+    }
+
+    @Test
+    void removeEdge() {
+        for (int i = 0; i < 500; i++) {
+            DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+            List<Edge> edges = new ArrayList<>();
+            multigraph.iterables().edges().forEach(edge -> {
+                edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+            });
+            if (edges.isEmpty()) {
+                continue;
+            }
+            Graph<Integer> graph = new Graph<>(edges, true);
+            Integer start = edges.get(rnd.nextInt(edges.size())).getStart();
+            boolean compact = rnd.nextBoolean();
+            ShortestPathTreeCache<Integer> treeCache = compact
+                    ? new ShortestPathTreeCache<>(graph, CompactShortestPathTree::new) : new ShortestPathTreeCache<>(graph);
+            IShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(start);
+            if (rnd.nextBoolean()) {
+                pathTree.getPrevious(null);
+            } else {
+                pathTree.getPrevious(edges.get(rnd.nextInt(edges.size())).getEnd());
+            }
+            for (int j = 0; j < 5 && !edges.isEmpty(); j++) {
+                Edge edge = edges.remove(rnd.nextInt(edges.size()));
+                Assertions.assertSame(edge, graph.removeEdge(edge.getStart(), edge.getEnd()));
+                Assertions.assertNull(graph.getEdge(edge.getStart(), edge.getEnd()));
+                multigraph.removeEdge(edge.getStart(), edge.getEnd());
+                if (rnd.nextInt(3) == 0) {
+                    pathTree.getDistance(edge.getEnd());
+                }
+            }
+            graph.walkVertex(vertex -> vertex.walkInEdge((adjacent, edge) -> {
+                Assertions.assertSame(edge, adjacent.getOutEdge(vertex));
+            }));
+            ShortestPathAlgorithm.SingleSourcePaths<Integer, WeightedEdge> paths =
+                    new IntVertexDijkstraShortestPath<>(multigraph).getPaths(start);
+            checkDistanceSame(graph, pathTree, paths);
+            Assertions.assertTrue(pathTree.checkAllReset());
+            Assertions.assertSame(pathTree, treeCache.getOrCreateShortestPathTree(start));
+        }
+        Assertions.assertNull(new Graph<>(Collections.singletonList(new Edge(1, 2, 1)), true).removeEdge(2, 1));
+    }
+
+    /**
+     * 无向图移除边时两个方向都被移除，最短路径树可能经由反方向使用这条边
+     */
+    @Test
+    void undirectedRemoveEdge() {
+        for (boolean compact : new boolean[]{false, true}) {
+            for (boolean mergeUpdate : new boolean[]{false, true}) {
+                for (boolean complete : new boolean[]{false, true}) {
+                    Graph<Integer> graph = new Graph<>(Arrays.asList(new Edge(1, 2, 1), new Edge(2, 3, 5), new Edge(3, 1, 5)), false);
+                    ShortestPathTreeCache<Integer> treeCache = new ShortestPathTreeCache<>(graph, (g, root) -> compact
+                            ? new CompactShortestPathTree<>(g, root, mergeUpdate) : new ShortestPathTree<>(g, root, mergeUpdate));
+                    IShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(2);
+                    if (complete) {
+                        pathTree.completeSearch();
+                    } else {
+                        pathTree.getPrevious(1);
+                    }
+                    graph.removeEdge(1, 2);
+                    Assertions.assertEquals(10, pathTree.getDistance(1));
+                    Assertions.assertEquals(3, pathTree.getPrevious(1).getK());
+                    Assertions.assertTrue(pathTree.checkAllReset());
+                }
+            }
+        }
+        for (int i = 0; i < 300; i++) {
+            DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+            WeightedMultigraph<Integer, WeightedEdge> undirected = new WeightedMultigraph<>(WeightedEdge.class);
+            List<Edge> edges = new ArrayList<>();
+            multigraph.iterables().edges().forEach(edge -> {
+                Integer source = (Integer) edge.getSource();
+                Integer target = (Integer) edge.getTarget();
+                if (undirected.containsEdge(source, target)) {
+                    return;
+                }
+                undirected.addVertex(source);
+                undirected.addVertex(target);
+                undirected.setEdgeWeight(undirected.addEdge(source, target), edge.getWeight());
+                edges.add(new Edge(source, target, (long) edge.getWeight()));
+            });
+            if (edges.isEmpty()) {
+                continue;
+            }
+            Graph<Integer> graph = new Graph<>(edges, false);
+            Integer start = edges.get(rnd.nextInt(edges.size())).getStart();
+            boolean compact = rnd.nextBoolean();
+            ShortestPathTreeCache<Integer> treeCache = compact
+                    ? new ShortestPathTreeCache<>(graph, CompactShortestPathTree::new) : new ShortestPathTreeCache<>(graph);
+            IShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(start);
+            if (rnd.nextBoolean()) {
+                pathTree.completeSearch();
+            } else {
+                pathTree.getPrevious(edges.get(rnd.nextInt(edges.size())).getEnd());
+            }
+            for (int j = 0; j < 5 && !edges.isEmpty(); j++) {
+                Edge edge = edges.remove(rnd.nextInt(edges.size()));
+                if (rnd.nextBoolean()) {
+                    Assertions.assertSame(edge, graph.removeEdge(edge.getEnd(), edge.getStart()));
+                    undirected.removeEdge(edge.getStart(), edge.getEnd());
+                } else {
+                    long weight = rnd.nextInt(100) + 1;
+                    graph.updateWeight(edge.getStart(), edge.getEnd(), weight);
+                    undirected.setEdgeWeight(undirected.getEdge(edge.getStart(), edge.getEnd()), weight);
+                    edges.add(edge);
+                }
+                if (rnd.nextInt(3) == 0) {
+                    pathTree.getDistance(edge.getEnd());
+                }
+            }
+            ShortestPathAlgorithm.SingleSourcePaths<Integer, WeightedEdge> paths =
+                    new IntVertexDijkstraShortestPath<>(undirected).getPaths(start);
+            checkDistanceSame(graph, pathTree, paths);
+            Assertions.assertTrue(pathTree.checkAllReset());
+        }
+    }
+
+    @Test
+    void removeVertex() {
+        for (int i = 0; i < 500; i++) {
+            DirectedWeightedMultigraph<Integer, WeightedEdge> multigraph = generateGraph();
+            List<Edge> edges = new ArrayList<>();
+            multigraph.iterables().edges().forEach(edge -> {
+                edges.add(new Edge((Integer) edge.getSource(), (Integer) edge.getTarget(), (long) edge.getWeight()));
+            });
+            if (edges.isEmpty()) {
+                continue;
+            }
+            Graph<Integer> graph = new Graph<>(edges, true);
+            Integer start = edges.get(rnd.nextInt(edges.size())).getStart();
+            boolean compact = rnd.nextBoolean();
+            ShortestPathTreeCache<Integer> treeCache = compact
+                    ? new ShortestPathTreeCache<>(graph, CompactShortestPathTree::new) : new ShortestPathTreeCache<>(graph);
+            IShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(start);
+            if (rnd.nextBoolean()) {
+                pathTree.getPrevious(null);
+            } else {
+                pathTree.getPrevious(edges.get(rnd.nextInt(edges.size())).getEnd());
+            }
+            int vertexBound = graph.size() + 3;
+            for (int j = 0; j < 3; j++) {
+                int vertex = rnd.nextInt(vertexBound);
+                if (vertex == start) {
+                    continue;
+                }
+                boolean exist = graph.getVertex(vertex) != null;
+                Assertions.assertEquals(exist, graph.removeVertex(vertex));
+                Assertions.assertNull(graph.getVertex(vertex));
+                multigraph.removeVertex(vertex);
+                if (rnd.nextBoolean()) {
+                    // 重新加入的顶点使用新的编号，并通过新的边连接
+                    Vertex<Integer> added = graph.addVertex(vertex);
+                    Assertions.assertSame(added, graph.getVertexById(added.getId()));
+                    multigraph.addVertex(vertex);
+                    int adjacent = rnd.nextInt(vertexBound);
+                    if (adjacent != vertex) {
+                        Edge edge = new Edge(adjacent, vertex, rnd.nextInt(100) + 1);
+                        graph.addEdge(edge);
+                        multigraph.addVertex(adjacent);
+                        multigraph.setEdgeWeight(multigraph.addEdge(adjacent, vertex), edge.getWeight());
+                    }
+                }
+                if (rnd.nextInt(3) == 0) {
+                    pathTree.getDistance(vertex);
+                }
+            }
+            graph.walkVertex(vertex -> vertex.walkOutEdge((adjacent, edge) -> {
+                Assertions.assertSame(adjacent, graph.getVertex(adjacent.getK()));
+            }));
+            ShortestPathAlgorithm.SingleSourcePaths<Integer, WeightedEdge> paths =
+                    new IntVertexDijkstraShortestPath<>(multigraph).getPaths(start);
+            checkDistanceSame(graph, pathTree, paths);
+            Assertions.assertTrue(pathTree.checkAllReset());
+            Assertions.assertSame(pathTree, treeCache.getOrCreateShortestPathTree(start));
+        }
+    }
+
+    /**
+     * 无向图中带自环的顶点被移除，未完成的最短路径树经由反方向使用了顶点的边
+     */
+    @Test
+    void undirectedRemoveVertex() {
+        for (boolean compact : new boolean[]{false, true}) {
+            for (boolean complete : new boolean[]{false, true}) {
+                Graph<Integer> graph = new Graph<>(Arrays.asList(new Edge(1, 2, 1), new Edge(2, 3, 10),
+                        new Edge(3, 1, 5), new Edge(1, 1, 2)), false);
+                ShortestPathTreeCache<Integer> treeCache = compact
+                        ? new ShortestPathTreeCache<>(graph, CompactShortestPathTree::new) : new ShortestPathTreeCache<>(graph);
+                IShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(2);
+                if (complete) {
+                    pathTree.completeSearch();
+                } else {
+                    // 选中1后停止，3的临时距离来自1到3的方向
+                    pathTree.getPrevious(1);
+                }
+                Assertions.assertTrue(graph.removeVertex(1));
+                graph.walkVertex(vertex -> vertex.walkInEdge((adjacent, edge) -> {
+                    Assertions.assertSame(adjacent, graph.getVertex(adjacent.getK()));
+                }));
+                Assertions.assertEquals(10, pathTree.getDistance(3));
+                Assertions.assertEquals(2, pathTree.getPrevious(3).getK());
+                Assertions.assertTrue(pathTree.checkAllReset());
+            }
+        }
+    }
+
+    @Test
+    void vertexId() {
+        List<Edge> edges = new ArrayList<>();
+        edges.add(new Edge(7, 3, 2));
+        edges.add(new Edge(3, 9, 4));
+        edges.add(new Edge(7, 9, 9));
+        for (boolean csr : new boolean[]{false, true}) {
+            Graph<Integer> graph = new Graph<>(edges, true, csr);
+            Assertions.assertEquals(graph.size(), graph.idBound());
+            graph.walkVertex(vertex -> Assertions.assertSame(vertex, graph.getVertexById(vertex.getId())));
+            Assertions.assertNull(graph.getVertexById(graph.idBound()));
+        }
+        Graph<Integer> graph = new Graph<>(edges, true);
+        ShortestPathTreeCache<Integer> treeCache = new ShortestPathTreeCache<>(graph);
+        ShortestPathTree<Integer> pathTree = treeCache.getOrCreateShortestPathTree(7);
+        Assertions.assertEquals(6, pathTree.getDistance(9));
+        graph.addEdge(new Edge(9, 5, 1));
+        Assertions.assertEquals(3, graph.getVertex(5).getId());
+        Assertions.assertEquals(7, pathTree.getDistance(5));
+    }
+
     private List<SelectEdge> selectEdge(int count, boolean inc, List<Integer> vertexList, ShortestPathTree<Integer> pathTree, List<Edge> edges) {
         List<SelectEdge> results = new ArrayList<>();
         if (inc) {
@@ -359,7 +1740,7 @@ class GraphTest {
     /**
      * 检测两个最短路径树的所有节点的最短距离是否相同
      */
-    void checkDistanceSame(Graph<Integer> graph, ShortestPathTree<Integer> pathTree1, ShortestPathAlgorithm.SingleSourcePaths<Integer, WeightedEdge> pathTree2) {
+    void checkDistanceSame(Graph<Integer> graph, IShortestPathTree<Integer> pathTree1, ShortestPathAlgorithm.SingleSourcePaths<Integer, WeightedEdge> pathTree2) {
         graph.walkVertex(vertex -> {
             Integer k = vertex.getK();
             long distance1 = pathTree1.getDistance(k);
@@ -10,11 +10,19 @@ import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sando.heap.IIndexedLongHeap;
+import org.sando.heap.dheap.DaryHeap;
 import org.sando.heap.fiboheap.FiboHeap;
 import org.sando.heap.indexheap.Heap;
+import org.sando.heap.pairingheap.PairingHeap;
+import org.sando.heap.fiboheap.IHandle;
+import org.sando.heap.radixheap.RadixHeap;
+import org.sando.heap.weakheap.WeakHeap;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
@@ -38,6 +46,12 @@ public class HeapJmhTest {
     private static final int size = 20_0000;
     private static final int bound = size / 2;
     private static final int decreaseCount = 3000;
+    /**
+     * 随机图中每个顶点的平均出边数量
+     */
+    private static final int outDegree = 4;
+    private static final int maxWeight = 1000;
+    private DijkstraTrace trace;
 
     @Benchmark
     @Test
@@ -129,6 +143,240 @@ public class HeapJmhTest {
         });
     }
 
+    @Benchmark
+    @Test
+    public void daryHeapBench() {
+        Random rnd = new Random(seed);
+        DaryHeap heap = new DaryHeap(DaryHeap.DEFAULT_ARITY, size);
+        long[] keys = new long[size];
+        List<Integer> decreaseKeyList = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            keys[i] = rnd.nextInt(size);
+            heap.offer(i, keys[i]);
+            if (rnd.nextInt(100) < 60) {
+                decreaseKeyList.add(i);
+            }
+        }
+        heap.poll();
+        for (int i = 0; i < decreaseCount; i++) {
+            for (int id : decreaseKeyList) {
+                if (!heap.contains(id)) {
+                    continue;
+                }
+                keys[id] -= rnd.nextInt(bound);
+                heap.changePriority(id, keys[id]);
+            }
+        }
+        for (int i = 0; i < size - 1; i++) {
+            heap.poll();
+        }
+    }
+
+    @Benchmark
+    @Test
+    public void fiboHeapDijkstra() {
+        replayAware(dijkstraTrace(), FiboHeap.create(IntKey.class));
+    }
+
+    @Benchmark
+    @Test
+    public void pairingHeapDijkstra() {
+        replayAware(dijkstraTrace(), PairingHeap.create(IntKey.class));
+    }
+
+    @Benchmark
+    @Test
+    public void hollowHeapDijkstra() {
+        replayAware(dijkstraTrace(), org.sando.heap.hollowheap.HollowHeap.create(IntKey.class));
+    }
+
+    @Benchmark
+    @Test
+    public void indexHeapDijkstra() {
+        DijkstraTrace trace = dijkstraTrace();
+        Heap<IntKey> heap = new Heap<>();
+        IntKey[] keys = new IntKey[trace.vertexCount];
+        int[] priorities = new int[trace.vertexCount];
+        for (int i = 0; i < trace.length; i++) {
+            int id = trace.ids[i];
+            int priority = (int) trace.priorities[i];
+            switch (trace.ops[i]) {
+                case DijkstraTrace.OFFER:
+                    keys[id] = new IntKey(priority);
+                    heap.offer(keys[id]);
+                    break;
+                case DijkstraTrace.DECREASE:
+                    keys[id].priorityChange(priority - priorities[id]);
+                    break;
+                default:
+                    heap.poll();
+            }
+            priorities[id] = priority;
+        }
+    }
+
+    @Benchmark
+    @Test
+    public void daryHeapDijkstra() {
+        DijkstraTrace trace = dijkstraTrace();
+        replay(trace, new DaryHeap(DaryHeap.DEFAULT_ARITY, trace.vertexCount));
+    }
+
+    @Benchmark
+    @Test
+    public void radixHeapDijkstra() {
+        DijkstraTrace trace = dijkstraTrace();
+        replay(trace, new RadixHeap(trace.vertexCount));
+    }
+
+    @Benchmark
+    @Test
+    public void weakHeapDijkstra() {
+        DijkstraTrace trace = dijkstraTrace();
+        WeakHeap<Long> heap = new WeakHeap<>();
+        IHandle<Long>[] handles = newHandles(trace.vertexCount);
+        for (int i = 0; i < trace.length; i++) {
+            int id = trace.ids[i];
+            switch (trace.ops[i]) {
+                case DijkstraTrace.OFFER:
+                    handles[id] = heap.insert(trace.priorities[i]);
+                    break;
+                case DijkstraTrace.DECREASE:
+                    heap.decreaseKey(handles[id], trace.priorities[i]);
+                    break;
+                default:
+                    heap.poll();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <Key> IHandle<Key>[] newHandles(int length) {
+        return (IHandle<Key>[]) new IHandle<?>[length];
+    }
+
+    /**
+     * 在key感知出/入堆的堆上重放，decrease key由key自己调整位置
+     */
+    private static void replayAware(DijkstraTrace trace, Queue<IntKey> heap) {
+        IntKey[] keys = new IntKey[trace.vertexCount];
+        int[] priorities = new int[trace.vertexCount];
+        for (int i = 0; i < trace.length; i++) {
+            int id = trace.ids[i];
+            int priority = (int) trace.priorities[i];
+            switch (trace.ops[i]) {
+                case DijkstraTrace.OFFER:
+                    keys[id] = new IntKey(priority);
+                    heap.offer(keys[id]);
+                    break;
+                case DijkstraTrace.DECREASE:
+                    keys[id].delta(priority - priorities[id]);
+                    break;
+                default:
+                    heap.poll();
+            }
+            priorities[id] = priority;
+        }
+    }
+
+    private static void replay(DijkstraTrace trace, IIndexedLongHeap heap) {
+        for (int i = 0; i < trace.length; i++) {
+            switch (trace.ops[i]) {
+                case DijkstraTrace.OFFER:
+                    heap.offer(trace.ids[i], trace.priorities[i]);
+                    break;
+                case DijkstraTrace.DECREASE:
+                    heap.changePriority(trace.ids[i], trace.priorities[i]);
+                    break;
+                default:
+                    heap.poll();
+            }
+        }
+    }
+
+    private DijkstraTrace dijkstraTrace() {
+        if (trace == null) {
+            trace = new DijkstraTrace(new Random(seed), size);
+        }
+        return trace;
+    }
+
+    /**
+     * 随机图上一次完整的Dijkstra对优先队列的操作序列，各个堆按同样的顺序重放
+     * <p>图中有一个环保证所有顶点可达，另外每个顶点平均有{@link #outDegree}条随机出边，权重为[1, {@link #maxWeight}]的整数</p>
+     */
+    private static final class DijkstraTrace {
+        static final byte OFFER = 0;
+        static final byte DECREASE = 1;
+        static final byte POLL = 2;
+        final int vertexCount;
+        byte[] ops = new byte[16];
+        int[] ids = new int[16];
+        /**
+         * 插入或decrease key时的新优先级，poll时为取出的优先级
+         */
+        long[] priorities = new long[16];
+        int length;
+
+        DijkstraTrace(Random rnd, int vertexCount) {
+            this.vertexCount = vertexCount;
+            int edgeCount = vertexCount * (outDegree + 1);
+            // 按起点排序的出边
+            int[] firstEdge = new int[vertexCount + 1];
+            int[] starts = new int[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                starts[i] = i < vertexCount ? i : rnd.nextInt(vertexCount);
+                firstEdge[starts[i] + 1]++;
+            }
+            for (int v = 0; v < vertexCount; v++) {
+                firstEdge[v + 1] += firstEdge[v];
+            }
+            int[] fill = Arrays.copyOf(firstEdge, vertexCount);
+            int[] ends = new int[edgeCount];
+            int[] weights = new int[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                int e = fill[starts[i]]++;
+                ends[e] = i < vertexCount ? (i + 1) % vertexCount : rnd.nextInt(vertexCount);
+                weights[e] = 1 + rnd.nextInt(maxWeight);
+            }
+            long[] distances = new long[vertexCount];
+            Arrays.fill(distances, Long.MAX_VALUE);
+            boolean[] selected = new boolean[vertexCount];
+            DaryHeap heap = new DaryHeap(DaryHeap.DEFAULT_ARITY, vertexCount);
+            distances[0] = 0;
+            heap.offer(0, 0);
+            record(OFFER, 0, 0);
+            while (!heap.isEmpty()) {
+                int start = heap.poll();
+                selected[start] = true;
+                record(POLL, start, distances[start]);
+                for (int e = firstEdge[start]; e < firstEdge[start + 1]; e++) {
+                    int end = ends[e];
+                    long distance = distances[start] + weights[e];
+                    if (selected[end] || distance >= distances[end]) {
+                        continue;
+                    }
+                    record(distances[end] == Long.MAX_VALUE ? OFFER : DECREASE, end, distance);
+                    distances[end] = distance;
+                    heap.offerOrDecrease(end, distance);
+                }
+            }
+        }
+
+        private void record(byte op, int id, long priority) {
+            if (length == ops.length) {
+                int capacity = length << 1;
+                ops = Arrays.copyOf(ops, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+                priorities = Arrays.copyOf(priorities, capacity);
+            }
+            ops[length] = op;
+            ids[length] = id;
+            priorities[length] = priority;
+            length++;
+        }
+    }
+
     private static void changeKey(Random rnd, int size, Consumer<IntKey> consumer, Consumer<IntKey> decrease, Runnable poll) {
         List<Runnable> decreaseKeyList = new ArrayList<>();
         for (int i = 0; i < size; i++) {
@@ -25,6 +25,10 @@ class IntKey implements IFiboHeapAware<IntKey>, Comparable<IntKey>, IHeapIndex {
         this.key = key;
     }
 
+    public int getKey() {
+        return key;
+    }
+
     @Override
     public int compareTo(IntKey o) {
         return Integer.compare(key, o.key);